@@ -0,0 +1,130 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.nio.ByteBuffer;
+
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.StandardFieldFactory;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.FieldBuilder;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVStringArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.SerializableControl;
+import org.epics.pvdata.pv.StandardField;
+
+/**
+ * Structures and helpers shared by the benchmarks.
+ * The structures have the shape of the normative types NTScalar, NTScalarArray and NTTable.
+ */
+public class BenchmarkData {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final StandardField standardField = StandardFieldFactory.getStandardField();
+
+    /**
+     * The shapes used by the benchmarks.
+     */
+    public enum Shape {
+        /**
+         * double value,alarm,timeStamp,display,control.
+         */
+        NTScalar,
+        /**
+         * double[] value,alarm,timeStamp,display.
+         */
+        NTScalarArray,
+        /**
+         * string[] labels, structure value with 10 double[] columns, alarm,timeStamp.
+         */
+        NTTable
+    }
+
+    /**
+     * Create a PVStructure with the given shape.
+     *
+     * @param shape the shape
+     * @param arrayLength the length of each array
+     * @return the new PVStructure
+     */
+    public static PVStructure create(Shape shape, int arrayLength) {
+        switch(shape) {
+        case NTScalar:
+            return pvDataCreate.createPVStructure(
+                standardField.scalar(ScalarType.pvDouble, "alarm,timeStamp,display,control"));
+        case NTScalarArray: {
+            PVStructure pvStructure = pvDataCreate.createPVStructure(
+                standardField.scalarArray(ScalarType.pvDouble, "alarm,timeStamp,display"));
+            fill(pvStructure.getSubField(PVDoubleArray.class, "value"), arrayLength);
+            return pvStructure;
+        }
+        case NTTable: {
+            int numberColumns = 10;
+            FieldBuilder valueBuilder = fieldCreate.createFieldBuilder();
+            String[] labels = new String[numberColumns];
+            for(int i=0; i<numberColumns; i++) {
+                labels[i] = "column" + i;
+                valueBuilder.addArray(labels[i], ScalarType.pvDouble);
+            }
+            Field value = valueBuilder.createStructure();
+            PVStructure pvStructure = pvDataCreate.createPVStructure(fieldCreate.createFieldBuilder().
+                setId("epics:nt/NTTable:1.0").
+                addArray("labels", ScalarType.pvString).
+                add("value", value).
+                add("alarm", standardField.alarm()).
+                add("timeStamp", standardField.timeStamp()).
+                createStructure());
+            pvStructure.getSubField(PVStringArray.class, "labels").put(0, numberColumns, labels, 0);
+            for(int i=0; i<numberColumns; i++) {
+                fill(pvStructure.getSubField(PVDoubleArray.class, "value." + labels[i]), arrayLength);
+            }
+            return pvStructure;
+        }
+        }
+        throw new IllegalArgumentException("unknown shape " + shape);
+    }
+
+    private static void fill(PVDoubleArray pvArray, int length) {
+        double[] data = new double[length];
+        for(int i=0; i<length; i++) data[i] = i;
+        pvArray.put(0, length, data, 0);
+    }
+
+    /**
+     * A SerializableControl that never flushes. The buffer must be large enough.
+     */
+    public static class NoFlushControl implements SerializableControl {
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.SerializableControl#flushSerializeBuffer()
+         */
+        @Override
+        public void flushSerializeBuffer() {
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.SerializableControl#ensureBuffer(int)
+         */
+        @Override
+        public void ensureBuffer(int size) {
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.SerializableControl#alignBuffer(int)
+         */
+        @Override
+        public void alignBuffer(int alignment) {
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.SerializableControl#cachedSerialize(org.epics.pvdata.pv.Field, java.nio.ByteBuffer)
+         */
+        @Override
+        public void cachedSerialize(Field field, ByteBuffer buffer) {
+            field.serialize(buffer, this);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.benchmark.BenchmarkData.Shape;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.misc.BitSetUtil;
+import org.epics.pvdata.misc.BitSetUtilFactory;
+import org.epics.pvdata.pv.PVStructure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BitSetUtil.compress of a BitSet that has every field set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitSetUtilBenchmark {
+    private static final BitSetUtil bitSetUtil = BitSetUtilFactory.getCompressBitSet();
+
+    @Param({"NTScalar", "NTTable"})
+    public Shape shape;
+
+    private PVStructure pvStructure;
+    private BitSet bitSet;
+    private int numberFields;
+
+    @Setup
+    public void setup() {
+        pvStructure = BenchmarkData.create(shape, 16);
+        numberFields = pvStructure.getNumberFields();
+        bitSet = new BitSet(numberFields);
+    }
+
+    @Benchmark
+    public BitSet compressAllSet() {
+        bitSet.set(1, numberFields);
+        bitSetUtil.compress(bitSet, pvStructure);
+        return bitSet;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Convert.copy between scalar arrays of the same and of different element types.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConvertBenchmark {
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    @Param({"16", "1000", "100000"})
+    public int arrayLength;
+
+    private PVDoubleArray from;
+    private PVScalarArray toDouble;
+    private PVScalarArray toInt;
+    private PVScalarArray toFloat;
+
+    @Setup
+    public void setup() {
+        from = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+        double[] data = new double[arrayLength];
+        for(int i=0; i<arrayLength; i++) data[i] = i;
+        from.put(0, arrayLength, data, 0);
+        toDouble = pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+        toInt = pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        toFloat = pvDataCreate.createPVScalarArray(ScalarType.pvFloat);
+    }
+
+    @Benchmark
+    public PVScalarArray copySameType() {
+        convert.copy(from, toDouble);
+        return toDouble;
+    }
+
+    @Benchmark
+    public PVScalarArray copyDoubleToInt() {
+        convert.copy(from, toInt);
+        return toInt;
+    }
+
+    @Benchmark
+    public PVScalarArray copyDoubleToFloat() {
+        convert.copy(from, toFloat);
+        return toFloat;
+    }
+}
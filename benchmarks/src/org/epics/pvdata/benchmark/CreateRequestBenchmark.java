@@ -0,0 +1,55 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.pv.PVStructure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * CreateRequest.createRequest for typical request strings, with and without the request cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateRequestBenchmark {
+    @Param({
+        "",
+        "field(value,alarm,timeStamp)",
+        "record[process=true,queueSize=5]field(value,alarm,timeStamp[shareData=true],power.value)",
+        "putField(power.value)getField(alarm,timeStamp,power{value,alarm},current{value,alarm},voltage{value,alarm})"
+    })
+    public String request;
+
+    @Param({"0", "256"})
+    public int cacheSize;
+
+    private final CreateRequest createRequest = CreateRequest.create();
+
+    @Setup
+    public void setup() {
+        CreateRequest.setCacheSize(cacheSize);
+    }
+
+    @Benchmark
+    public PVStructure createRequest() {
+        return createRequest.createRequest(request);
+    }
+}
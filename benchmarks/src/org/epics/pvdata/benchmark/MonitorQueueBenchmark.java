@@ -0,0 +1,90 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.benchmark.BenchmarkData.Shape;
+import org.epics.pvdata.monitor.MonitorElement;
+import org.epics.pvdata.monitor.MonitorQueue;
+import org.epics.pvdata.monitor.MonitorQueueFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Handing MonitorElements from a producer to a consumer through a MonitorQueue,
+ * synchronized the way pvAccess monitors use it.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MonitorQueueBenchmark {
+    @Param({"2", "16"})
+    public int queueSize;
+
+    @Param({"false", "true"})
+    public boolean instrumented;
+
+    private MonitorQueue queue;
+
+    @Setup
+    public void setup() {
+        MonitorElement[] monitorElements = new MonitorElement[queueSize];
+        for(int i=0; i<queueSize; i++) {
+            monitorElements[i] = MonitorQueueFactory.createMonitorElement(
+                BenchmarkData.create(Shape.NTScalar, 0));
+        }
+        queue = MonitorQueueFactory.create(monitorElements, instrumented);
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean put() {
+        synchronized(queue) {
+            MonitorElement monitorElement = queue.getFree();
+            if(monitorElement==null) return false;
+            monitorElement.getChangedBitSet().set(1);
+            queue.setUsed(monitorElement);
+            return true;
+        }
+    }
+
+    @Benchmark
+    @Group("handoff")
+    @GroupThreads(1)
+    public boolean poll() {
+        synchronized(queue) {
+            MonitorElement monitorElement = queue.getUsed();
+            if(monitorElement==null) return false;
+            monitorElement.getChangedBitSet().clear();
+            queue.releaseUsed(monitorElement);
+            return true;
+        }
+    }
+
+    @Benchmark
+    public MonitorElement singleThreadCycle() {
+        MonitorElement monitorElement = queue.getFree();
+        queue.setUsed(monitorElement);
+        monitorElement = queue.getUsed();
+        queue.releaseUsed(monitorElement);
+        return monitorElement;
+    }
+}
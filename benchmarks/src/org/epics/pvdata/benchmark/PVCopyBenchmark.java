@@ -0,0 +1,79 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.benchmark.BenchmarkData.Shape;
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.copy.PVCopy;
+import org.epics.pvdata.copy.PVCopyFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVStructure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PVCopy.updateCopySetBitSet after a change to the value field of the master.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PVCopyBenchmark {
+    @Param({"NTScalar", "NTScalarArray"})
+    public Shape shape;
+
+    @Param({"field()", "field(value,alarm,timeStamp)"})
+    public String request;
+
+    private PVStructure pvMaster;
+    private PVCopy pvCopy;
+    private PVStructure pvCopyStructure;
+    private BitSet bitSet;
+    private PVField value;
+    private double[] arrayData;
+    private int count = 0;
+
+    @Setup
+    public void setup() {
+        pvMaster = BenchmarkData.create(shape, 1000);
+        PVStructure pvRequest = CreateRequest.create().createRequest(request);
+        pvCopy = PVCopyFactory.create(pvMaster, pvRequest, "field");
+        pvCopyStructure = pvCopy.createPVStructure();
+        bitSet = new BitSet(pvCopyStructure.getNumberFields());
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        value = pvMaster.getSubField("value");
+        arrayData = new double[1000];
+    }
+
+    @Benchmark
+    public BitSet updateCopySetBitSet() {
+        count++;
+        if(value instanceof PVDouble) {
+            ((PVDouble)value).put(count);
+        } else {
+            arrayData[0] = count;
+            ((PVDoubleArray)value).put(0, arrayData.length, arrayData, 0);
+        }
+        bitSet.clear();
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        return bitSet;
+    }
+}
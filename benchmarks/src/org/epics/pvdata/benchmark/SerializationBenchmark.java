@@ -0,0 +1,75 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.epics.pvdata.benchmark.BenchmarkData.Shape;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.SerializableControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full and partial (BitSet) serialization of normative type shapes.
+ * The partial case marks value, alarm.severity and timeStamp as changed,
+ * which is what a typical monitor update sends.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+    @Param({"NTScalar", "NTScalarArray", "NTTable"})
+    public Shape shape;
+
+    @Param({"1000"})
+    public int arrayLength;
+
+    private PVStructure pvStructure;
+    private BitSet changedBitSet;
+    private ByteBuffer buffer;
+    private final SerializableControl control = new BenchmarkData.NoFlushControl();
+
+    @Setup
+    public void setup() {
+        pvStructure = BenchmarkData.create(shape, arrayLength);
+        buffer = ByteBuffer.allocate(16*1024*1024);
+        changedBitSet = new BitSet(pvStructure.getNumberFields());
+        changedBitSet.set(pvStructure.getSubField("value").getFieldOffset());
+        changedBitSet.set(pvStructure.getSubField("alarm.severity").getFieldOffset());
+        PVField timeStamp = pvStructure.getSubField("timeStamp");
+        changedBitSet.set(timeStamp.getFieldOffset());
+    }
+
+    @Benchmark
+    public ByteBuffer serializeFull() {
+        buffer.clear();
+        pvStructure.serialize(buffer, control);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer serializeBitSet() {
+        buffer.clear();
+        changedBitSet.serialize(buffer, control);
+        pvStructure.serialize(buffer, control, changedBitSet);
+        return buffer;
+    }
+}
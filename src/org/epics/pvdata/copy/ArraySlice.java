@@ -0,0 +1,315 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.pv.ArrayData;
+import org.epics.pvdata.pv.BooleanArrayData;
+import org.epics.pvdata.pv.ByteArrayData;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.FloatArrayData;
+import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.LongArrayData;
+import org.epics.pvdata.pv.PVBooleanArray;
+import org.epics.pvdata.pv.PVByteArray;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVFloatArray;
+import org.epics.pvdata.pv.PVIntArray;
+import org.epics.pvdata.pv.PVLongArray;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.PVShortArray;
+import org.epics.pvdata.pv.PVStringArray;
+import org.epics.pvdata.pv.PVUByteArray;
+import org.epics.pvdata.pv.PVUIntArray;
+import org.epics.pvdata.pv.PVULongArray;
+import org.epics.pvdata.pv.PVUShortArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.ShortArrayData;
+import org.epics.pvdata.pv.StringArrayData;
+
+/**
+ * A range of elements of a scalar array selected by the request option slice=start:end:stride.
+ * start defaults to 0, end (exclusive) to the length of the array and stride to 1.
+ */
+class ArraySlice {
+    /**
+     * The name of the option that selects a slice.
+     */
+    static final String optionName = "slice";
+
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    private final int start;
+    private final int end; // -1 means the end of the array
+    private final int stride;
+
+    private ArraySlice(int start,int end,int stride) {
+        this.start = start;
+        this.end = end;
+        this.stride = stride;
+    }
+
+    /**
+     * Parse start:end:stride or start:end where each part can be empty.
+     * @param value The option value.
+     * @return The slice or null if value is not valid.
+     */
+    static ArraySlice create(String value) {
+        String[] parts = value.split(":",-1);
+        if(parts.length<2 || parts.length>3) return null;
+        try {
+            int start = parts[0].length()==0 ? 0 : Integer.parseInt(parts[0]);
+            int end = parts[1].length()==0 ? -1 : Integer.parseInt(parts[1]);
+            int stride = (parts.length<3 || parts[2].length()==0) ? 1 : Integer.parseInt(parts[2]);
+            if(start<0 || stride<1) return null;
+            if(end>=0 && end<start) return null;
+            return new ArraySlice(start,end,stride);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copy the slice of from to to, which gets the length of the slice.
+     * @param from The master array.
+     * @param to The array in the copy.
+     */
+    void copy(PVScalarArray from,PVScalarArray to) {
+        int length = from.getLength();
+        int first = Math.min(start,length);
+        int last = (end<0) ? length : Math.min(end,length);
+        copy(from,first,last,to);
+    }
+
+    /**
+     * Copy the slice of from to to unless to already holds it.
+     * The slice is compared in place, so nothing is copied when it has not changed.
+     * @param from The master array.
+     * @param to The array in the copy.
+     * @return true if to was changed.
+     */
+    boolean copyChanged(PVScalarArray from,PVScalarArray to) {
+        int length = from.getLength();
+        int first = Math.min(start,length);
+        int last = (end<0) ? length : Math.min(end,length);
+        int count = (last - first + stride - 1)/stride;
+        if(to.getLength()==count
+        && to.getScalarArray().getElementType()==from.getScalarArray().getElementType())
+        {
+            ArrayData<?> fromData = get(from,first,last - first);
+            ArrayData<?> toData = get(to,0,count);
+            if(equals(fromData.data,fromData.offset,toData.data,toData.offset,count)) return false;
+        }
+        copy(from,first,last,to);
+        return true;
+    }
+
+    private void copy(PVScalarArray from,int first,int last,PVScalarArray to) {
+        int count = (last - first + stride - 1)/stride;
+        if(to.getLength()!=count) to.setLength(count);
+        if(stride==1) {
+            convert.copyScalarArray(from, first, to, 0, count);
+            return;
+        }
+        ScalarType elementType = from.getScalarArray().getElementType();
+        if(to.getScalarArray().getElementType()!=elementType) {
+            for(int i=0; i<count; i++) {
+                convert.copyScalarArray(from, first + i*stride, to, i, 1);
+            }
+            return;
+        }
+        // one get of the range, one loop over it and one put
+        ArrayData<?> fromData = get(from,first,last - first);
+        put(to,count,gather(fromData.data,fromData.offset,count));
+    }
+
+    private static ArrayData<?> get(PVScalarArray array,int offset,int len) {
+        ArrayData<?> data;
+        switch(array.getScalarArray().getElementType()) {
+        case pvBoolean: data = new BooleanArrayData(); ((PVBooleanArray)array).get(offset,len,(BooleanArrayData)data); break;
+        case pvByte: data = new ByteArrayData(); ((PVByteArray)array).get(offset,len,(ByteArrayData)data); break;
+        case pvShort: data = new ShortArrayData(); ((PVShortArray)array).get(offset,len,(ShortArrayData)data); break;
+        case pvInt: data = new IntArrayData(); ((PVIntArray)array).get(offset,len,(IntArrayData)data); break;
+        case pvLong: data = new LongArrayData(); ((PVLongArray)array).get(offset,len,(LongArrayData)data); break;
+        case pvUByte: data = new ByteArrayData(); ((PVUByteArray)array).get(offset,len,(ByteArrayData)data); break;
+        case pvUShort: data = new ShortArrayData(); ((PVUShortArray)array).get(offset,len,(ShortArrayData)data); break;
+        case pvUInt: data = new IntArrayData(); ((PVUIntArray)array).get(offset,len,(IntArrayData)data); break;
+        case pvULong: data = new LongArrayData(); ((PVULongArray)array).get(offset,len,(LongArrayData)data); break;
+        case pvFloat: data = new FloatArrayData(); ((PVFloatArray)array).get(offset,len,(FloatArrayData)data); break;
+        case pvDouble: data = new DoubleArrayData(); ((PVDoubleArray)array).get(offset,len,(DoubleArrayData)data); break;
+        case pvString: data = new StringArrayData(); ((PVStringArray)array).get(offset,len,(StringArrayData)data); break;
+        default: throw new IllegalArgumentException("unknown scalar type");
+        }
+        return data;
+    }
+
+    private static void put(PVScalarArray array,int len,Object from) {
+        switch(array.getScalarArray().getElementType()) {
+        case pvBoolean: ((PVBooleanArray)array).put(0,len,(boolean[])from,0); break;
+        case pvByte: ((PVByteArray)array).put(0,len,(byte[])from,0); break;
+        case pvShort: ((PVShortArray)array).put(0,len,(short[])from,0); break;
+        case pvInt: ((PVIntArray)array).put(0,len,(int[])from,0); break;
+        case pvLong: ((PVLongArray)array).put(0,len,(long[])from,0); break;
+        case pvUByte: ((PVUByteArray)array).put(0,len,(byte[])from,0); break;
+        case pvUShort: ((PVUShortArray)array).put(0,len,(short[])from,0); break;
+        case pvUInt: ((PVUIntArray)array).put(0,len,(int[])from,0); break;
+        case pvULong: ((PVULongArray)array).put(0,len,(long[])from,0); break;
+        case pvFloat: ((PVFloatArray)array).put(0,len,(float[])from,0); break;
+        case pvDouble: ((PVDoubleArray)array).put(0,len,(double[])from,0); break;
+        case pvString: ((PVStringArray)array).put(0,len,(String[])from,0); break;
+        default: throw new IllegalArgumentException("unknown scalar type");
+        }
+    }
+
+    /*
+     * Every stride element of a, starting at aOffset.
+     */
+    private Object gather(Object a,int aOffset,int count) {
+        if(a instanceof double[]) {
+            double[] from = (double[])a;
+            double[] to = new double[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        if(a instanceof float[]) {
+            float[] from = (float[])a;
+            float[] to = new float[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        if(a instanceof long[]) {
+            long[] from = (long[])a;
+            long[] to = new long[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        if(a instanceof int[]) {
+            int[] from = (int[])a;
+            int[] to = new int[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        if(a instanceof short[]) {
+            short[] from = (short[])a;
+            short[] to = new short[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        if(a instanceof byte[]) {
+            byte[] from = (byte[])a;
+            byte[] to = new byte[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        if(a instanceof boolean[]) {
+            boolean[] from = (boolean[])a;
+            boolean[] to = new boolean[count];
+            for(int i=0; i<count; i++) to[i] = from[aOffset + i*stride];
+            return to;
+        }
+        Object[] from = (Object[])a;
+        String[] to = new String[count];
+        for(int i=0; i<count; i++) to[i] = (String)from[aOffset + i*stride];
+        return to;
+    }
+
+    /*
+     * Are every stride element of a, starting at aOffset, equal to the count elements of b?
+     * a and b have the same type. Floating point values are compared as by equals.
+     */
+    private boolean equals(Object a,int aOffset,Object b,int bOffset,int count) {
+        if(a instanceof double[]) {
+            double[] x = (double[])a;
+            double[] y = (double[])b;
+            for(int i=0; i<count; i++) {
+                if(Double.doubleToLongBits(x[aOffset + i*stride])!=Double.doubleToLongBits(y[bOffset + i])) return false;
+            }
+            return true;
+        }
+        if(a instanceof float[]) {
+            float[] x = (float[])a;
+            float[] y = (float[])b;
+            for(int i=0; i<count; i++) {
+                if(Float.floatToIntBits(x[aOffset + i*stride])!=Float.floatToIntBits(y[bOffset + i])) return false;
+            }
+            return true;
+        }
+        if(a instanceof long[]) {
+            long[] x = (long[])a;
+            long[] y = (long[])b;
+            for(int i=0; i<count; i++) {
+                if(x[aOffset + i*stride]!=y[bOffset + i]) return false;
+            }
+            return true;
+        }
+        if(a instanceof int[]) {
+            int[] x = (int[])a;
+            int[] y = (int[])b;
+            for(int i=0; i<count; i++) {
+                if(x[aOffset + i*stride]!=y[bOffset + i]) return false;
+            }
+            return true;
+        }
+        if(a instanceof short[]) {
+            short[] x = (short[])a;
+            short[] y = (short[])b;
+            for(int i=0; i<count; i++) {
+                if(x[aOffset + i*stride]!=y[bOffset + i]) return false;
+            }
+            return true;
+        }
+        if(a instanceof byte[]) {
+            byte[] x = (byte[])a;
+            byte[] y = (byte[])b;
+            for(int i=0; i<count; i++) {
+                if(x[aOffset + i*stride]!=y[bOffset + i]) return false;
+            }
+            return true;
+        }
+        if(a instanceof boolean[]) {
+            boolean[] x = (boolean[])a;
+            boolean[] y = (boolean[])b;
+            for(int i=0; i<count; i++) {
+                if(x[aOffset + i*stride]!=y[bOffset + i]) return false;
+            }
+            return true;
+        }
+        Object[] x = (Object[])a;
+        Object[] y = (Object[])b;
+        for(int i=0; i<count; i++) {
+            Object value = x[aOffset + i*stride];
+            if(value==null ? y[bOffset + i]!=null : !value.equals(y[bOffset + i])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Copy the elements of from, the array in the copy, to the slice of to.
+     * @param from The array in the copy.
+     * @param to The master array.
+     */
+    void copyBack(PVScalarArray from,PVScalarArray to) {
+        int count = from.getLength();
+        if(end>=0) count = Math.min(count,(end - start + stride - 1)/stride);
+        if(stride==1) {
+            convert.copyScalarArray(from, 0, to, start, count);
+            return;
+        }
+        if(count<=0) return;
+        int newLength = start + (count - 1)*stride + 1;
+        if(newLength>to.getLength() && to.isCapacityMutable()) to.setLength(newLength);
+        for(int i=0; i<count; i++) {
+            convert.copyScalarArray(from, i, to, start + i*stride, 1);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return start + ":" + (end<0 ? "" : Integer.toString(end)) + ":" + stride;
+    }
+}
@@ -4,18 +4,21 @@
 package org.epics.pvdata.copy;
 
 import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.epics.pvdata.factory.FieldFactory;
 import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.pv.Field;
 import org.epics.pvdata.pv.FieldCreate;
 import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVString;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.ScalarType;
 import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.Type;
 
 /**
  * @author mrk
@@ -23,6 +26,10 @@ import org.epics.pvdata.pv.Structure;
  * This is mainly used by pvAccess clients.
  * Given a request string it creates a pvRequest structure that can be passed to the pvAccess create methods.
  * In turn pvAccess passes the pvRequest to a local channel provider which then passes it to pvCopy.
+ * <p>
+ * The options of a field can include a slice start:end:stride, for example value[0:1000:10].
+ * Each part can be empty, so value[:100] selects the first 100 elements.
+ * It is saved as the option slice, and for a scalar array PVCopy then copies only the selected elements.
  */
 public class CreateRequest {
     /**
@@ -39,6 +46,7 @@ public class CreateRequest {
      * @param request The field request. See the package overview documentation for details.
      * @return The request structure.
      * If an invalid request was given null is returned and getMessage can be called to find the reason for the failure. 
+     * If the cache is enabled the structure is immutable and is shared by all callers that give the same request.
      */
     public PVStructure createRequest(String request) {
         return createRequestInternal(request);
@@ -51,433 +59,390 @@ public class CreateRequest {
         return message;
     }
 
+    /**
+     * Set the maximum number of request strings for which the result of createRequest is cached.
+     * The default is given by the system property org.epics.pvdata.copy.createRequestCacheSize
+     * or is 256 if the property is not set. A size of 0 disables the cache.
+     * @param size The maximum number of cached requests.
+     */
+    public static void setCacheSize(int size) {
+        if(size<0) throw new IllegalArgumentException("size must be >= 0");
+        synchronized(cache) {
+            cacheSize = size;
+            cache.trimToSize();
+        }
+    }
+    /**
+     * Get the maximum number of cached requests.
+     * @return The size.
+     */
+    public static int getCacheSize() {
+        synchronized(cache) {
+            return cacheSize;
+        }
+    }
+
     private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
     private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
     private static final Structure emptyStructure = fieldCreate.createStructure(new String[0], new Field[0]);
-    private static final Pattern commaPattern = Pattern.compile("[,]");
-    private static final Pattern equalPattern = Pattern.compile("[=]");
+    private static final Field stringField = fieldCreate.createScalar(ScalarType.pvString);
+    private static final String[] sectionNames = {"record","field","getField","putField"};
+    private static final int recordSection = 0;
+    private static int cacheSize = Integer.getInteger("org.epics.pvdata.copy.createRequestCacheSize", 256);
+    private static final RequestCache cache = new RequestCache();
+
     private String message;
+    // The request without white space and the parse position within it.
+    private char[] buffer = new char[64];
+    private int length;
+    private int position;
+    // option values in the order they appear in the request
+    private final ArrayList<String> optionValues = new ArrayList<String>();
 
-    private class Node {
-        String name;
-        List<Node> nodes = new ArrayList<Node> ();
-        Node(String name) {
-            this .name = name;
-        }
-    }
+    /*
+     * The least recently used request is removed when the cache is full.
+     */
+    private static class RequestCache extends LinkedHashMap<String,PVStructure> {
+        private static final long serialVersionUID = 1L;
 
-    private class OptionPair {
-        String name;
-        String value;
-        OptionPair(String name,String value) {
-            this.name = name;
-            this.value = value;
+        RequestCache() {
+            super(16,0.75f,true);
         }
-    }
 
-    private List<OptionPair> optionList = new ArrayList<OptionPair>();
+        void trimToSize() {
+            Iterator<String> iter = keySet().iterator();
+            while(size()>cacheSize) {
+                iter.next();
+                iter.remove();
+            }
+        }
 
-    private String fullFieldName = "";
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String,PVStructure> eldest) {
+            return size()>cacheSize;
+        }
+    }
 
     private PVStructure createRequestInternal(String request)
     {
+        message = "";
+        if(request==null) request = "";
+        PVStructure pvStructure;
+        synchronized(cache) {
+            pvStructure = cache.get(request);
+        }
+        if(pvStructure!=null) return pvStructure;
         try {
-            message = "";
-            fullFieldName = "";
-            optionList.clear();
-            if(request!=null) request = request.replaceAll("\\s+","");
-            if(request==null || request.length()<=0) {
-                PVStructure pvStructure =  pvDataCreate.createPVStructure(emptyStructure);
-                return pvStructure;
-            }
-            int offsetRecord = request.indexOf("record[");
-            int offsetField = request.indexOf("field(");
-            int offsetPutField = request.indexOf("putField(");
-            int offsetGetField = request.indexOf("getField(");
-            if(offsetRecord==-1&&offsetField==-1&&offsetPutField==-1&&offsetGetField==-1) {
-                request = "field(" + request + ")";
-                offsetField = request.indexOf("field(");
-            }
-            int numParan = 0;
-            int numBrace = 0;
-            int numBracket = 0;
-            for(int i=0; i< request.length() ; ++i) {
-                char chr = request.charAt(i);
-                if(chr=='(') numParan++;
-                if(chr==')') numParan--;
-                if(chr=='{') numBrace++;
-                if(chr=='}') numBrace--;
-                if(chr=='[') numBracket++;
-                if(chr==']') numBracket--;
+            pvStructure = parse(request);
+        } catch (IllegalStateException e) {
+            message = "while creating Structure exception " + e.getMessage();
+            return null;
+        } catch (IllegalArgumentException e) {
+            message = e.getMessage();
+            return null;
+        } finally {
+            optionValues.clear();
+        }
+        if(pvStructure==null) return null;
+        synchronized(cache) {
+            if(cacheSize>0) {
+                // a shared result must not be changed by any caller
+                pvStructure.setImmutable();
+                cache.put(request, pvStructure);
             }
-            if(numParan!=0) {
-                message = "mismatched () " + numParan;
-                return null;
+        }
+        return pvStructure;
+    }
+
+    /*
+     * A single pass over the request.
+     * Returns null, with message set, if the (), {} or [] do not match.
+     * The grammar, after white space is removed, is:
+     *    request := (section ","?)* | fieldList
+     *    section := "record" options | ("field"|"getField"|"putField") "(" options? ","? fieldList? ")"
+     *    fieldList := item ("," item)*
+     *    item := name options? ("." item | "{" fieldList "}")?
+     *    options := "[" option ("," option)* "]"
+     *    option := name "=" value | start ":" end (":" stride)?
+     * If a section appears more than once only the first is used.
+     */
+    private PVStructure parse(String request) {
+        int requestLength = request.length();
+        if(buffer.length<requestLength) buffer = new char[requestLength];
+        length = 0;
+        int numParen = 0;
+        int numBrace = 0;
+        int numBracket = 0;
+        for(int i=0; i<requestLength; i++) {
+            char chr = request.charAt(i);
+            if(Character.isWhitespace(chr)) continue;
+            buffer[length++] = chr;
+            switch(chr) {
+            case '(': numParen++; break;
+            case ')': numParen--; break;
+            case '{': numBrace++; break;
+            case '}': numBrace--; break;
+            case '[': numBracket++; break;
+            case ']': numBracket--; break;
             }
-            if(numBrace!=0) {
-                message = "mismatched {} " + numBrace;
-                return null;
+        }
+        if(numParen!=0) {
+            message = "mismatched () " + numParen;
+            return null;
+        }
+        if(numBrace!=0) {
+            message = "mismatched {} " + numBrace;
+            return null;
+        }
+        if(numBracket!=0) {
+            message = "mismatched [] " + numBracket;
+            return null;
+        }
+        position = 0;
+        if(length==0) return pvDataCreate.createPVStructure(emptyStructure);
+        Field[] sections = new Field[sectionNames.length];
+        boolean[] found = new boolean[sectionNames.length];
+        // the index in optionValues of the first value of each section
+        int[] firstValue = new int[sectionNames.length];
+        int numberSections = 0;
+        if(findSection()<0) {
+            // the request is just a field list
+            sections[1] = parseFieldList(length,false);
+            numberSections = 1;
+        }
+        while(position<length) {
+            if(buffer[position]==',') {
+                // sections can be separated by commas
+                position++;
+                continue;
             }
-            if(numBracket!=0) {
-                message = "mismatched [] " + numBracket;
-                return null;
+            int section = findSection();
+            if(section<0) {
+                throw new IllegalStateException("illegal request " + request);
             }
-            List<Node> top = new ArrayList<Node>();
-            try {
-                if(offsetRecord>=0) {
-                    fullFieldName = "record";
-                    int openBracket = request.indexOf('[', offsetRecord);
-                    int closeBracket = request.indexOf(']', openBracket);
-                    if(closeBracket==-1) {
-                        message = request.substring(offsetRecord) + "record[ does not have matching ]";
-                        return null;
-                    }
-                    if(closeBracket-openBracket > 3) {
-                        Node node = new Node("record");
-                        Node optNode = createRequestOptions(
-                                request.substring(openBracket+1,closeBracket));
-                        node.nodes.add(optNode);
-                        top.add(node);
-                    }
-                }
-                if(offsetField>=0) {
-                    fullFieldName = "field";
-                    Node node = new Node("field");
-                    int openParan = request.indexOf('(', offsetField);
-                    int closeParan = request.indexOf(')', openParan);
-                    if(closeParan == -1) {
-                        message = request.substring(offsetField)
-                                + " field( does not have matching )";
-                        return null;
-                    }
-                    if(closeParan>openParan+1) {
-                        String req = request.substring(openParan+1,closeParan);
-                        req = createTopOption(node,req);
-                        createSubNode(node,req);
-                    }
-                    top.add(node);
-                }
-                if(offsetGetField>=0) {
-                    fullFieldName = "getField";
-                    Node node = new Node("getField");
-                    int openParan = request.indexOf('(', offsetGetField);
-                    int closeParan = request.indexOf(')', openParan);
-                    if(closeParan == -1) {
-                        message = request.substring(offsetField)
-                                + " getField( does not have matching )";
-                        return null;
-                    }
-                    if(closeParan>openParan+1) {
-                        String req = request.substring(openParan+1,closeParan);
-                        req = createTopOption(node,req);
-                        createSubNode(node,req);
-                    }
-                    top.add(node);
-                }
-                if(offsetPutField>=0) {
-                    fullFieldName = "putField";
-                    Node node = new Node("putField");
-                    int openParan = request.indexOf('(', offsetPutField);
-                    int closeParan = request.indexOf(')', openParan);
-                    if(closeParan == -1) {
-                        message = request.substring(offsetField)
-                                + " putField( does not have matching )";
-                        return null;
-                    }
-                    if(closeParan>openParan+1) {
-                        String req = request.substring(openParan+1,closeParan);
-                        req = createTopOption(node,req);
-                        createSubNode(node,req);
-                    }
-                    top.add(node);
-                }
-            } catch (IllegalStateException e) {
-                message = "while creating Structure exception " + e.getMessage();
-                return null;
+            position += sectionNames[section].length();
+            if(found[section]) {
+                // only the first section with a name is used
+                position = (section==recordSection) ? findClose('[',']') + 1 : findClose('(',')') + 1;
+                continue;
             }
-            int num = top.size();
-            Field[] fields = new Field[num];
-            String[] names = new String[num];
-            for(int i=0; i<num; ++i) {
-                Node node = top.get(i);
-                names[i] = node.name;
-                List<Node> subNode = node.nodes;
-                if(subNode.isEmpty()) {
-                    fields[i] = emptyStructure;
-                } else {
-                    fields[i] = createSubStructure(subNode);
+            found[section] = true;
+            firstValue[section] = optionValues.size();
+            if(section==recordSection) {
+                int end = findClose('[',']');
+                if(end==position+1) {
+                    // record[] is the same as no record options
+                    position = end + 1;
+                    continue;
                 }
+                Structure options = parseOptions();
+                sections[section] = fieldCreate.createStructure(
+                    new String[] {"_options"},new Field[] {options});
+            } else {
+                int end = findClose('(',')');
+                position++;
+                sections[section] = parseFieldList(end,true);
+                position = end + 1;
             }
-            Structure structure = fieldCreate.createStructure(names, fields);
-            PVStructure pvStructure = pvDataCreate.createPVStructure(structure);
-            for(OptionPair pair: optionList) {
-                String name = pair.name;
-                String value = pair.value;
-                PVString pvField = pvStructure.getSubField(PVString.class,name);
-                pvField.put(value);
-            }
-            optionList.clear();
-            return pvStructure;
-        } catch (Exception e) {
-            message = e.getMessage();
-            return null;
+            numberSections++;
         }
-    }
-
-    private int findMatchingBrace(String request,int index,int numOpen) {
-        int openBrace = request.indexOf('{', index+1);
-        int closeBrace = request.indexOf('}', index+1);
-        if(openBrace==-1 && closeBrace==-1) {
-            String message = "mismatched {} " + request;
-            throw new IllegalStateException(message);
+        String[] names = new String[numberSections];
+        Field[] fields = new Field[numberSections];
+        int next = 0;
+        for(int i=0; i<sections.length; i++) {
+            if(sections[i]==null) continue;
+            names[next] = sectionNames[i];
+            fields[next++] = sections[i];
         }
-        if(openBrace>0) {
-            if(openBrace<closeBrace) return findMatchingBrace(request,openBrace,numOpen+1);
-            if(numOpen==1) return closeBrace;
-            return findMatchingBrace(request,closeBrace,numOpen-1);
+        PVStructure pvStructure = pvDataCreate.createPVStructure(fieldCreate.createStructure(names, fields));
+        if(!optionValues.isEmpty()) {
+            // the sections can be in a different order in the request
+            PVField[] pvSections = pvStructure.getPVFields();
+            next = 0;
+            for(int i=0; i<sections.length; i++) {
+                if(sections[i]==null) continue;
+                setOptionValues((PVStructure)pvSections[next++],firstValue[i]);
+            }
         }
-        if(numOpen==1) return closeBrace;
-        return findMatchingBrace(request,closeBrace,numOpen-1);
+        return pvStructure;
     }
 
-    private int findMatchingBracket(String request,int index) {
-        for(int i=index+1; i< request.length(); ++i) {
-            if(request.charAt(i) == ']') {
-                if(i==index+1) {
-                    message = " mismatched [ ]" + message;
-                    throw new IllegalStateException(message);
+    /*
+     * If the request at position starts with a section return its index, else -1.
+     */
+    private int findSection() {
+        for(int i=0; i<sectionNames.length; i++) {
+            String name = sectionNames[i];
+            int end = position + name.length();
+            if(end>=length) continue;
+            char open = (i==recordSection) ? '[' : '(';
+            if(buffer[end]!=open) continue;
+            boolean match = true;
+            for(int j=0; j<name.length(); j++) {
+                if(buffer[position+j]!=name.charAt(j)) {
+                    match = false;
+                    break;
                 }
-                return i;
             }
+            if(match) return i;
         }
-        message = " missing ]" + request;
-        throw new IllegalStateException(message);
+        return -1;
     }
 
-    private int findEndField(String request) {
-        int ind = 0;
-        int maxind = request.length() -1;
-        while(true) {
-            if(request.charAt(ind)==',') return ind;
-            if(request.charAt(ind)=='[') {
-                int closeBracket = findMatchingBracket(request,ind);
-                if(closeBracket==-1) return closeBracket;
-                ind = closeBracket;
-                continue;
-            }
-            if(request.charAt(ind)=='{') {
-                int closeBrace = findMatchingBrace(request,ind,1);
-                if(ind>=request.length()) return request.length();
-                ind = closeBrace;
-                continue;
-            }
-            if(request.charAt(ind)=='.') {
-                ++ind;
-                continue;
+    /*
+     * Find the close character that matches the open character at position.
+     */
+    private int findClose(char open,char close) {
+        int depth = 0;
+        for(int i=position; i<length; i++) {
+            char chr = buffer[i];
+            if(chr==open) {
+                depth++;
+            } else if(chr==close) {
+                if(--depth==0) return i;
             }
-            if(ind>=maxind) break;
-            ++ind;
         }
-        return request.length();
-
+        throw new IllegalStateException("mismatched " + open + close + " " + new String(buffer,0,length));
     }
 
-
-    private Node createRequestOptions(String request) {
-        if(request.length()<=1) {
-            throw new IllegalStateException("logic error empty options");
+    /*
+     * Parse the field list of a section that ends at end.
+     */
+    private Structure parseFieldList(int end,boolean allowOptions) {
+        ArrayList<String> names = new ArrayList<String>();
+        ArrayList<Field> fields = new ArrayList<Field>();
+        if(allowOptions && position<end && buffer[position]=='[') {
+            names.add("_options");
+            fields.add(parseOptions());
+            if(position<end && buffer[position]==',') position++;
         }
-        List<Node> top = new ArrayList<Node>();
-
-        String[] items = commaPattern.split(request);
-        int nitems = items.length;
-
-        for(int j=0; j<nitems; j++) {
-            String[] names = equalPattern.split(items[j]);
-            if(names.length!=2) {
-                message = "illegal option " + request;
-                throw new IllegalStateException(message);
-            }
-            Node node = new Node(names[0]);
-            String name = fullFieldName + "._options." + names[0];
-            String value = names[1];
-            optionList.add(new OptionPair(name,value));
-            top.add(node);
+        if(position<end) parseItems(end,names,fields);
+        if(position!=end) {
+            throw new IllegalStateException("illegal syntax " + new String(buffer,0,length));
         }
-        Node node = new Node("_options");
-        node.nodes = top;
-
-        return node;
+        if(names.isEmpty()) return emptyStructure;
+        return createStructure(names,fields);
     }
 
-    private String createTopOption(Node node,String request) {
-        int length = request.length();
-        if(length<=0) return request;
-        char open = request.charAt(0);
-        if(open!='[') return request;
-        int end = 0;
-        for(int i=0; i<length; ++i) {
-            char chr= request.charAt(i);
-            if(chr==']') {end = i; break;}
+    private void parseItems(int end,ArrayList<String> names,ArrayList<Field> fields) {
+        while(true) {
+            parseItem(end,names,fields);
+            if(position>=end || buffer[position]!=',') return;
+            position++;
         }
-        if(end==0)return request;
-        String options = request.substring(1,end);
-        Node optionNode = createRequestOptions(options);
-        if(optionNode==null) return request;
-        node.nodes.add(optionNode);
-        if(end+1<length && request.charAt(end+1)==',') end = end+1;
-        return request.substring(end+1) ;
     }
 
-    private void createSubNode(Node node,String request) {
-        int end = 0;
-
-        for(int i=0; i<request.length(); ++i) {
-            char chr= request.charAt(i);
-            if(chr=='[') {end = i; break;}
-            if(chr=='.') {end = i; break;}
-            if(chr=='{') {end = i; break;}
-            if(chr==',') {end = i; break;}
+    private void parseItem(int end,ArrayList<String> names,ArrayList<Field> fields) {
+        int start = position;
+        while(position<end) {
+            char chr = buffer[position];
+            if(chr=='[' || chr=='.' || chr=='{' || chr==',' || chr=='}'
+            || chr==']' || chr=='(' || chr==')' || chr=='=') break;
+            position++;
         }
-        char chr = request.charAt(end);
-        Node optionNode = null;
-        if(chr=='[') {
-            String saveFullName = fullFieldName;
-            fullFieldName += "." + request.substring(0, end);
-            int endBracket = findMatchingBracket(request,end);
-            String options = request.substring(end+1,endBracket);
-            optionNode = createRequestOptions(options);
-            fullFieldName = saveFullName;
-            int next = endBracket+1;
-            if(next<request.length()) {
-                request = request.substring(0, end) + request.substring(endBracket+1);
-            } else {
-                request = request.substring(0, end);
-            }
-            end = 0;
-            for(int i=0; i<request.length(); ++i) {
-                chr= request.charAt(i);
-                if(chr=='.') {end = i; break;}
-                if(chr=='{') {end = i; break;}
-                if(chr==',') {end = i; break;}
-            }
+        if(position==start) {
+            throw new IllegalStateException("null field name " + new String(buffer,start,length-start));
         }
-        if(end==0) end = request.length();
-        String name = request.substring(0, end);
-        if(name.length()<1) {
-            message = "null field name " + request;
-            throw new IllegalStateException(message);
+        names.add(new String(buffer,start,position-start));
+        ArrayList<String> subNames = null;
+        ArrayList<Field> subFields = null;
+        if(position<end && buffer[position]=='[') {
+            subNames = new ArrayList<String>();
+            subFields = new ArrayList<Field>();
+            subNames.add("_options");
+            subFields.add(parseOptions());
         }
-        String saveFullName = fullFieldName;
-        fullFieldName += "." + name;
-        if(end==request.length()) {
-            Node subNode = new Node(name);
-            if(optionNode!=null) {
-                subNode.nodes.add(optionNode);
+        if(position<end && (buffer[position]=='.' || buffer[position]=='{')) {
+            if(subNames==null) {
+                subNames = new ArrayList<String>();
+                subFields = new ArrayList<Field>();
             }
-            node.nodes.add(subNode);
-            fullFieldName = saveFullName;
-            return;
-        }
-        if(chr==',') {
-            Node subNode = new Node(name);
-            if(optionNode!=null) {
-                subNode.nodes.add(optionNode);
+            if(buffer[position]=='.') {
+                position++;
+                parseItem(end,subNames,subFields);
+            } else {
+                int close = findClose('{','}');
+                if(close==position+1) {
+                    throw new IllegalStateException("empty {} " + new String(buffer,0,length));
+                }
+                position++;
+                parseItems(close,subNames,subFields);
+                if(position!=close) {
+                    throw new IllegalStateException("illegal syntax " + new String(buffer,0,length));
+                }
+                position++;
             }
-            node.nodes.add(subNode);
-            String rest = request.substring(end+1);
-            fullFieldName = saveFullName;
-            createSubNode(node,rest);
-            return;
         }
-        if(chr=='.') {
-            request = request.substring(end+1);
-            if(request.length()<1) {
-                message = "null field name " + request;
-                throw new IllegalStateException(message);
-            }
-            Node subNode = new Node(name);
-            if(optionNode!=null) {
-                subNode.nodes.add(optionNode);
-            }
-            int endField = findEndField(request);
-            String subRequest = request.substring(0, endField);
-            createSubNode(subNode,subRequest);
-            node.nodes.add(subNode);
-            int next = endField+1;
-            if(next>=request.length()) {
-                fullFieldName = saveFullName;
-                return;
-            }
-            request = request.substring(next);
-            fullFieldName = saveFullName;
-            createSubNode(node,request);
-            return;
+        if(subNames==null) {
+            fields.add(emptyStructure);
+        } else {
+            fields.add(createStructure(subNames,subFields));
         }
-        if(chr=='{') {
-            int endBrace = findEndField(request);
-            if((end+1)>=(endBrace-1)) {
-                message = " illegal syntax " + request;
-                throw new IllegalStateException(message);
-            }
-            String subRequest = request.substring(end+1,endBrace-1);
-            if(subRequest.length()<1) {
-                message = " empty {} " + request;
-                throw new IllegalStateException(message);
+    }
+
+    /*
+     * Parse the options that start at position.
+     * The values are saved in optionValues.
+     */
+    private Structure parseOptions() {
+        int end = findClose('[',']');
+        position++;
+        ArrayList<String> names = new ArrayList<String>();
+        while(true) {
+            int start = position;
+            while(position<end && buffer[position]!='=' && buffer[position]!=',') position++;
+            if(position>start && (position==end || buffer[position]==',')) {
+                // start:end:stride is the value of the slice option
+                String slice = new String(buffer,start,position-start);
+                if(ArraySlice.create(slice)==null) {
+                    throw new IllegalStateException("illegal slice " + new String(buffer,0,length));
+                }
+                names.add(ArraySlice.optionName);
+                optionValues.add(slice);
+                if(position==end) break;
+                position++;
+                continue;
             }
-            Node subNode = new Node(name);
-            if(optionNode!=null) {
-                subNode.nodes.add(optionNode);
+            if(position==start || position>=end || buffer[position]!='=') {
+                throw new IllegalStateException("illegal option " + new String(buffer,0,length));
             }
-            createSubNode(subNode,subRequest);
-            node.nodes.add(subNode);
-            int next = endBrace + 1;
-            if(next>=request.length()) {
-                fullFieldName = saveFullName;
-                return;
+            names.add(new String(buffer,start,position-start));
+            start = ++position;
+            while(position<end && buffer[position]!=',' && buffer[position]!='=') position++;
+            if(position==start || (position<end && buffer[position]=='=')) {
+                throw new IllegalStateException("illegal option " + new String(buffer,0,length));
             }
-            request = request.substring(next);
-            fullFieldName = saveFullName;
-            createSubNode(node,request);
-            return;
+            optionValues.add(new String(buffer,start,position-start));
+            if(position==end) break;
+            position++;
         }
-        message = "logic error";
-        throw new IllegalStateException(message);
+        position = end + 1;
+        int number = names.size();
+        Field[] fields = new Field[number];
+        for(int i=0; i<number; i++) fields[i] = stringField;
+        return fieldCreate.createStructure(names.toArray(new String[number]), fields);
     }
 
-    private Field createSubStructure(List<Node> nodes) {
-        int num = nodes.size();
-        Field[] fields = new Field[num];
-        String[] names = new String[num];
-        for(int i=0; i<num; ++i) {
-            Node node = nodes.get(i);
-            names[i] = node.name;
-            if(node.name.equals("_options")) {
-                fields[i] = createOptions(node.nodes);
-            } else {
-                List<Node> subNode = node.nodes;
-                if(subNode.isEmpty()) {
-                    fields[i] = emptyStructure;
-                } else {
-                    fields[i] = createSubStructure(subNode);
-                }
-            }
-        }
-        Structure structure = fieldCreate.createStructure(names, fields);
-        return structure;
+    private static Structure createStructure(ArrayList<String> names,ArrayList<Field> fields) {
+        int number = names.size();
+        return fieldCreate.createStructure(
+            names.toArray(new String[number]),fields.toArray(new Field[number]));
     }
 
-    private Structure createOptions(List<Node> nodes) {
-        int num = nodes.size();
-        Field[] fields = new Field[num];
-        String[] names = new String[num];
-        for(int i=0; i<num; ++i) {
-            Node node = nodes.get(i);
-            names[i] = node.name;
-            fields[i] = fieldCreate.createScalar(ScalarType.pvString);
+    /*
+     * The only string fields of a request are the option values
+     * and they are in the same order as in the request.
+     */
+    private int setOptionValues(PVStructure pvStructure,int next) {
+        PVField[] pvFields = pvStructure.getPVFields();
+        for(int i=0; i<pvFields.length; i++) {
+            PVField pvField = pvFields[i];
+            if(pvField.getField().getType()==Type.structure) {
+                next = setOptionValues((PVStructure)pvField,next);
+            } else {
+                ((PVString)pvField).put(optionValues.get(next++));
+            }
         }
-        Structure structure = fieldCreate.createStructure(names, fields);
-        return structure;
+        return next;
     }
-
 }
@@ -0,0 +1,45 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Shares a PVCopy and a copy of the data between all clients of a master that make the same request.
+ * For each change of the master the shared copies are updated once and the changes are passed
+ * to every listener, so the cost of an update depends on the number of different requests and
+ * not on the number of clients.
+ */
+public interface PVCopyCache {
+    /**
+     * Get the master PVStructure of the cache.
+     * @return The interface.
+     */
+    PVStructure getPVMaster();
+    /**
+     * Subscribe to the copy for a request.
+     * Requests that select the same fields with the same options share a copy.
+     * The shared copy has been initialized from the master when this returns,
+     * so this must also be called with the master locked.
+     * @param pvRequest A PVStructure which describes the set of fields of the master.
+     * @param structureName Must be one of null, "field", "putField", or "getField".
+     * @param listener The listener that is called by update.
+     * @return The subscription or null if the request is not valid for the master.
+     */
+    PVCopySubscription subscribe(PVStructure pvRequest,String structureName,PVCopyListener listener);
+    /**
+     * Update all shared copies from the master and call the listeners of each copy that changed.
+     * The changes of each copy are first passed through the filters that PVFilterFactory creates
+     * for the options of the request, and listeners are only called if the filters pass the update.
+     * This must be called with the master locked.
+     * @param masterBitSet The offsets within the master that have new data.
+     */
+    void update(BitSet masterBitSet);
+    /**
+     * Get the number of different copies.
+     * @return The number.
+     */
+    int getNumberCopies();
+}
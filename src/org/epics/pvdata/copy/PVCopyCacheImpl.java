@@ -0,0 +1,139 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.misc.BitSetVisitor;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ */
+class PVCopyCacheImpl implements PVCopyCache {
+    private final PVStructure pvMaster;
+    // key is the text form of the field request
+    private final HashMap<String,Entry> entryMap = new HashMap<String,Entry>();
+    private final CopyOnWriteArrayList<Entry> entryList = new CopyOnWriteArrayList<Entry>();
+
+    PVCopyCacheImpl(PVStructure pvMaster) {
+        this.pvMaster = pvMaster;
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.copy.PVCopyCache#getPVMaster()
+     */
+    public PVStructure getPVMaster() {
+        return pvMaster;
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.copy.PVCopyCache#subscribe(org.epics.pvdata.pv.PVStructure, java.lang.String, org.epics.pvdata.copy.PVCopyListener)
+     */
+    public PVCopySubscription subscribe(PVStructure pvRequest,String structureName,PVCopyListener listener) {
+        PVStructure pvStruct = PVCopyImpl.getFieldRequest(pvRequest, structureName);
+        if(pvStruct==null) return null;
+        String key = pvStruct.toString();
+        synchronized(entryMap) {
+            Entry entry = entryMap.get(key);
+            if(entry==null) {
+                PVCopyImpl pvCopy = (PVCopyImpl)PVCopyImpl.create(pvMaster, pvStruct);
+                if(pvCopy==null) return null;
+                entry = new Entry(key,pvCopy);
+                entryMap.put(key, entry);
+                entryList.add(entry);
+            }
+            Subscription subscription = new Subscription(entry,listener);
+            entry.subscriptionList.add(subscription);
+            return subscription;
+        }
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.copy.PVCopyCache#update(org.epics.pvdata.misc.BitSet)
+     */
+    public void update(BitSet masterBitSet) {
+        for(Entry entry : entryList) {
+            entry.update(masterBitSet);
+        }
+    }
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.copy.PVCopyCache#getNumberCopies()
+     */
+    public int getNumberCopies() {
+        return entryList.size();
+    }
+
+    private void close(Subscription subscription) {
+        Entry entry = subscription.entry;
+        synchronized(entryMap) {
+            if(!entry.subscriptionList.remove(subscription)) return;
+            if(!entry.subscriptionList.isEmpty()) return;
+            entryMap.remove(entry.key);
+            entryList.remove(entry);
+        }
+    }
+
+    private class Entry implements BitSetVisitor {
+        private final String key;
+        private final PVCopyImpl pvCopy;
+        private final PVStructure pvStructure;
+        private final BitSet changedBitSet;
+        private final PVFilter pvFilter;
+        private final CopyOnWriteArrayList<Subscription> subscriptionList = new CopyOnWriteArrayList<Subscription>();
+
+        private Entry(String key,PVCopyImpl pvCopy) {
+            this.key = key;
+            this.pvCopy = pvCopy;
+            pvStructure = pvCopy.createPVStructure();
+            changedBitSet = new BitSet(pvStructure.getNumberFields());
+            pvCopy.initCopy(pvStructure, changedBitSet);
+            pvFilter = PVFilterFactory.create(pvCopy);
+        }
+
+        private void update(BitSet masterBitSet) {
+            changedBitSet.clear();
+            masterBitSet.forEachSetBit(this);
+            if(changedBitSet.isEmpty()) return;
+            pvCopy.updateCopyFromBitSet(pvStructure, changedBitSet);
+            if(pvFilter!=null && !pvFilter.filter(changedBitSet)) return;
+            for(Subscription subscription : subscriptionList) {
+                subscription.listener.dataChanged(pvStructure, changedBitSet);
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.BitSetVisitor#setBit(int)
+         */
+        public void setBit(int masterOffset) {
+            int offset = pvCopy.getCopyOffset(masterOffset);
+            if(offset>=0) changedBitSet.set(offset);
+        }
+    }
+
+    private class Subscription implements PVCopySubscription {
+        private final Entry entry;
+        private final PVCopyListener listener;
+
+        private Subscription(Entry entry,PVCopyListener listener) {
+            this.entry = entry;
+            this.listener = listener;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVCopySubscription#getPVCopy()
+         */
+        public PVCopy getPVCopy() {
+            return entry.pvCopy;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVCopySubscription#getPVStructure()
+         */
+        public PVStructure getPVStructure() {
+            return entry.pvStructure;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVCopySubscription#close()
+         */
+        public void close() {
+            PVCopyCacheImpl.this.close(this);
+        }
+    }
+}
@@ -23,4 +23,12 @@ public class PVCopyFactory {
     public static PVCopy create(PVStructure pvMaster,PVStructure pvRequest,String structureName) {
     	return PVCopyImpl.create(pvMaster, pvRequest,structureName);
     }
+    /**
+     * Create a cache that shares a PVCopy between all clients of a master that make the same request.
+     * @param pvMaster The master PVStructure.
+     * @return The PVCopyCache interface.
+     */
+    public static PVCopyCache createCache(PVStructure pvMaster) {
+        return new PVCopyCacheImpl(pvMaster);
+    }
 }
@@ -14,8 +14,10 @@ import org.epics.pvdata.pv.Field;
 import org.epics.pvdata.pv.FieldCreate;
 import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVScalarArray;
 import org.epics.pvdata.pv.PVString;
 import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarArray;
 import org.epics.pvdata.pv.Structure;
 import org.epics.pvdata.pv.Type;
 /**
@@ -27,6 +29,16 @@ class PVCopyImpl implements PVCopy{
         PVStructure pvMaster,
         PVStructure pvRequest,
         String structureName)
+    {
+        PVStructure pvStruct = getFieldRequest(pvRequest, structureName);
+        if(pvStruct==null) return null;
+        return create(pvMaster, pvStruct);
+    }
+
+    /*
+     * Get the part of pvRequest that selects the fields of the copy.
+     */
+    static PVStructure getFieldRequest(PVStructure pvRequest,String structureName)
     {
         if(structureName!=null && structureName.length()>0) {
             if(pvRequest.getPVFields().length>0) {
@@ -38,6 +50,14 @@ class PVCopyImpl implements PVCopy{
         if(pvRequest.getSubField("field")!=null) {
             pvStruct = pvRequest.getStructureField("field");
         }
+        return pvStruct;
+    }
+
+    /*
+     * Create from the result of getFieldRequest.
+     */
+    static PVCopy create(PVStructure pvMaster,PVStructure pvStruct)
+    {
         PVCopyImpl impl = new PVCopyImpl(pvMaster);
         boolean result = impl.init(pvStruct);
         if(!result) return null;
@@ -55,6 +75,7 @@ class PVCopyImpl implements PVCopy{
         int structureOffset = 0; // In the copy
         int nfields = 0;
         PVStructure options = null;
+        ArraySlice slice = null; // only for a scalar array
     }
 
 
@@ -66,6 +87,17 @@ class PVCopyImpl implements PVCopy{
     private Structure structure = null;
     private Node headNode = null;
     private PVStructure cacheInitStructure = null;
+    // The following are compiled from the nodes by init.
+    // master field for each copy offset
+    private PVField[] masterPVFields = null;
+    // options for each copy offset. Only offsets that start a node can have options.
+    private PVStructure[] optionsTable = null;
+    // copy offset for each master offset, relative to pvMaster, or -1
+    private int[] copyOffsets = null;
+    // master field for each non structure field of the copy, in copy offset order
+    private PVField[] masterLeafFields = null;
+    // slice for each copy offset or null if the request has no slices
+    private ArraySlice[] slices = null;
 
     private PVCopyImpl(PVStructure pvMaster) {
         this.pvMaster = pvMaster;
@@ -105,81 +137,64 @@ class PVCopyImpl implements PVCopy{
      * @see org.epics.pvdata.copy.PVCopy#getCopyOffset(org.epics.pvdata.pv.PVField)
      */
     public int getCopyOffset(PVField masterPVField) {
-        if(!headNode.isStructure) {
-            Node node = headNode;
-            if(node.masterPVField.equals(masterPVField)) return headNode.structureOffset;
-            PVStructure parent = masterPVField.getParent();
-            int offsetParent = parent.getFieldOffset();
-            int off = masterPVField.getFieldOffset();
-            int offdiff = off -offsetParent;
-            if(offdiff<node.nfields) return headNode.structureOffset + offdiff;
-            return -1;
-        }
-        Node node = getCopyOffset((StructureNode)headNode,masterPVField);
-        if(node!=null) {
-            int offset = masterPVField.getFieldOffset() - node.masterPVField.getFieldOffset();
-            return node.structureOffset + offset;
-        }
-        return -1;
+        int masterOffset = masterPVField.getFieldOffset() - pvMaster.getFieldOffset();
+        if(masterOffset<0 || masterOffset>=copyOffsets.length) return -1;
+        int copyOffset = copyOffsets[masterOffset];
+        if(copyOffset<0) return -1;
+        if(masterPVFields[copyOffset]!=masterPVField) return -1;
+        return copyOffset;
+    }
+    /*
+     * Get the copy offset for an offset relative to the master or -1.
+     */
+    int getCopyOffset(int masterOffset) {
+        if(masterOffset<0 || masterOffset>=copyOffsets.length) return -1;
+        return copyOffsets[masterOffset];
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.copy.PVCopy#getCopyOffset(org.epics.pvdata.pv.PVStructure, org.epics.pvdata.pv.PVField)
      */
     public int getCopyOffset(PVStructure masterPVStructure,PVField masterPVField) {
-        Node node = null;
-        if(!headNode.isStructure) {
-            node = headNode;
-            if(node.masterPVField!=masterPVStructure) {
-                return -1;
-            }
-        } else {
-            node = getCopyOffset((StructureNode)headNode,masterPVStructure);
-        }
-        if(node==null) return -1;
-        int diff = masterPVField.getFieldOffset() - masterPVStructure.getFieldOffset();
-        return node.structureOffset + diff;
+        int masterOffset = masterPVField.getFieldOffset();
+        if(masterOffset<masterPVStructure.getFieldOffset()
+        || masterOffset>=masterPVStructure.getNextFieldOffset()) return -1;
+        return getCopyOffset(masterPVField);
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pvCopy.PVCopy#getPVField(int)
      */
     public PVField getMasterPVField(int structureOffset)
     {
-        Node node = null;
-        if(!headNode.isStructure) {
-            node = headNode;
-        } else {
-            node = getMasterNode((StructureNode)headNode,structureOffset);
-        }
-        if(node==null) {
+        if(structureOffset<0 || structureOffset>=masterPVFields.length) {
             System.err.printf("PVCopy::PVField getRecordPVField(int structureOffset) illegal structureOffset %d %s%n",structureOffset,dump());
             throw new IllegalArgumentException("structureOffset not valid");
         }
-        int diff = structureOffset - node.structureOffset;
-        PVField pvMasterField = node.masterPVField;
-        if(diff==0) return pvMasterField;
-        PVStructure pvStructure = (PVStructure)pvMasterField;
-        return pvStructure.getSubField(pvMasterField.getFieldOffset() + diff);
+        return masterPVFields[structureOffset];
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.copy.PVCopy#initCopy(org.epics.pvdata.pv.PVStructure, org.epics.pvdata.misc.BitSet)
      */
     public void initCopy(PVStructure copyPVStructure, BitSet bitSet) {
         bitSet.set(0,copyPVStructure.getNumberFields(),true);
-        updateCopyFromBitSet(copyPVStructure,headNode,bitSet);
+        updateCopy(copyPVStructure);
     }
     /* (non-Javadoc)
      * @see org.epics.pvioc.pvCopy.PVCopy#updateCopySetBitSet(org.epics.pvdata.pv.PVStructure, org.epics.pvdata.misc.BitSet)
      */
     public void updateCopySetBitSet(PVStructure copyPVStructure,BitSet bitSet)
     {
-        updateCopySetBitSet(copyPVStructure,headNode,bitSet);
+        updateCopySetBitSet(copyPVStructure,0,bitSet);
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pvCopy.PVCopy#updateCopyFromBitSet(org.epics.pvdata.pv.PVStructure, org.epics.pvdata.misc.BitSet)
      */
     public void updateCopyFromBitSet(PVStructure copyPVStructure,BitSet bitSet) {
-        if(bitSet.get(0)) bitSet.set(0,copyPVStructure.getNumberFields(),true);
-        updateCopyFromBitSet(copyPVStructure,headNode,bitSet);
+        if(bitSet.get(0)) {
+            bitSet.set(0,copyPVStructure.getNumberFields(),true);
+            updateCopy(copyPVStructure);
+            return;
+        }
+        updateChangedCopy(copyPVStructure,bitSet);
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pvCopy.PVCopy#updateRecord(org.epics.pvdata.pv.PVStructure, org.epics.pvdata.misc.BitSet)
@@ -194,29 +209,10 @@ class PVCopyImpl implements PVCopy{
      */
     public PVStructure getOptions(int fieldOffset)
     {
-        if(fieldOffset==0) return headNode.options;
-        Node node = headNode;
-        while(true) {
-            if(node.structureOffset==fieldOffset) return node.options;
-            if(!node.isStructure) return null;
-            StructureNode structNode = (StructureNode)node;
-            Node[] nodes = structNode.nodes;
-            boolean okToContinue = false;
-            for(int i=0; i< nodes.length; i++) {
-                node = nodes[i];
-                int soff = node.structureOffset;
-                if(fieldOffset>=soff && fieldOffset<soff+node.nfields) {
-                    if(fieldOffset==soff) return node.options;
-                    if(!node.isStructure) {
-                        return null;
-                    }
-                    okToContinue = true;
-                    break;
-                }
-            }
-            if(okToContinue) continue;
+        if(fieldOffset<0 || fieldOffset>=optionsTable.length) {
             throw new IllegalArgumentException("fieldOffset not valid");
         }
+        return optionsTable[fieldOffset];
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.copy.PVCopy#dump()
@@ -244,57 +240,75 @@ class PVCopyImpl implements PVCopy{
         }
     }
     
-    private void updateCopySetBitSet(PVField pvCopy,PVField pvMaster,BitSet bitSet) {
-        if(pvCopy.getField().getType()!=Type.structure) {
-            if(pvCopy.equals(pvMaster)) return;
-            convert.copy(pvMaster, pvCopy);
-            bitSet.set(pvCopy.getFieldOffset());
-            return;
-        }
-        PVStructure pvCopyStructure = (PVStructure)pvCopy;
-        PVField[] pvCopyFields = pvCopyStructure.getPVFields();
+    /*
+     * Walks the copy depth first. leafIndex is the index in masterLeafFields
+     * of the first non structure field of pvCopy. Returns the index after the last one.
+     */
+    private int updateCopySetBitSet(PVStructure pvCopy,int leafIndex,BitSet bitSet) {
+        PVField[] pvCopyFields = pvCopy.getPVFields();
         int length = pvCopyFields.length;
         for(int i=0; i<length; i++) {
-            pvMaster = getMasterPVField(pvCopyFields[i].getFieldOffset());
-            updateCopySetBitSet(pvCopyFields[i],pvMaster,bitSet);
+            PVField pvCopyField = pvCopyFields[i];
+            if(pvCopyField.getField().getType()==Type.structure) {
+                leafIndex = updateCopySetBitSet((PVStructure)pvCopyField,leafIndex,bitSet);
+                continue;
+            }
+            PVField pvMasterField = masterLeafFields[leafIndex++];
+            int offset = pvCopyField.getFieldOffset();
+            if(slices!=null && slices[offset]!=null) {
+                if(slices[offset].copyChanged((PVScalarArray)pvMasterField,(PVScalarArray)pvCopyField)) {
+                    bitSet.set(offset);
+                }
+                continue;
+            }
+            if(pvCopyField.equals(pvMasterField)) continue;
+            convert.copy(pvMasterField, pvCopyField);
+            bitSet.set(offset);
         }
+        return leafIndex;
     }
 
-    private void updateCopySetBitSet(PVField pvCopy,Node node,BitSet bitSet) {
-        boolean result = false;
-        if(!node.isStructure) {
-            if(result) return;
-            updateCopySetBitSet(pvCopy,node.masterPVField,bitSet);
-            return;
-        }
-        StructureNode structureNode = (StructureNode)(node);
-        PVStructure pvCopyStructure = (PVStructure)pvCopy;
-        PVField[] pvCopyFields = pvCopyStructure.getPVFields();
+    /*
+     * Only the subfields of pvCopy that have their own bit, or the bit of
+     * an enclosing structure, set are copied. Subfields that have no set bit
+     * at or below them are skipped without being visited.
+     */
+    private void updateChangedCopy(PVStructure pvCopy,BitSet bitSet) {
+        PVField[] pvCopyFields = pvCopy.getPVFields();
         int length = pvCopyFields.length;
         for(int i=0; i<length; i++) {
-            updateCopySetBitSet(pvCopyFields[i],structureNode.nodes[i],bitSet);
+            PVField pvCopyField = pvCopyFields[i];
+            int offset = pvCopyField.getFieldOffset();
+            int nextSet = bitSet.nextSetBit(offset);
+            if(nextSet<0) return;
+            if(nextSet>=pvCopyField.getNextFieldOffset()) continue;
+            if(nextSet==offset) {
+                updateCopy(pvCopyField);
+            } else {
+                updateChangedCopy((PVStructure)pvCopyField,bitSet);
+            }
         }
     }
 
-    private void updateCopyFromBitSet(PVField pvCopy,Node node,BitSet bitSet) {
-        boolean result = false;
-        if(!node.isStructure) {
-            if(result) return;
-            PVField pvMaster = node.masterPVField;
-            convert.copy(pvMaster, pvCopy);
+    /*
+     * Copy pvCopy and all its subfields from the master.
+     * If the copy has the same introspection interface as the master
+     * the entire field is copied at once.
+     */
+    private void updateCopy(PVField pvCopy) {
+        int offset = pvCopy.getFieldOffset();
+        PVField pvMasterField = masterPVFields[offset];
+        if(slices!=null && slices[offset]!=null) {
+            slices[offset].copy((PVScalarArray)pvMasterField,(PVScalarArray)pvCopy);
             return;
         }
-        StructureNode structureNode = (StructureNode)(node);
-        int offset = structureNode.structureOffset;
-        int nextSet = bitSet.nextSetBit(offset);
-        if(nextSet==-1) return;
-        if(offset>=pvCopy.getNextFieldOffset()) return;
-        PVStructure pvCopyStructure = (PVStructure)pvCopy;
-        PVField[] pvCopyFields = pvCopyStructure.getPVFields();
-        int length = pvCopyFields.length;
-        for(int i=0; i<length; i++) {
-            updateCopyFromBitSet(pvCopyFields[i],structureNode.nodes[i],bitSet);
+        if(pvCopy.getField()==pvMasterField.getField()
+        || pvCopy.getField().getType()!=Type.structure) {
+            convert.copy(pvMasterField, pvCopy);
+            return;
         }
+        PVField[] pvCopyFields = ((PVStructure)pvCopy).getPVFields();
+        for(int i=0; i<pvCopyFields.length; i++) updateCopy(pvCopyFields[i]);
     }
 
     private void updateMaster(PVField pvCopy,Node node,BitSet bitSet) {
@@ -302,6 +316,10 @@ class PVCopyImpl implements PVCopy{
         if(!node.isStructure) {
             if(result) return;
             PVField pvMaster = node.masterPVField;
+            if(node.slice!=null) {
+                node.slice.copyBack((PVScalarArray)pvCopy,(PVScalarArray)pvMaster);
+                return;
+            }
             convert.copy(pvCopy, pvMaster);
             return;
         }
@@ -337,15 +355,70 @@ class PVCopyImpl implements PVCopy{
             node.structureOffset = 0;
             node.masterPVField = pvMasterStructure;
             node.nfields = pvMasterStructure.getNumberFields();
+            compile();
             return true;
         }
         structure = createStructure(pvMasterStructure,pvRequest);
         if(structure==null) return false;
         cacheInitStructure = createPVStructure();
         headNode = createStructureNodes(pvMaster,pvRequest,cacheInitStructure);
+        compile();
         return true;
     }
 
+    /*
+     * Create the tables that map between copy and master offsets,
+     * so that no node tree has to be searched after init.
+     */
+    private void compile() {
+        int numberFields = headNode.nfields;
+        masterPVFields = new PVField[numberFields];
+        optionsTable = new PVStructure[numberFields];
+        copyOffsets = new int[pvMaster.getNumberFields()];
+        for(int i=0; i<copyOffsets.length; i++) copyOffsets[i] = -1;
+        ArrayList<PVField> leafList = new ArrayList<PVField>(numberFields);
+        compile(headNode,leafList);
+        masterLeafFields = leafList.toArray(new PVField[leafList.size()]);
+    }
+
+    private void compile(Node node,ArrayList<PVField> leafList) {
+        optionsTable[node.structureOffset] = node.options;
+        if(node.slice!=null) {
+            if(slices==null) slices = new ArraySlice[masterPVFields.length];
+            slices[node.structureOffset] = node.slice;
+        }
+        if(!node.isStructure) {
+            compile(node.masterPVField,node.structureOffset,leafList);
+            return;
+        }
+        setOffsets(node.masterPVField,node.structureOffset);
+        for(Node subNode : ((StructureNode)node).nodes) {
+            compile(subNode,leafList);
+        }
+    }
+
+    /*
+     * The copy of a node that is not a structure node has the same introspection interface
+     * as the master, so the master fields can be assigned to copy offsets in order.
+     */
+    private int compile(PVField pvMasterField,int copyOffset,ArrayList<PVField> leafList) {
+        setOffsets(pvMasterField,copyOffset);
+        if(pvMasterField.getField().getType()!=Type.structure) {
+            leafList.add(pvMasterField);
+            return copyOffset + 1;
+        }
+        int next = copyOffset + 1;
+        for(PVField pvField : ((PVStructure)pvMasterField).getPVFields()) {
+            next = compile(pvField,next,leafList);
+        }
+        return next;
+    }
+
+    private void setOffsets(PVField pvMasterField,int copyOffset) {
+        masterPVFields[copyOffset] = pvMasterField;
+        copyOffsets[pvMasterField.getFieldOffset() - pvMaster.getFieldOffset()] = copyOffset;
+    }
+
     private static Structure createStructure(PVStructure pvMaster,PVStructure pvFromRequest) {
         if(pvFromRequest.getStructure().getFieldNames().length==0) {
             return pvMaster.getStructure();
@@ -376,6 +449,11 @@ class PVCopyImpl implements PVCopy{
                 }
 
             }
+            if(field.getType()==Type.scalarArray
+            && getSlice((PVStructure)pvFromRequestFields[i])!=null) {
+                // the copy holds only the slice so it can not have a fixed or bounded size
+                field = fieldCreate.createScalarArray(((ScalarArray)field).getElementType());
+            }
             fieldNameList.add(fieldName);
             fieldList.add(field);
         }
@@ -388,6 +466,16 @@ class PVCopyImpl implements PVCopy{
         return fieldCreate.createStructure(fieldNames, fields);
     }
 
+    /*
+     * Get the slice option of a field of the request.
+     * An option value that is not a valid slice is ignored.
+     */
+    private static ArraySlice getSlice(PVStructure pvRequestField) {
+        PVString pvSlice = pvRequestField.getSubField(PVString.class, "_options." + ArraySlice.optionName);
+        if(pvSlice==null) return null;
+        return ArraySlice.create(pvSlice.get());
+    }
+
     private static Node createStructureNodes(
             PVStructure pvMasterStructure,
             PVStructure pvFromRequest,
@@ -420,6 +508,9 @@ class PVCopyImpl implements PVCopy{
             }
             Node node = new Node();
             node.options = pvSubFieldOptions;
+            if(pvSubFieldOptions!=null && pvMasterField.getField().getType()==Type.scalarArray) {
+                node.slice = getSlice(requestPVStructure);
+            }
             node.isStructure = false;
             node.masterPVField = pvMasterField;
             node.nfields = copyPVField.getNumberFields();
@@ -439,35 +530,6 @@ class PVCopyImpl implements PVCopy{
 
     }
 
-    private Node getCopyOffset(StructureNode structureNode,PVField masterPVField)
-    {
-        int offset = masterPVField.getFieldOffset();
-        Node[] nodes = structureNode.nodes;
-        for(int i=0; i< nodes.length; i++) {
-            Node node = nodes[i];
-            if(!node.isStructure) {
-                int off = node.masterPVField.getFieldOffset();
-                int nextOffset = node.masterPVField.getNextFieldOffset();
-                if(offset>= off && offset<nextOffset) return node;
-            } else {
-                StructureNode subNode = (StructureNode)node;
-                node = getCopyOffset(subNode,masterPVField);
-                if(node!=null) return node;
-            }
-        }
-        return null;
-    }
-
-    private Node getMasterNode(StructureNode structureNode,int structureOffset) {
-        for(Node node : structureNode.nodes) {
-            if(structureOffset>=(node.structureOffset + node.nfields)) continue;
-            if(!node.isStructure) return node; 
-            StructureNode subNode = (StructureNode)node;
-            return  getMasterNode(subNode,structureOffset);
-        }
-        return null;
-    }
-
     private void dump(StringBuilder builder,Node node,int indentLevel) {
         convert.newLine(builder, indentLevel);
         String kind;
@@ -480,6 +542,7 @@ class PVCopyImpl implements PVCopy{
         builder.append((" isStructure " + (node.isStructure ? "true" : "false")));
         builder.append(" structureOffset " + node.structureOffset);
         builder.append(" nfields " + node.nfields);
+        if(node.slice!=null) builder.append(" slice " + node.slice);
         PVStructure options = node.options;
         if(options!=null) {
             convert.newLine(builder, indentLevel+1);
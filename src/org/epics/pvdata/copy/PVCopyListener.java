@@ -0,0 +1,23 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * Receives the changes of a copy shared via a PVCopyCache.
+ */
+public interface PVCopyListener {
+    /**
+     * Called by PVCopyCache.update after the shared copy has been updated from the master.
+     * Both arguments are shared by all listeners of the same copy and must not be modified.
+     * They are only valid until the call returns,
+     * so a listener that queues data must copy it, for example with
+     * PVCopy.updateCopyFromBitSet or Convert.copy.
+     * @param pvStructure The shared copy.
+     * @param changedBitSet The offsets within pvStructure that have new data.
+     */
+    void dataChanged(PVStructure pvStructure,BitSet changedBitSet);
+}
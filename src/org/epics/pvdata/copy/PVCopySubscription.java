@@ -0,0 +1,28 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import org.epics.pvdata.pv.PVStructure;
+
+/**
+ * A subscription to a copy shared via a PVCopyCache.
+ */
+public interface PVCopySubscription {
+    /**
+     * Get the PVCopy shared by all subscriptions with the same request.
+     * @return The interface.
+     */
+    PVCopy getPVCopy();
+    /**
+     * Get the copy that is updated by PVCopyCache.update.
+     * It must not be modified.
+     * @return The shared copy.
+     */
+    PVStructure getPVStructure();
+    /**
+     * Stop receiving changes.
+     * When the last subscription of a copy is closed the copy is removed from the cache.
+     */
+    void close();
+}
@@ -0,0 +1,28 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import org.epics.pvdata.misc.BitSet;
+
+/**
+ * A filter for the changes of a copy.
+ * A filter is created by a PVPlugin for a field option of a pvRequest.
+ */
+public interface PVFilter {
+    /**
+     * Get the name of the filter, which is the name of the option.
+     * @return The name.
+     */
+    String getName();
+    /**
+     * Filter an update of a copy.
+     * This is called, with the master locked, after the changed fields are known but before the update
+     * is given to the client. The filter can clear bits of changedBitSet
+     * and can also set bits of fields that have changed in earlier updates that it did not pass.
+     * @param changedBitSet The offsets within the copy that have new data.
+     * @return false if the update must not be given to the client,
+     * which is always the case if changedBitSet is empty when the filter returns.
+     */
+    boolean filter(BitSet changedBitSet);
+}
@@ -0,0 +1,316 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import java.util.ArrayList;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.Type;
+
+/**
+ * Creates the filters for the field options of a pvRequest.
+ * The following options are provided:
+ * <dl>
+ *   <dt>deadband=abs:value, deadband=rel:percent, deadband=value</dt>
+ *     <dd>For a numeric scalar. A change is only passed if the value differs from the last value passed
+ *     by more than value, or by more than percent of the last value passed.</dd>
+ *   <dt>decimate=n</dt>
+ *     <dd>Only every nth change of the field is passed. For the top level, field[decimate=n](...),
+ *     only every nth update is passed.</dd>
+ *   <dt>sync=true</dt>
+ *     <dd>Updates are held until the field changes, then all changes since the last update are passed.</dd>
+ * </dl>
+ * Other options are handled by plugins registered with PVPluginRegistry.
+ */
+public class PVFilterFactory {
+    /**
+     * Create a filter that calls the filters for all options of the request of pvCopy
+     * that have a registered plugin. Subfields are filtered before the structures that hold them.
+     * @param pvCopy The PVCopy.
+     * @return The filter or null if no option has a filter.
+     */
+    public static PVFilter create(PVCopy pvCopy) {
+        int numberFields = numberFields(pvCopy.getStructure());
+        ArrayList<PVFilter> filterList = new ArrayList<PVFilter>();
+        for(int offset=numberFields-1; offset>=0; offset--) {
+            PVStructure pvOptions = pvCopy.getOptions(offset);
+            if(pvOptions==null) continue;
+            for(PVField pvOption : pvOptions.getPVFields()) {
+                if(!(pvOption instanceof PVString)) continue;
+                PVPlugin pvPlugin = PVPluginRegistry.find(pvOption.getFieldName());
+                if(pvPlugin==null) continue;
+                PVFilter pvFilter = pvPlugin.create(((PVString)pvOption).get(), pvCopy, offset);
+                if(pvFilter!=null) filterList.add(pvFilter);
+            }
+        }
+        if(filterList.isEmpty()) return null;
+        if(filterList.size()==1) return filterList.get(0);
+        return new FilterChain(filterList.toArray(new PVFilter[filterList.size()]));
+    }
+
+    static final PVPlugin deadbandPlugin = new DeadbandPlugin();
+    static final PVPlugin decimatePlugin = new DecimatePlugin();
+    static final PVPlugin syncPlugin = new SyncPlugin();
+
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    private static int numberFields(Field field) {
+        if(field.getType()!=Type.structure) return 1;
+        int number = 1;
+        for(Field subField : ((Structure)field).getFields()) number += numberFields(subField);
+        return number;
+    }
+
+    /*
+     * The bits of a field of the copy.
+     * A field has changed if any bit from offset to nextOffset,
+     * or the bit of a structure that holds the field, is set.
+     */
+    private static class FieldBits {
+        private final int offset;
+        private final int nextOffset;
+        // the structures that hold the field, from the top down
+        private final int[] structureOffsets;
+        // for each structure the offsets of its subfields that do not hold the field
+        private final int[][] otherOffsets;
+
+        private FieldBits(Structure top,int offset) {
+            this.offset = offset;
+            ArrayList<Integer> structureList = new ArrayList<Integer>();
+            ArrayList<int[]> otherList = new ArrayList<int[]>();
+            Field field = top;
+            int fieldOffset = 0;
+            while(fieldOffset!=offset) {
+                Field[] fields = ((Structure)field).getFields();
+                int[] subOffsets = new int[fields.length];
+                int next = fieldOffset + 1;
+                int index = -1;
+                for(int i=0; i<fields.length; i++) {
+                    subOffsets[i] = next;
+                    next += numberFields(fields[i]);
+                    if(offset>=subOffsets[i] && offset<next) index = i;
+                }
+                int[] others = new int[fields.length-1];
+                for(int i=0, j=0; i<fields.length; i++) {
+                    if(i!=index) others[j++] = subOffsets[i];
+                }
+                structureList.add(fieldOffset);
+                otherList.add(others);
+                field = fields[index];
+                fieldOffset = subOffsets[index];
+            }
+            nextOffset = offset + numberFields(field);
+            structureOffsets = new int[structureList.size()];
+            for(int i=0; i<structureOffsets.length; i++) structureOffsets[i] = structureList.get(i);
+            otherOffsets = otherList.toArray(new int[otherList.size()][]);
+        }
+
+        private boolean isChanged(BitSet bitSet) {
+            int next = bitSet.nextSetBit(offset);
+            if(next>=0 && next<nextOffset) return true;
+            for(int i=0; i<structureOffsets.length; i++) {
+                if(bitSet.get(structureOffsets[i])) return true;
+            }
+            return false;
+        }
+
+        /*
+         * Clear the bits of the field. The bit of a structure that holds the field
+         * is replaced by the bits of the other subfields of the structure.
+         */
+        private void clear(BitSet bitSet) {
+            boolean expand = false;
+            for(int i=0; i<structureOffsets.length; i++) {
+                if(!expand) {
+                    if(!bitSet.get(structureOffsets[i])) continue;
+                    expand = true;
+                }
+                bitSet.clear(structureOffsets[i]);
+                int[] others = otherOffsets[i];
+                for(int j=0; j<others.length; j++) bitSet.set(others[j]);
+            }
+            bitSet.clear(offset, nextOffset);
+        }
+    }
+
+    private static class FilterChain implements PVFilter {
+        private final PVFilter[] filters;
+
+        private FilterChain(PVFilter[] filters) {
+            this.filters = filters;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#getName()
+         */
+        public String getName() {
+            return "chain";
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#filter(org.epics.pvdata.misc.BitSet)
+         */
+        public boolean filter(BitSet changedBitSet) {
+            for(int i=0; i<filters.length; i++) {
+                if(!filters[i].filter(changedBitSet)) return false;
+            }
+            return !changedBitSet.isEmpty();
+        }
+    }
+
+    private static class DeadbandPlugin implements PVPlugin {
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVPlugin#create(java.lang.String, org.epics.pvdata.copy.PVCopy, int)
+         */
+        public PVFilter create(String requestValue,PVCopy pvCopy,int fieldOffset) {
+            PVField pvMasterField = pvCopy.getMasterPVField(fieldOffset);
+            if(pvMasterField.getField().getType()!=Type.scalar) return null;
+            PVScalar pvScalar = (PVScalar)pvMasterField;
+            if(!pvScalar.getScalar().getScalarType().isNumeric()) return null;
+            boolean relative = false;
+            String value = requestValue;
+            if(value.startsWith("abs:")) {
+                value = value.substring(4);
+            } else if(value.startsWith("rel:")) {
+                relative = true;
+                value = value.substring(4);
+            }
+            double deadband;
+            try {
+                deadband = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if(!(deadband>=0.0)) return null;
+            return new DeadbandFilter(new FieldBits(pvCopy.getStructure(),fieldOffset),pvScalar,relative,deadband);
+        }
+    }
+
+    private static class DeadbandFilter implements PVFilter {
+        private final FieldBits fieldBits;
+        private final PVScalar pvMaster;
+        private final boolean relative;
+        private final double deadband;
+        private boolean isFirst = true;
+        private double lastValue = 0.0;
+
+        private DeadbandFilter(FieldBits fieldBits,PVScalar pvMaster,boolean relative,double deadband) {
+            this.fieldBits = fieldBits;
+            this.pvMaster = pvMaster;
+            this.relative = relative;
+            this.deadband = deadband;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#getName()
+         */
+        public String getName() {
+            return "deadband";
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#filter(org.epics.pvdata.misc.BitSet)
+         */
+        public boolean filter(BitSet changedBitSet) {
+            if(!fieldBits.isChanged(changedBitSet)) return true;
+            double value = convert.toDouble(pvMaster);
+            double limit = relative ? Math.abs(lastValue)*deadband/100.0 : deadband;
+            if(isFirst
+            || Double.isNaN(value)!=Double.isNaN(lastValue)
+            || Math.abs(value - lastValue)>limit) {
+                isFirst = false;
+                lastValue = value;
+                return true;
+            }
+            fieldBits.clear(changedBitSet);
+            return !changedBitSet.isEmpty();
+        }
+    }
+
+    private static class DecimatePlugin implements PVPlugin {
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVPlugin#create(java.lang.String, org.epics.pvdata.copy.PVCopy, int)
+         */
+        public PVFilter create(String requestValue,PVCopy pvCopy,int fieldOffset) {
+            int number;
+            try {
+                number = Integer.parseInt(requestValue);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if(number<=1) return null;
+            return new DecimateFilter(new FieldBits(pvCopy.getStructure(),fieldOffset),number);
+        }
+    }
+
+    private static class DecimateFilter implements PVFilter {
+        private final FieldBits fieldBits;
+        private final int number;
+        private int count = 0;
+
+        private DecimateFilter(FieldBits fieldBits,int number) {
+            this.fieldBits = fieldBits;
+            this.number = number;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#getName()
+         */
+        public String getName() {
+            return "decimate";
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#filter(org.epics.pvdata.misc.BitSet)
+         */
+        public boolean filter(BitSet changedBitSet) {
+            if(!fieldBits.isChanged(changedBitSet)) return true;
+            int current = count;
+            count = (count + 1)%number;
+            if(current==0) return true;
+            fieldBits.clear(changedBitSet);
+            return !changedBitSet.isEmpty();
+        }
+    }
+
+    private static class SyncPlugin implements PVPlugin {
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVPlugin#create(java.lang.String, org.epics.pvdata.copy.PVCopy, int)
+         */
+        public PVFilter create(String requestValue,PVCopy pvCopy,int fieldOffset) {
+            if(!Boolean.parseBoolean(requestValue)) return null;
+            return new SyncFilter(new FieldBits(pvCopy.getStructure(),fieldOffset));
+        }
+    }
+
+    private static class SyncFilter implements PVFilter {
+        private final FieldBits fieldBits;
+        private final BitSet pendingBitSet = new BitSet();
+
+        private SyncFilter(FieldBits fieldBits) {
+            this.fieldBits = fieldBits;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#getName()
+         */
+        public String getName() {
+            return "sync";
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.copy.PVFilter#filter(org.epics.pvdata.misc.BitSet)
+         */
+        public boolean filter(BitSet changedBitSet) {
+            if(fieldBits.isChanged(changedBitSet)) {
+                changedBitSet.or(pendingBitSet);
+                pendingBitSet.clear();
+                return true;
+            }
+            pendingBitSet.or(changedBitSet);
+            changedBitSet.clear();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+/**
+ * Creates a PVFilter for a field option of a pvRequest.
+ * A plugin is registered with PVPluginRegistry under the name of the option.
+ */
+public interface PVPlugin {
+    /**
+     * Create a filter.
+     * @param requestValue The value of the option.
+     * @param pvCopy The PVCopy for the request.
+     * @param fieldOffset The offset in the copy of the field that has the option.
+     * @return The filter or null if the option does not apply to the field.
+     */
+    PVFilter create(String requestValue,PVCopy pvCopy,int fieldOffset);
+}
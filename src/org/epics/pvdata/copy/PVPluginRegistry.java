@@ -0,0 +1,53 @@
+/*
+ * License terms for this software can be found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.copy;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of the plugins used by PVFilterFactory.
+ * The plugins deadband, decimate and sync are always registered.
+ */
+public class PVPluginRegistry {
+    private static final ConcurrentHashMap<String,PVPlugin> pluginMap = new ConcurrentHashMap<String,PVPlugin>();
+
+    static {
+        registerPlugin("deadband", PVFilterFactory.deadbandPlugin);
+        registerPlugin("decimate", PVFilterFactory.decimatePlugin);
+        registerPlugin("sync", PVFilterFactory.syncPlugin);
+    }
+
+    /**
+     * Register a plugin. A plugin that is already registered with the same name is replaced.
+     * @param name The name of the option the plugin handles.
+     * @param pvPlugin The plugin.
+     */
+    public static void registerPlugin(String name,PVPlugin pvPlugin) {
+        pluginMap.put(name, pvPlugin);
+    }
+    /**
+     * Remove a plugin.
+     * @param name The name of the plugin.
+     */
+    public static void unregisterPlugin(String name) {
+        pluginMap.remove(name);
+    }
+    /**
+     * Find a plugin.
+     * @param name The name of the plugin.
+     * @return The plugin or null if no plugin has the name.
+     */
+    public static PVPlugin find(String name) {
+        return pluginMap.get(name);
+    }
+    /**
+     * Get the names of all registered plugins.
+     * @return The names in sorted order.
+     */
+    public static Set<String> getPluginNames() {
+        return new TreeSet<String>(pluginMap.keySet());
+    }
+}
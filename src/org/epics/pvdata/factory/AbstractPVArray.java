@@ -5,9 +5,11 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.epics.pvdata.pv.Array;
 import org.epics.pvdata.pv.ArrayData;
+import org.epics.pvdata.pv.CapacityPolicy;
 import org.epics.pvdata.pv.PVArray;
 import org.epics.pvdata.pv.SerializableControl;
 import org.epics.util.array.CollectionNumbers;
@@ -16,6 +18,9 @@ import org.epics.util.array.ListNumber;
 /**
  * Abstract base class for any PVArray field.
  * Any code that implements a PVArray field for an IOC database should extend this class.
+ * The value array can be shared copy-on-write with other arrays (see shareValue),
+ * so derived classes must call makeValueWritable before they modify it,
+ * and the data returned by get must not be modified.
  * @author mrk
  *
  */
@@ -32,6 +37,29 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
      * For use by derived classes.
      */
     protected boolean capacityMutable = true;
+    /*
+     * Not null while the value array is shared with other arrays.
+     * The first write to any sharer gives it its own copy.
+     */
+    private SharedValue sharedValue = null;
+    /*
+     * False if the value array came from shareData, in which case
+     * it is never given to the ArrayPool.
+     */
+    private boolean valueOwned = true;
+    private CapacityPolicy capacityPolicy = CapacityPolicyFactory.exact();
+    private static volatile boolean shareValues = Boolean.getBoolean("org.epics.pvdata.factory.shareArrayData");
+    /*
+     * Changed whenever the value array or the length may have changed.
+     */
+    private int version = 0;
+
+    /*
+     * The value array shared by several PVArrays and the number of them.
+     */
+    private static class SharedValue {
+        private final AtomicInteger sharers = new AtomicInteger(1);
+    }
 
     /**
      * Constructor that derived classes must call.
@@ -64,6 +92,17 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
     protected abstract void setValue(Object array);
 	protected abstract void allocate(int newCapacity);
     protected abstract boolean valueEquals(Object obj);
+
+    /**
+     * Compute the hash code of the value, which hashCode returns.
+     * Derived classes that compare values in valueEquals should override this
+     * so that equal arrays have equal hash codes.
+     * The default is the identity hash code, as inherited from Object.
+     * @return The hash code.
+     */
+    protected int valueHashCode() {
+        return System.identityHashCode(this);
+    }
 	
 	/* (non-Javadoc)
      * @see org.epics.pvdata.pv.PVArray#setCapacity(int)
@@ -78,15 +117,189 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
     	checkLength(newCapacity);
         
         Object oldValue = getValue();
+        boolean oldValueOwned = valueOwned;
         allocate(newCapacity);
+        valueOwned = true;
+        version++;
 
         if (length > newCapacity)
         	length = newCapacity;
         
         if (length > 0)
         	System.arraycopy(oldValue, 0, getValue(), 0, length);
+        // the old array is released only after it has been copied
+        if (releaseSharedValue() && oldValueOwned)
+        	ArrayPool.release(oldValue);
     }
     
+    /**
+     * Should copying the whole of an array share the value array instead of copying it (see shareValue)?
+     * Sharing is only safe if no code modifies the data returned by get,
+     * because an array changed that way does not get its own copy first.
+     * The default is given by the system property org.epics.pvdata.factory.shareArrayData
+     * or is false if the property is not set.
+     * @param value (false,true) means (copy,share) the value array.
+     */
+    public static void setShareValues(boolean value) {
+        shareValues = value;
+    }
+
+    /**
+     * Is the value array shared when the whole of an array is copied?
+     * @return (false,true) if the value array is (copied,shared).
+     */
+    public static boolean isShareValues() {
+        return shareValues;
+    }
+
+    /**
+     * Make this array share the value array of from. The data is not copied;
+     * the first put, setCapacity or deserialize on either array gives that
+     * array its own copy, so sharing is not visible to either.
+     * Both arrays must have the same implementation class.
+     * This array gets the length and capacity of from.
+     * @param from The array that has the data.
+     * @return false if this array can not take the value array of from or sharing is disabled.
+     */
+    boolean shareValue(AbstractPVArray from) {
+        if (!shareValues || from == this || from.getClass() != getClass() || super.isImmutable())
+            return false;
+        Array.ArraySizeType type = getArray().getArraySizeType();
+        if (type != Array.ArraySizeType.variable && from.capacity > getArray().getMaximumCapacity())
+            return false;
+        if (!capacityMutable && from.capacity != capacity)
+            return false;
+        if (from.getValue() == getValue()) {
+            if (length == from.length)
+                return true;
+        } else {
+            Object oldValue = getValue();
+            boolean oldValueOwned = valueOwned;
+            // take a share of the new array before the share of the old one is released
+            SharedValue shared = from.sharedValue;
+            if (shared == null) {
+                shared = new SharedValue();
+                from.sharedValue = shared;
+            }
+            shared.sharers.incrementAndGet();
+            if (releaseSharedValue() && oldValueOwned)
+                ArrayPool.release(oldValue);
+            sharedValue = shared;
+            setValue(from.getValue());
+            valueOwned = from.valueOwned;
+            capacity = from.capacity;
+        }
+        length = from.length;
+        version++;
+        super.postPut();
+        return true;
+    }
+
+    /**
+     * Is the value array shared with other arrays?
+     * @return true if it is shared.
+     */
+    protected boolean isValueShared() {
+        SharedValue shared = sharedValue;
+        return shared != null && shared.sharers.get() > 1;
+    }
+
+    /**
+     * Must be called before the value array is modified.
+     * If the value array is shared with other arrays this array gets its own copy.
+     * It also changes the version, which makes any cached hash code invalid.
+     */
+    protected void makeValueWritable() {
+        version++;
+        SharedValue shared = sharedValue;
+        if (shared == null) return;
+        // the last sharer keeps the array
+        if (shared.sharers.get() == 1) {
+            sharedValue = null;
+            return;
+        }
+        // Copy before the share is released. Once it is released another sharer
+        // can find that it is the last one and write to the old array.
+        Object oldValue = getValue();
+        boolean oldValueOwned = valueOwned;
+        allocate(capacity);
+        valueOwned = true;
+        if (length > 0)
+            System.arraycopy(oldValue, 0, getValue(), 0, length);
+        // the other sharers may have released it meanwhile
+        if (releaseSharedValue() && oldValueOwned)
+            ArrayPool.release(oldValue);
+    }
+
+    /*
+     * Stop sharing the value array.
+     * Returns true if no other array shares it.
+     */
+    private boolean releaseSharedValue() {
+        SharedValue shared = sharedValue;
+        if (shared == null) return true;
+        sharedValue = null;
+        return shared.sharers.decrementAndGet() == 0;
+    }
+
+    /**
+     * Get the version of the value.
+     * It changes whenever the value array or the length may have changed,
+     * so a value computed from the data is valid while the version is unchanged.
+     * @return The version.
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Make the capacity at least newLength.
+     * The capacity policy decides how much larger than newLength it becomes.
+     * @param newLength The required length.
+     */
+    protected void growCapacity(int newLength) {
+        int newCapacity = newLength;
+        if (capacityMutable) {
+            int maximumCapacity = (getArray().getArraySizeType() == Array.ArraySizeType.variable) ?
+                Integer.MAX_VALUE : getArray().getMaximumCapacity();
+            newCapacity = capacityPolicy.grow(capacity, newLength, maximumCapacity);
+            if (newCapacity < newLength) newCapacity = newLength;
+        }
+        setCapacity(newCapacity);
+    }
+
+    /**
+     * Called after the length has been reduced.
+     * The capacity policy decides if the capacity is reduced.
+     */
+    protected void shrinkCapacity() {
+        if (!capacityMutable) return;
+        int newCapacity = capacityPolicy.shrink(capacity, length);
+        if (newCapacity < capacity && newCapacity >= length)
+            setCapacity(newCapacity);
+    }
+
+    /**
+     * Get the policy that decides the capacity when the length changes.
+     * @return The policy.
+     */
+    public CapacityPolicy getCapacityPolicy() {
+        return capacityPolicy;
+    }
+
+    /**
+     * Set the policy that decides the capacity when the length changes.
+     * The default, CapacityPolicyFactory.exact(), makes the capacity equal to the length
+     * whenever the length grows and never shrinks it.
+     * @param capacityPolicy The policy.
+     * @throws IllegalArgumentException if capacityPolicy is null.
+     */
+    public void setCapacityPolicy(CapacityPolicy capacityPolicy) {
+        if (capacityPolicy == null)
+            throw new IllegalArgumentException("capacityPolicy is null");
+        this.capacityPolicy = capacityPolicy;
+    }
+
     protected int internalGet(int offset, int len, ArrayData<?> data) {
         int n = len;
         if (offset+len > length)
@@ -108,10 +321,11 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
         if (newLength > length)
         {
         	checkLength(newLength);
-        	setCapacity(newLength);
-        	value = getValue();
+        	growCapacity(newLength);
         	length = newLength;
         }
+        makeValueWritable();
+        value = getValue();
         
         System.arraycopy(from, fromOffset, value, offset, len);
         super.postPut();
@@ -126,9 +340,10 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
         if (newLength > length)
         {
         	checkLength(newLength);
-        	setCapacity(newLength);
+        	growCapacity(newLength);
         	length = newLength;
         }
+        makeValueWritable();
         
         CollectionNumbers.toList(getValue()).setAll(offset, list);
         super.postPut();
@@ -152,8 +367,22 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
 
     	checkLength(len);
     	
+    	if (releaseSharedValue() && valueOwned)
+    		ArrayPool.release(getValue());
     	setValue(from);
+    	valueOwned = false;
     	capacity = length = len;
+    	version++;
+    }
+
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.factory.AbstractPVField#postPut()
+     */
+    @Override
+    public void postPut() {
+        // the caller may have modified the data returned by get
+        version++;
+        super.postPut();
     }
 
     /* (non-Javadoc)
@@ -209,9 +438,13 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
     	checkLength(len);
     	
         if (len > capacity)
-        	setCapacity(len);
+        	growCapacity(len);
         
+        boolean shrink = len < length;
         length = len;
+        version++;
+        if (shrink)
+        	shrinkCapacity();
     }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pv.Serializable#serialize(java.nio.ByteBuffer, org.epics.pvdata.pv.SerializableControl)
@@ -235,7 +468,7 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
 			final PVArray other = (PVArray)obj;
 			if (other.getField().equals(getField()))
 			{
-				// check length, check capacity (done by valueEquals) and check value content
+				// check length and the content of the first length elements
 				return other.getLength() == getLength() &&
 					   valueEquals(obj);
 			}
@@ -243,5 +476,13 @@ public abstract class AbstractPVArray extends AbstractPVField implements PVArray
 		
 		return false;
 	}
+
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return valueHashCode();
+	}
     
 }
@@ -79,7 +79,7 @@ public abstract class AbstractPVComplexArray extends AbstractPVArray {
 		{
 			// prepare array, if necessary
 			if (size > capacity)
-				setCapacity(size);
+				growCapacity(size);
 			
 			for (int i = 0; i < size; i++)
 			{
@@ -100,7 +100,10 @@ public abstract class AbstractPVComplexArray extends AbstractPVArray {
 					obj.deserialize(buffer, control);
 				}
 			}
+			boolean shrink = size < length;
 			length = size;
+			if (shrink)
+				shrinkCapacity();
 		}
 	}
 
@@ -15,13 +15,57 @@ import org.epics.pvdata.pv.SerializableControl;
 
 /**
  * Abstract base class for any scalar PVArray field.
+ * The hash code can be cached until the value changes.
+ * The cache is disabled unless enabled by setHashCodeCache or by the system property
+ * <i>org.epics.pvdata.factory.arrayHashCodeCache</i>.
+ * Code that modifies the data returned by get must call postPut, as for any put.
  * @author mrk
  */
 public abstract class AbstractPVScalarArray extends AbstractPVArray implements PVScalarArray {
+    private static final boolean defaultHashCodeCache = Boolean.getBoolean("org.epics.pvdata.factory.arrayHashCodeCache");
+
+    private boolean hashCodeCache = defaultHashCodeCache;
+    private boolean hashCodeValid = false;
+    private int hashCodeVersion;
+    private int cachedHashCode;
 
 	protected AbstractPVScalarArray(ScalarArray array) {
         super(array);
     }
+
+	/**
+	 * Enable or disable caching of the hash code.
+	 * @param enable true to compute the hash code again only after the value has changed.
+	 */
+	public void setHashCodeCache(boolean enable) {
+		hashCodeCache = enable;
+		hashCodeValid = false;
+	}
+
+	/**
+	 * Is the hash code cached?
+	 * @return true if it is cached.
+	 */
+	public boolean isHashCodeCache() {
+		return hashCodeCache;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.epics.pvdata.factory.AbstractPVArray#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		if (!hashCodeCache)
+			return valueHashCode();
+		int version = getVersion();
+		if (!hashCodeValid || hashCodeVersion != version)
+		{
+			cachedHashCode = valueHashCode();
+			hashCodeVersion = version;
+			hashCodeValid = true;
+		}
+		return cachedHashCode;
+	}
     /* (non-Javadoc)
      * @see org.epics.pvdata.pv.PVArray#getArray()
      */
@@ -84,7 +128,9 @@ public abstract class AbstractPVScalarArray extends AbstractPVArray implements P
 		if (size >= 0) {
 			// prepare array, if necessary
 			if (size > capacity)
-				setCapacity(size);
+				growCapacity(size);
+			else
+				makeValueWritable();
 			// retrieve value from the buffer
 			final int elementSize = getElementSize();
 			if (elementSize <= 0)
@@ -103,7 +149,10 @@ public abstract class AbstractPVScalarArray extends AbstractPVArray implements P
 				}
 			}
 			// set new length
+			boolean shrink = size < length;
 			length = size;
+			if (shrink)
+				shrinkCapacity();
 		}
 		// TODO null arrays (size == -1) not supported
 	}
@@ -0,0 +1,281 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.factory;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of primitive and String arrays used by the scalar PVArray implementations.
+ * The arrays are kept by element type and length, so a waveform that changes between
+ * a few sizes reuses the same arrays instead of allocating new ones.
+ * An array is given back when setCapacity replaces it, including when it shrinks,
+ * when shareData replaces it and when deserialize needs a larger array.
+ * setCapacity(0) gives the array back and leaves the PVArray empty.
+ * <p>The pool is disabled by default. It is enabled by a memory budget greater than 0,
+ * either from the property org.epics.pvdata.factory.arrayPoolBudget (in bytes)
+ * or by calling setMemoryBudget.
+ * <p>When the pool is enabled the data returned by a get method of a PVArray
+ * must not be used after the array has been changed, because the old array
+ * may then be given to another PVArray. Arrays given to shareData are never pooled.
+ */
+public final class ArrayPool {
+    private static final Class<?>[] elementTypes = {
+        boolean.class, byte.class, short.class, int.class,
+        long.class, float.class, double.class, String.class
+    };
+    private static final int[] elementSizes = {1, 1, 2, 4, 8, 4, 8, 8};
+    private static final TypePool[] typePools = new TypePool[elementTypes.length];
+    static {
+        for(int i=0; i<elementTypes.length; i++) {
+            typePools[i] = new TypePool(elementTypes[i],elementSizes[i]);
+        }
+    }
+    private static final AtomicLong pooledBytes = new AtomicLong();
+    private static volatile long memoryBudget = Long.getLong("org.epics.pvdata.factory.arrayPoolBudget", 0L);
+
+    private ArrayPool() {}
+
+    /**
+     * Set the maximum number of bytes held by the pool.
+     * A budget of 0 disables the pool and frees all pooled arrays.
+     *
+     * @param bytes the budget
+     * @throws IllegalArgumentException if bytes is negative
+     */
+    public static void setMemoryBudget(long bytes) {
+        if(bytes<0) throw new IllegalArgumentException("memory budget must not be negative");
+        memoryBudget = bytes;
+        if(pooledBytes.get()>bytes) clear();
+    }
+
+    /**
+     * Get the maximum number of bytes held by the pool.
+     *
+     * @return the budget, 0 if the pool is disabled
+     */
+    public static long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Is the pool enabled?
+     * If not the scalar array implementations create arrays directly.
+     *
+     * @return (false,true) if the budget is (0,not 0)
+     */
+    static boolean isEnabled() {
+        return memoryBudget!=0;
+    }
+
+    /**
+     * Get the number of bytes currently held by the pool.
+     *
+     * @return the number of bytes
+     */
+    public static long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    /**
+     * Free all pooled arrays.
+     */
+    public static void clear() {
+        for(int i=0; i<typePools.length; i++) typePools[i].clear();
+    }
+
+    /**
+     * Get the statistics for an element type.
+     *
+     * @param elementType the element type, e.g. double.class or String.class
+     * @return the statistics
+     * @throws IllegalArgumentException if the type is not pooled
+     */
+    public static ArrayPoolStatistics getStatistics(Class<?> elementType) {
+        return getTypePool(elementType);
+    }
+
+    /**
+     * Get an array. If the pool holds an array with the element type and length it is returned
+     * with all elements 0, false or null, otherwise a new array is created.
+     *
+     * @param elementType the element type, e.g. double.class or String.class
+     * @param length the length of the array
+     * @return the array
+     * @throws IllegalArgumentException if the pool is enabled and the type is not pooled
+     */
+    public static Object allocate(Class<?> elementType, int length) {
+        if(memoryBudget==0 || length==0) return java.lang.reflect.Array.newInstance(elementType, length);
+        return getTypePool(elementType).allocate(length);
+    }
+
+    /**
+     * Give an array back to the pool.
+     * The caller must not use the array after this call.
+     * The array is discarded if the pool is disabled or the budget would be exceeded.
+     *
+     * @param array the array
+     */
+    public static void release(Object array) {
+        if(memoryBudget==0) return;
+        TypePool typePool = getTypePool(array.getClass().getComponentType());
+        typePool.release(array);
+    }
+
+    private static TypePool getTypePool(Class<?> elementType) {
+        for(int i=0; i<elementTypes.length; i++) {
+            if(elementTypes[i]==elementType) return typePools[i];
+        }
+        throw new IllegalArgumentException("no pool for " + elementType);
+    }
+
+    private static class TypePool implements ArrayPoolStatistics {
+        private final Class<?> elementType;
+        private final int elementSize;
+        // key is the array length
+        private final HashMap<Integer,ArrayDeque<Object>> arrayMap = new HashMap<Integer,ArrayDeque<Object>>();
+        private volatile int pooledArrays = 0;
+        private volatile long bytes = 0;
+        private final AtomicLong numberAllocated = new AtomicLong();
+        private final AtomicLong numberReused = new AtomicLong();
+        private final AtomicLong numberReleased = new AtomicLong();
+        private final AtomicLong numberDiscarded = new AtomicLong();
+
+        private TypePool(Class<?> elementType,int elementSize) {
+            this.elementType = elementType;
+            this.elementSize = elementSize;
+        }
+
+        private Object allocate(int length) {
+            numberAllocated.incrementAndGet();
+            Object array = null;
+            synchronized(arrayMap) {
+                ArrayDeque<Object> arrays = arrayMap.get(length);
+                if(arrays!=null) {
+                    array = arrays.pollFirst();
+                    if(arrays.isEmpty()) arrayMap.remove(length);
+                }
+                if(array!=null) {
+                    long size = (long)length*elementSize;
+                    pooledArrays--;
+                    bytes -= size;
+                    pooledBytes.addAndGet(-size);
+                }
+            }
+            if(array==null) return java.lang.reflect.Array.newInstance(elementType, length);
+            numberReused.incrementAndGet();
+            return array;
+        }
+
+        private void release(Object array) {
+            int length = java.lang.reflect.Array.getLength(array);
+            if(length==0) return;
+            long size = (long)length*elementSize;
+            if(pooledBytes.addAndGet(size)>memoryBudget) {
+                pooledBytes.addAndGet(-size);
+                numberDiscarded.incrementAndGet();
+                return;
+            }
+            clearArray(array);
+            synchronized(arrayMap) {
+                ArrayDeque<Object> arrays = arrayMap.get(length);
+                if(arrays==null) {
+                    arrays = new ArrayDeque<Object>();
+                    arrayMap.put(length, arrays);
+                }
+                arrays.addFirst(array);
+                pooledArrays++;
+                bytes += size;
+            }
+            numberReleased.incrementAndGet();
+        }
+
+        private void clear() {
+            synchronized(arrayMap) {
+                Iterator<Integer> iter = arrayMap.keySet().iterator();
+                while(iter.hasNext()) {
+                    int length = iter.next();
+                    pooledBytes.addAndGet(-(long)length*elementSize*arrayMap.get(length).size());
+                    iter.remove();
+                }
+                pooledArrays = 0;
+                bytes = 0;
+            }
+        }
+
+        private static void clearArray(Object array) {
+            if(array instanceof double[]) Arrays.fill((double[])array, 0.0);
+            else if(array instanceof float[]) Arrays.fill((float[])array, 0.0f);
+            else if(array instanceof long[]) Arrays.fill((long[])array, 0L);
+            else if(array instanceof int[]) Arrays.fill((int[])array, 0);
+            else if(array instanceof short[]) Arrays.fill((short[])array, (short)0);
+            else if(array instanceof byte[]) Arrays.fill((byte[])array, (byte)0);
+            else if(array instanceof boolean[]) Arrays.fill((boolean[])array, false);
+            else Arrays.fill((Object[])array, null);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getElementType()
+         */
+        @Override
+        public String getElementType() {
+            return elementType.getSimpleName();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getNumberAllocated()
+         */
+        @Override
+        public long getNumberAllocated() {
+            return numberAllocated.get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getNumberReused()
+         */
+        @Override
+        public long getNumberReused() {
+            return numberReused.get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getNumberReleased()
+         */
+        @Override
+        public long getNumberReleased() {
+            return numberReleased.get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getNumberDiscarded()
+         */
+        @Override
+        public long getNumberDiscarded() {
+            return numberDiscarded.get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getPooledArrays()
+         */
+        @Override
+        public int getPooledArrays() {
+            return pooledArrays;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#getPooledBytes()
+         */
+        @Override
+        public long getPooledBytes() {
+            return bytes;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.ArrayPoolStatistics#reset()
+         */
+        @Override
+        public void reset() {
+            numberAllocated.set(0);
+            numberReused.set(0);
+            numberReleased.set(0);
+            numberDiscarded.set(0);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.factory;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics kept by ArrayPool for one element type.
+ * Signed and unsigned arrays of the same size share a pool,
+ * e.g. the statistics for byte include PVUByteArray.
+ * This is an MXBean so that it can be registered with the platform MBean server.
+ */
+@MXBean
+public interface ArrayPoolStatistics {
+    /**
+     * Get the element type, e.g. double.
+     *
+     * @return the name of the element type
+     */
+    String getElementType();
+
+    /**
+     * Get the number of arrays that were requested from the pool.
+     *
+     * @return the number of requests
+     */
+    long getNumberAllocated();
+
+    /**
+     * Get the number of requests that were satisfied by a pooled array.
+     *
+     * @return the number of reused arrays
+     */
+    long getNumberReused();
+
+    /**
+     * Get the number of arrays that were given back and kept.
+     *
+     * @return the number of pooled arrays
+     */
+    long getNumberReleased();
+
+    /**
+     * Get the number of arrays that were given back but not kept
+     * because the memory budget would have been exceeded.
+     *
+     * @return the number of discarded arrays
+     */
+    long getNumberDiscarded();
+
+    /**
+     * Get the number of arrays currently in the pool.
+     *
+     * @return the number of arrays
+     */
+    int getPooledArrays();
+
+    /**
+     * Get the memory currently held by the pool for this type.
+     *
+     * @return the number of bytes
+     */
+    long getPooledBytes();
+
+    /**
+     * Set all counters to zero.
+     */
+    void reset();
+}
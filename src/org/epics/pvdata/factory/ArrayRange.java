@@ -0,0 +1,149 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.factory;
+
+/**
+ * Compare and hash the first elements of arrays.
+ * The value array of a PVArray can be longer than its length,
+ * so only the elements up to the length may be looked at.
+ * Elements are compared as by <i>java.util.Arrays.equals</i> and
+ * hashed as by <i>java.util.Arrays.hashCode</i> for an array of the given length.
+ */
+final class ArrayRange {
+    private ArrayRange() {} // don't create
+
+    static boolean equals(boolean[] a, int aOffset, boolean[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++)
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        return true;
+    }
+
+    static boolean equals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++)
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        return true;
+    }
+
+    static boolean equals(short[] a, int aOffset, short[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++)
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        return true;
+    }
+
+    static boolean equals(int[] a, int aOffset, int[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++)
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        return true;
+    }
+
+    static boolean equals(long[] a, int aOffset, long[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++)
+            if (a[aOffset + i] != b[bOffset + i]) return false;
+        return true;
+    }
+
+    static boolean equals(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++) {
+            float x = a[aOffset + i];
+            float y = b[bOffset + i];
+            // NaN equals NaN and 0.0 differs from -0.0, as for Arrays.equals
+            if (x != y || x == 0.0f) {
+                if (Float.floatToIntBits(x) != Float.floatToIntBits(y)) return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean equals(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++) {
+            double x = a[aOffset + i];
+            double y = b[bOffset + i];
+            // NaN equals NaN and 0.0 differs from -0.0, as for Arrays.equals
+            if (x != y || x == 0.0) {
+                if (Double.doubleToLongBits(x) != Double.doubleToLongBits(y)) return false;
+            }
+        }
+        return true;
+    }
+
+    static boolean equals(Object[] a, int aOffset, Object[] b, int bOffset, int length) {
+        if (a == b && aOffset == bOffset) return true;
+        for (int i = 0; i < length; i++) {
+            Object x = a[aOffset + i];
+            Object y = b[bOffset + i];
+            if (x == null ? y != null : !x.equals(y)) return false;
+        }
+        return true;
+    }
+
+    static int hashCode(boolean[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++)
+            result = 31 * result + (a[i] ? 1231 : 1237);
+        return result;
+    }
+
+    static int hashCode(byte[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++)
+            result = 31 * result + a[i];
+        return result;
+    }
+
+    static int hashCode(short[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++)
+            result = 31 * result + a[i];
+        return result;
+    }
+
+    static int hashCode(int[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++)
+            result = 31 * result + a[i];
+        return result;
+    }
+
+    static int hashCode(long[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            long element = a[i];
+            result = 31 * result + (int)(element ^ (element >>> 32));
+        }
+        return result;
+    }
+
+    static int hashCode(float[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++)
+            result = 31 * result + Float.floatToIntBits(a[i]);
+        return result;
+    }
+
+    static int hashCode(double[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            long bits = Double.doubleToLongBits(a[i]);
+            result = 31 * result + (int)(bits ^ (bits >>> 32));
+        }
+        return result;
+    }
+
+    static int hashCode(Object[] a, int length) {
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            Object element = a[i];
+            result = 31 * result + (element == null ? 0 : element.hashCode());
+        }
+        return result;
+    }
+}
@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.pv.BooleanArrayData;
 import org.epics.pvdata.pv.DeserializableControl;
@@ -34,7 +33,7 @@ public class BasePVBooleanArray extends AbstractPVScalarArray implements PVBoole
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new boolean[newCapacity];
+    	value = ArrayPool.isEnabled() ? (boolean[])ArrayPool.allocate(boolean.class, newCapacity) : new boolean[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -96,18 +95,19 @@ public class BasePVBooleanArray extends AbstractPVScalarArray implements PVBoole
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVBooleanArray)
+			return ArrayRange.equals(value, 0, ((BasePVBooleanArray)obj).value, 0, length);
 		PVBooleanArray b = (PVBooleanArray)obj;
 	    BooleanArrayData arrayData = new BooleanArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.pv.DeserializableControl;
 import org.epics.pvdata.pv.DoubleArrayData;
@@ -37,7 +36,7 @@ public class BasePVDoubleArray extends AbstractPVScalarArray implements PVDouble
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new double[newCapacity];
+    	value = ArrayPool.isEnabled() ? (double[])ArrayPool.allocate(double.class, newCapacity) : new double[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -101,18 +100,19 @@ public class BasePVDoubleArray extends AbstractPVScalarArray implements PVDouble
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVDoubleArray)
+			return ArrayRange.equals(value, 0, ((BasePVDoubleArray)obj).value, 0, length);
 		PVDoubleArray b = (PVDoubleArray)obj;
 	    DoubleArrayData arrayData = new DoubleArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
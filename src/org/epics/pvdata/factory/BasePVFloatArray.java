@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.pv.DeserializableControl;
 import org.epics.pvdata.pv.FloatArrayData;
@@ -36,7 +35,7 @@ public class BasePVFloatArray extends AbstractPVScalarArray implements PVFloatAr
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new float[newCapacity];
+    	value = ArrayPool.isEnabled() ? (float[])ArrayPool.allocate(float.class, newCapacity) : new float[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -101,18 +100,19 @@ public class BasePVFloatArray extends AbstractPVScalarArray implements PVFloatAr
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVFloatArray)
+			return ArrayRange.equals(value, 0, ((BasePVFloatArray)obj).value, 0, length);
 		PVFloatArray b = (PVFloatArray)obj;
 	    FloatArrayData arrayData = new FloatArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
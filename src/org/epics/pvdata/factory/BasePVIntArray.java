@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.pv.DeserializableControl;
 import org.epics.pvdata.pv.IntArrayData;
@@ -36,7 +35,7 @@ public class BasePVIntArray extends AbstractPVScalarArray implements PVIntArray
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new int[newCapacity];
+    	value = ArrayPool.isEnabled() ? (int[])ArrayPool.allocate(int.class, newCapacity) : new int[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -101,18 +100,19 @@ public class BasePVIntArray extends AbstractPVScalarArray implements PVIntArray
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVIntArray)
+			return ArrayRange.equals(value, 0, ((BasePVIntArray)obj).value, 0, length);
 		PVIntArray b = (PVIntArray)obj;
 	    IntArrayData arrayData = new IntArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
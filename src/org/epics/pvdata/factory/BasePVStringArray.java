@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.misc.SerializeHelper;
 import org.epics.pvdata.pv.DeserializableControl;
@@ -35,7 +34,7 @@ public class BasePVStringArray extends AbstractPVScalarArray implements PVString
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new String[newCapacity];
+    	value = ArrayPool.isEnabled() ? (String[])ArrayPool.allocate(String.class, newCapacity) : new String[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -97,18 +96,19 @@ public class BasePVStringArray extends AbstractPVScalarArray implements PVString
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVStringArray)
+			return ArrayRange.equals(value, 0, ((BasePVStringArray)obj).value, 0, length);
 		PVStringArray b = (PVStringArray)obj;
 	    StringArrayData arrayData = new StringArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
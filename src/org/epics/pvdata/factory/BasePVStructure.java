@@ -50,6 +50,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
         }
         for(int i=0; i<length; i++) {
             AbstractPVField xxx = (AbstractPVField)pvFields[i];
+            if(xxx==null) continue;
             xxx.setData(fields[i],this,fieldNames[i]);
             if(xxx.getField().getType()==Type.structure) {
                 BasePVStructure yyy = (BasePVStructure)xxx;
@@ -88,6 +89,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
     @Override
     public void setImmutable() {
         super.setImmutable();
+        PVField[] pvFields = getPVFields();
         for(int i=0; i < pvFields.length; i++) {
             pvFields[i].setImmutable();
         }
@@ -110,7 +112,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
             return null;
         }
         if(fieldOffset>getNextFieldOffset()) return null;
-        for(PVField pvField: pvFields) {
+        for(PVField pvField: getPVFields()) {
             if(pvField.getFieldOffset()==fieldOffset) return pvField;
             if(pvField.getNextFieldOffset()<=fieldOffset) continue;
             if(pvField.getField().getType()==Type.structure) {
@@ -134,6 +136,16 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
     public PVField[] getPVFields() {
         return pvFields;
     }
+    /**
+     * Get the subfield with the given index.
+     * A derived class that creates subfields on demand overrides this
+     * so that a lookup by name only creates the subfield that is asked for.
+     * @param index The index of the subfield in the structure.
+     * @return The subfield.
+     */
+    protected PVField getPVField(int index) {
+        return pvFields[index];
+    }
     /* (non-Javadoc)
      * @see org.epics.pvdata.pv.PVStructure#getBooleanField(java.lang.String)
      */
@@ -348,16 +360,14 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
                 restOfName = fieldName.substring(index+1);
             }
         }
-        PVField[] pvFields = pvStructure.getPVFields();
-        String[] fieldNames = pvStructure.getStructure().getFieldNames();
-        PVField pvField = null;
-        for(int i=0; i<pvFields.length; i++) {
-            if(fieldNames[i].equals(name)) {
-                pvField = pvFields[i];
-                break;
-            }
+        int i = pvStructure.getStructure().getFieldIndex(name);
+        if(i<0) return null;
+        PVField pvField;
+        if(pvStructure instanceof BasePVStructure) {
+            pvField = ((BasePVStructure)pvStructure).getPVField(i);
+        } else {
+            pvField = pvStructure.getPVFields()[i];
         }
-        if(pvField==null) return null;
         if(restOfName==null) return pvField;
         if(pvField.getField().getType()!=Type.structure) return null;
         return findSubField(restOfName,(PVStructure)pvField);
@@ -367,6 +377,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
 	 * @see org.epics.pvdata.pv.Serializable#serialize(java.nio.ByteBuffer, org.epics.pvdata.pv.SerializableControl)
 	 */
 	public void serialize(ByteBuffer buffer, SerializableControl flusher) {
+        PVField[] pvFields = getPVFields();
         for (int i = 0; i < pvFields.length; i++)
         	pvFields[i].serialize(buffer, flusher);
 	}
@@ -374,6 +385,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
 	 * @see org.epics.pvdata.pv.Serializable#deserialize(java.nio.ByteBuffer, org.epics.pvdata.pv.DeserializableControl)
 	 */
 	public void deserialize(ByteBuffer buffer, DeserializableControl control) {
+        PVField[] pvFields = getPVFields();
         for (int i = 0; i < pvFields.length; i++)
         	pvFields[i].deserialize(buffer, control);
 	}
@@ -394,6 +406,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
         	return;
         }
         
+        PVField[] pvFields = getPVFields();
         for (int i = 0; i < pvFields.length; i++)
         {
         	final PVField pvField = pvFields[i];
@@ -429,6 +442,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
         	return;
         }
         
+        PVField[] pvFields = getPVFields();
         for (int i = 0; i < pvFields.length; i++)
         {
         	final PVField pvField = pvFields[i];
@@ -458,6 +472,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
 			if (!getStructure().equals(b.getStructure()))
 			    return false;
 
+			final PVField[] pvFields = getPVFields();
 			final PVField[] bfields = b.getPVFields(); 
 			if (bfields.length == pvFields.length)
 			{
@@ -481,7 +496,7 @@ public class BasePVStructure extends AbstractPVField implements PVStructure
 		final int prime = 31;
 		int result = 1;
 		result = prime * result;
-		result = prime * result + Arrays.hashCode(pvFields);
+		result = prime * result + Arrays.hashCode(getPVFields());
 		return result;
 	}
 }
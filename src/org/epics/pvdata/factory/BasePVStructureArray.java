@@ -4,8 +4,6 @@
  */
 package org.epics.pvdata.factory;
 
-import java.util.Arrays;
-
 import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.PVStructureArray;
@@ -97,11 +95,12 @@ public class BasePVStructureArray extends AbstractPVComplexArray implements PVSt
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVStructureArray)
+			return ArrayRange.equals(value, 0, ((BasePVStructureArray)obj).value, 0, length);
 		PVStructureArray b = (PVStructureArray)obj;
-		StructureArrayData arrayData = new StructureArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    StructureArrayData arrayData = new StructureArrayData();
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 
 	@Override
@@ -120,11 +119,11 @@ public class BasePVStructureArray extends AbstractPVComplexArray implements PVSt
 	}
 
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 
 }
@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.pv.ByteArrayData;
 import org.epics.pvdata.pv.DeserializableControl;
@@ -36,7 +35,7 @@ public class BasePVUByteArray extends AbstractPVScalarArray implements PVUByteAr
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new byte[newCapacity];
+    	value = ArrayPool.isEnabled() ? (byte[])ArrayPool.allocate(byte.class, newCapacity) : new byte[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -99,18 +98,19 @@ public class BasePVUByteArray extends AbstractPVScalarArray implements PVUByteAr
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVUByteArray)
+			return ArrayRange.equals(value, 0, ((BasePVUByteArray)obj).value, 0, length);
 		PVUByteArray b = (PVUByteArray)obj;
 	    ByteArrayData arrayData = new ByteArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
@@ -5,7 +5,6 @@
 package org.epics.pvdata.factory;
 
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 import org.epics.pvdata.pv.DeserializableControl;
 import org.epics.pvdata.pv.PVUShortArray;
@@ -36,7 +35,7 @@ public class BasePVUShortArray extends AbstractPVScalarArray implements PVUShort
     
     @Override
     protected void allocate(int newCapacity) {
-    	value = new short[newCapacity];
+    	value = ArrayPool.isEnabled() ? (short[])ArrayPool.allocate(short.class, newCapacity) : new short[newCapacity];
     	capacity = newCapacity;
     }
     
@@ -101,18 +100,19 @@ public class BasePVUShortArray extends AbstractPVScalarArray implements PVUShort
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVUShortArray)
+			return ArrayRange.equals(value, 0, ((BasePVUShortArray)obj).value, 0, length);
 		PVUShortArray b = (PVUShortArray)obj;
 	    ShortArrayData arrayData = new ShortArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 }
@@ -17,16 +17,32 @@ import org.epics.pvdata.pv.Union;
 
 /**
  * Base class for a PVUnion.
+ * <p>A PVUnion can keep the values it has created for the members that are not selected,
+ * so that switching between members, by select or deserialize, reuses them instead of creating new ones.
+ * A regular union keeps one value per member and a variant union keeps the last few values.
+ * A reused value has the data it had when it was last selected.
+ * Values given to set are never reused.
+ * The member cache is disabled unless enabled by setMemberCache or by the system property
+ * <i>org.epics.pvdata.factory.unionMemberCache</i>.
  * @author mse
  */
 public class BasePVUnion extends AbstractPVField implements PVUnion
 {
     private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final boolean defaultMemberCache = Boolean.getBoolean("org.epics.pvdata.factory.unionMemberCache");
+    private static final int VARIANT_CACHE_SIZE = 4;
 
     private final Union union;
 	private int selector = UNDEFINED_INDEX;
 	private PVField value = null;
 	private final boolean variant;
+	// was value created by this union
+	private boolean valueOwned = false;
+	private boolean memberCache = defaultMemberCache;
+	// regular union: indexed by member; variant union: the fields of cachedValues
+	private PVField[] cachedValues = null;
+	private Field[] cachedFields = null;
+	private int nextCacheSlot = 0;
 
 	/**
      * Constructor.
@@ -38,6 +54,99 @@ public class BasePVUnion extends AbstractPVField implements PVUnion
         variant = union.isVariant();
     }
 
+	/**
+	 * Enable or disable the member cache of this union.
+	 * Disabling it discards the values it holds.
+	 * @param enable true to reuse the values of members that are not selected.
+	 */
+	public void setMemberCache(boolean enable) {
+		memberCache = enable;
+		if (!enable)
+		{
+			cachedValues = null;
+			cachedFields = null;
+			nextCacheSlot = 0;
+		}
+	}
+
+	/**
+	 * Is the member cache enabled?
+	 * @return true if it is enabled.
+	 */
+	public boolean isMemberCache() {
+		return memberCache;
+	}
+
+	/*
+	 * Create the value for a member, or take it from the cache.
+	 */
+	private PVField createValue(Field field, int index) {
+		if (memberCache && cachedValues != null)
+		{
+			if (!variant)
+			{
+				PVField pvField = cachedValues[index];
+				if (pvField != null)
+				{
+					cachedValues[index] = null;
+					return pvField;
+				}
+			}
+			else
+			{
+				for (int i = 0; i < cachedValues.length; i++)
+				{
+					Field cachedField = cachedFields[i];
+					if (cachedField != null && (cachedField == field || cachedField.equals(field)))
+					{
+						PVField pvField = cachedValues[i];
+						cachedValues[i] = null;
+						cachedFields[i] = null;
+						return pvField;
+					}
+				}
+			}
+		}
+		return pvDataCreate.createPVField(field);
+	}
+
+	/*
+	 * Called before the current value is replaced.
+	 * index is the member the value belongs to, ignored for a variant union.
+	 */
+	private void releaseValue(int index) {
+		if (memberCache && valueOwned && value != null)
+		{
+			if (!variant)
+			{
+				if (cachedValues == null)
+					cachedValues = new PVField[union.getFields().length];
+				cachedValues[index] = value;
+			}
+			else
+			{
+				if (cachedValues == null)
+				{
+					cachedValues = new PVField[VARIANT_CACHE_SIZE];
+					cachedFields = new Field[VARIANT_CACHE_SIZE];
+				}
+				int slot = nextCacheSlot;
+				for (int i = 0; i < cachedValues.length; i++)
+				{
+					if (cachedValues[i] == null)
+					{
+						slot = i;
+						break;
+					}
+				}
+				cachedValues[slot] = value;
+				cachedFields[slot] = value.getField();
+				nextCacheSlot = (slot + 1) % cachedValues.length;
+			}
+		}
+		valueOwned = false;
+	}
+
 	/* (non-Javadoc)
 	 * @see org.epics.pvdata.pv.PVUnion#getUnion()
 	 */
@@ -97,6 +206,7 @@ public class BasePVUnion extends AbstractPVField implements PVUnion
 			
 		if (index == UNDEFINED_INDEX)
 		{
+			releaseValue(selector);
 			selector = UNDEFINED_INDEX;
 			value = null;
 			return null;
@@ -107,8 +217,10 @@ public class BasePVUnion extends AbstractPVField implements PVUnion
 			throw new IllegalArgumentException("index out of bounds");
 		
 		Field field = union.getField(index);
+		releaseValue(selector);
 		selector = index;
-		value = pvDataCreate.createPVField(field);
+		value = createValue(field, index);
+		valueOwned = true;
 
 		return value;
 	}
@@ -181,6 +293,8 @@ public class BasePVUnion extends AbstractPVField implements PVUnion
 				throw new IllegalArgumentException("selected field and its introspection data do not match");
 		}
 		
+		if (value != this.value)
+			releaseValue(selector);
 		this.selector = index;
 		this.value = value;
 		super.postPut();
@@ -237,11 +351,18 @@ public class BasePVUnion extends AbstractPVField implements PVUnion
 			{
 				// try to reuse existing field instance
 				if (value == null || !field.equals(value.getField()))
-					value = pvDataCreate.createPVField(field);
+				{
+					releaseValue(selector);
+					value = createValue(field, UNDEFINED_INDEX);
+					valueOwned = true;
+				}
 				value.deserialize(buffer, control);
 			}
 			else
+			{
+				releaseValue(selector);
 				value = null;
+			}
 		}
 		else
 		{
@@ -254,12 +375,19 @@ public class BasePVUnion extends AbstractPVField implements PVUnion
 					Field field = union.getField(selector);
 					// try to reuse existing field instance
 					if (value == null || !field.equals(value.getField()))
-						value = pvDataCreate.createPVField(field);
+					{
+						releaseValue(previousSelector);
+						value = createValue(field, selector);
+						valueOwned = true;
+					}
 				}
 				value.deserialize(buffer, control);
 			}
 			else
+			{
+				releaseValue(previousSelector);
 				value = null;
+			}
 		}
 	}
 	/* (non-Javadoc)
@@ -4,8 +4,6 @@
  */
 package org.epics.pvdata.factory;
 
-import java.util.Arrays;
-
 import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVUnion;
 import org.epics.pvdata.pv.PVUnionArray;
@@ -97,11 +95,12 @@ public class BasePVUnionArray extends AbstractPVComplexArray implements PVUnionA
     @Override
     protected boolean valueEquals(Object obj)
     {
+		if (obj instanceof BasePVUnionArray)
+			return ArrayRange.equals(value, 0, ((BasePVUnionArray)obj).value, 0, length);
 		PVUnionArray b = (PVUnionArray)obj;
-		UnionArrayData arrayData = new UnionArrayData();
-    	// NOTE: this assumes entire array set to arrayData
-	    b.get(0, b.getLength(), arrayData);
-		return Arrays.equals(arrayData.data, value);
+	    UnionArrayData arrayData = new UnionArrayData();
+	    b.get(0, length, arrayData);
+		return ArrayRange.equals(value, 0, arrayData.data, arrayData.offset, length);
     }
 	
 	@Override
@@ -120,11 +119,11 @@ public class BasePVUnionArray extends AbstractPVComplexArray implements PVUnionA
 	}
 
 	/* (non-Javadoc)
-	 * @see java.lang.Object#hashCode()
+	 * @see org.epics.pvdata.factory.AbstractPVArray#valueHashCode()
 	 */
 	@Override
-	public int hashCode() {
-		return Arrays.hashCode(value);
+	protected int valueHashCode() {
+		return ArrayRange.hashCode(value, length);
 	}
 	
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.factory;
+
+import org.epics.pvdata.pv.CapacityPolicy;
+
+/**
+ * Factory that creates a CapacityPolicy for AbstractPVArray.setCapacityPolicy.
+ */
+public class CapacityPolicyFactory {
+    private static final CapacityPolicy exact = new ExactPolicy();
+
+    /**
+     * Get the policy that makes the capacity equal to the new length whenever the length grows
+     * and never shrinks the capacity. This is the default.
+     *
+     * @return the policy
+     */
+    public static CapacityPolicy exact() {
+        return exact;
+    }
+
+    /**
+     * Create a policy that multiplies the capacity by factor whenever the length exceeds it,
+     * so that appending is amortized O(1). The capacity is never shrunk.
+     *
+     * @param factor the growth factor, greater than 1.0
+     * @return the policy
+     * @throws IllegalArgumentException if factor is not greater than 1.0
+     */
+    public static CapacityPolicy geometric(double factor) {
+        return new GeometricPolicy(factor,Integer.MAX_VALUE,0.0);
+    }
+
+    /**
+     * Create a policy that multiplies the capacity by factor but grows by at most maxIncrement
+     * elements at a time. When the length falls to shrinkRatio times the capacity or less,
+     * the capacity is reduced to what growing to the length would give.
+     * shrinkRatio should be less than 1/factor so that the capacity is not shrunk and grown again
+     * by small changes of length.
+     *
+     * @param factor the growth factor, greater than 1.0
+     * @param maxIncrement the largest number of elements added by one growth step
+     * @param shrinkRatio the ratio of length to capacity at which the capacity is shrunk, 0.0 to never shrink
+     * @return the policy
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public static CapacityPolicy boundedGeometric(double factor,int maxIncrement,double shrinkRatio) {
+        if(maxIncrement<1) throw new IllegalArgumentException("maxIncrement must be at least 1");
+        if(!(shrinkRatio>=0.0 && shrinkRatio<1.0)) throw new IllegalArgumentException("shrinkRatio must be in [0,1)");
+        return new GeometricPolicy(factor,maxIncrement,shrinkRatio);
+    }
+
+    private static class ExactPolicy implements CapacityPolicy {
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.CapacityPolicy#grow(int, int, int)
+         */
+        public int grow(int capacity,int length,int maximumCapacity) {
+            return length;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.CapacityPolicy#shrink(int, int)
+         */
+        public int shrink(int capacity,int length) {
+            return capacity;
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "exact";
+        }
+    }
+
+    private static class GeometricPolicy implements CapacityPolicy {
+        // capacity used for the first allocation of an empty array
+        private static final int minimumCapacity = 8;
+        private final double factor;
+        private final int maxIncrement;
+        private final double shrinkRatio;
+
+        private GeometricPolicy(double factor,int maxIncrement,double shrinkRatio) {
+            if(!(factor>1.0)) throw new IllegalArgumentException("factor must be greater than 1.0");
+            this.factor = factor;
+            this.maxIncrement = maxIncrement;
+            this.shrinkRatio = shrinkRatio;
+        }
+
+        private long next(int capacity) {
+            long increment = (long)(capacity*(factor - 1.0));
+            if(increment>maxIncrement) increment = maxIncrement;
+            return Math.max((long)capacity + increment, minimumCapacity);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.CapacityPolicy#grow(int, int, int)
+         */
+        public int grow(int capacity,int length,int maximumCapacity) {
+            if(length<=capacity) return capacity;
+            long newCapacity = Math.max(next(capacity), length);
+            return (int)Math.min(newCapacity, Math.max(length, maximumCapacity));
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.CapacityPolicy#shrink(int, int)
+         */
+        public int shrink(int capacity,int length) {
+            if(shrinkRatio==0.0 || length>capacity*shrinkRatio) return capacity;
+            long newCapacity = next(length);
+            return (newCapacity<capacity) ? (int)newCapacity : capacity;
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "geometric(" + factor + "," + maxIncrement + "," + shrinkRatio + ")";
+        }
+    }
+}
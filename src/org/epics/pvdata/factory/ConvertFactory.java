@@ -298,6 +298,19 @@ public final class ConvertFactory {
                     "Logic error. Should never get here");
         }
 
+        /*
+         * Copy all of from to to, which gets the length of from.
+         */
+        private void copyWholeScalarArray(PVScalarArray from, PVScalarArray to) {
+            // to is replaced as a whole, so it can share the data whatever its length
+            if (from instanceof AbstractPVArray && to instanceof AbstractPVArray
+                    && ((AbstractPVArray)to).shareValue((AbstractPVArray)from))
+                return;
+            int length = copyScalarArray(from, 0, to, 0, from.getLength());
+            if (to.getLength() != length)
+                to.setLength(length);
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -310,15 +323,9 @@ public final class ConvertFactory {
             case scalar:
                 copyScalar((PVScalar) from, (PVScalar) to);
                 return;
-            case scalarArray: {
-                PVScalarArray fromArray = (PVScalarArray) from;
-                PVScalarArray toArray = (PVScalarArray) to;
-                int length = copyScalarArray(fromArray, 0, toArray, 0,
-                        fromArray.getLength());
-                if (toArray.getLength() != length)
-                    toArray.setLength(length);
+            case scalarArray:
+                copyWholeScalarArray((PVScalarArray) from, (PVScalarArray) to);
                 return;
-            }
             case structure:
                 copyStructure((PVStructure) from, (PVStructure) to);
                 return;
@@ -514,6 +521,13 @@ public final class ConvertFactory {
                 throw new IllegalArgumentException(
                         "Convert.copyUnionArray fromOffset+count > from.getLength()");
             }
+            // copying the whole array to an array of the same length only shares the data
+            // until one of them is changed
+            if (offset == 0 && toOffset == 0 && count == from.getLength() && count == to.getLength()
+                    && from instanceof AbstractPVArray && to instanceof AbstractPVArray) {
+                if (((AbstractPVArray)to).shareValue((AbstractPVArray)from))
+                    return count;
+            }
             if(!to.isCapacityMutable()) {
                 int toCapacity = to.getCapacity();
                 if(toCapacity<count+toOffset) {
@@ -523,6 +537,7 @@ public final class ConvertFactory {
             }
             if (to.getCapacity() < count + toOffset)
                 to.setCapacity(count+toOffset);
+            final int toEnd = toOffset + count;
 
             ScalarType fromElementType = from.getScalarArray().getElementType();
             ScalarType toElementType = to.getScalarArray().getElementType();
@@ -633,7 +648,7 @@ public final class ConvertFactory {
                 		String.format("%s[] can not be converted to %s[]",
                 	        fromElementType, toElementType));
             }
-            if(to.getLength()<count+offset) to.setLength(count+offset);
+            if(to.getLength()<toEnd) to.setLength(toEnd);
             return ncopy;
         }
 
@@ -754,15 +769,9 @@ public final class ConvertFactory {
                 case scalar:
                     copyScalar((PVScalar) fromData, (PVScalar) toData);
                     break;
-                case scalarArray: {
-                    PVScalarArray fromArray = (PVScalarArray) fromData;
-                    PVScalarArray toArray = (PVScalarArray) toData;
-                    int length = copyScalarArray(fromArray, 0, toArray, 0,
-                            fromArray.getLength());
-                    if (toArray.getLength() != length)
-                        toArray.setLength(length);
+                case scalarArray:
+                    copyWholeScalarArray((PVScalarArray) fromData, (PVScalarArray) toData);
                     break;
-                }
                 case structure:
                     copyStructure((PVStructure) fromData, (PVStructure) toData);
                     break;
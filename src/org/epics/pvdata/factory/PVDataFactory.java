@@ -43,8 +43,19 @@ public class PVDataFactory {
     public static synchronized PVDataCreate getPVDataCreate() {
         return PVDataCreateImpl.getPVDataCreate();
     }
+    /**
+     * Get a PVDataCreate that creates every PVStructure as a SlabPVStructure.
+     * The fixed size scalars of such a structure are held in one array
+     * and their PVScalar interfaces are only created when they are used.
+     * This is meant for large numbers of records that have many scalar fields.
+     * All other PVFields are created as by <i>getPVDataCreate</i>.
+     * @return The interface.
+     */
+    public static synchronized PVDataCreate getSlabPVDataCreate() {
+        return SlabPVDataCreateImpl.getSlabPVDataCreate();
+    }
     
-    private static final class PVDataCreateImpl implements PVDataCreate{
+    private static class PVDataCreateImpl implements PVDataCreate{
         private static FieldCreate fieldCreate = FieldFactory.getFieldCreate();
         private static Convert convert = ConvertFactory.getConvert();
         private static PVDataCreateImpl singleImplementation = null;
@@ -62,7 +73,7 @@ public class PVDataFactory {
 			switch(field.getType()) {
 			case scalar: 	     return createPVScalar((Scalar)field); 
 			case scalarArray:    return createPVScalarArray((ScalarArray)field); 
-			case structure:      return new BasePVStructure((Structure)field);
+			case structure:      return createPVStructure((Structure)field);
 			case structureArray: return new BasePVStructureArray((StructureArray)field);
 			case union: 	     return new BasePVUnion((Union)field);
 			case unionArray:     return new BasePVUnionArray((UnionArray)field);
@@ -225,7 +236,7 @@ public class PVDataFactory {
                 throw new IllegalArgumentException("structToClone is null");
             }
         	Structure structure = fieldCreate.createStructure(structToClone.getStructure());
-            PVStructure pvStructure = new BasePVStructure(structure);
+            PVStructure pvStructure = createPVStructure(structure);
         	if(!copyStructure(structToClone,pvStructure)) {
         	    System.err.printf("strictToClone%n%s%n", structToClone);
         	    System.err.printf("pvStructure%n%s%n", pvStructure);
@@ -367,4 +378,22 @@ public class PVDataFactory {
             return result;
         }
     }
+    
+    private static final class SlabPVDataCreateImpl extends PVDataCreateImpl {
+        private static SlabPVDataCreateImpl singleImplementation = null;
+        private static synchronized SlabPVDataCreateImpl getSlabPVDataCreate() {
+                if (singleImplementation==null) {
+                    singleImplementation = new SlabPVDataCreateImpl();
+                }
+                return singleImplementation;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.factory.PVDataFactory.PVDataCreateImpl#createPVStructure(org.epics.pvdata.pv.Structure)
+         */
+        @Override
+        public PVStructure createPVStructure(Structure structure)
+        {
+            return new SlabPVStructure(structure);
+        }
+    }
 }
@@ -0,0 +1,545 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.factory;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.epics.pvdata.pv.DeserializableControl;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.PVBoolean;
+import org.epics.pvdata.pv.PVByte;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVFloat;
+import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVShort;
+import org.epics.pvdata.pv.PVUByte;
+import org.epics.pvdata.pv.PVUInt;
+import org.epics.pvdata.pv.PVULong;
+import org.epics.pvdata.pv.PVUShort;
+import org.epics.pvdata.pv.Scalar;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.SerializableControl;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.Type;
+
+/**
+ * A PVStructure that keeps all fixed size scalar subfields in one <i>long</i> array, the slab.
+ * Each boolean, integer and floating point scalar, at any depth, uses one element of the slab.
+ * The PVScalar for such a field is only created when it is asked for,
+ * so a record whose scalars are only serialized, or are accessed by name,
+ * does not hold one object per scalar.
+ * Substructures share the slab of the top level structure.
+ * Strings, arrays, unions and structure arrays are created as for BasePVStructure.
+ * <p>Serializing or deserializing the whole structure reads and writes the slab directly.
+ * Methods that need every subfield, for example <i>getPVFields</i> or the field offsets,
+ * create all the PVScalars of the structure.
+ * <p>Instances are created by the PVDataCreate returned by <i>PVDataFactory.getSlabPVDataCreate</i>.
+ */
+public class SlabPVStructure extends BasePVStructure
+{
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final Map<Structure,Layout> layoutCache =
+            Collections.synchronizedMap(new WeakHashMap<Structure,Layout>());
+
+    /*
+     * Where the subfields of a structure are in the slab.
+     * The layout only depends on the introspection interface, so it is shared.
+     */
+    private static final class Layout {
+        // slab index relative to the structure, -1 if the field is not in the slab
+        private final int[] slots;
+        // the scalar type of each field that is in the slab
+        private final ScalarType[] scalarTypes;
+        // the layout of each substructure
+        private final Layout[] layouts;
+        // number of slab elements used by the structure and its substructures
+        private final int size;
+
+        private Layout(Structure structure) {
+            Field[] fields = structure.getFields();
+            slots = new int[fields.length];
+            scalarTypes = new ScalarType[fields.length];
+            layouts = new Layout[fields.length];
+            int next = 0;
+            for(int i=0; i<fields.length; i++) {
+                slots[i] = -1;
+                Field field = fields[i];
+                if(field.getType()==Type.scalar) {
+                    ScalarType scalarType = ((Scalar)field).getScalarType();
+                    if(scalarType==ScalarType.pvString) continue;
+                    scalarTypes[i] = scalarType;
+                    slots[i] = next++;
+                } else if(field.getType()==Type.structure) {
+                    layouts[i] = getLayout((Structure)field);
+                    slots[i] = next;
+                    next += layouts[i].size;
+                }
+            }
+            size = next;
+        }
+    }
+
+    private static Layout getLayout(Structure structure) {
+        // the check and the put must be atomic so that there is one layout for a structure
+        synchronized(layoutCache) {
+            Layout layout = layoutCache.get(structure);
+            if(layout==null) {
+                layout = new Layout(structure);
+                layoutCache.put(structure, layout);
+            }
+            return layout;
+        }
+    }
+
+    private static PVField[] createPVFields(Structure structure,Layout layout,long[] slab,int base) {
+        Field[] fields = structure.getFields();
+        PVField[] pvFields = new PVField[fields.length];
+        for(int i=0; i<fields.length; i++) {
+            if(layout.layouts[i]!=null) {
+                pvFields[i] = new SlabPVStructure((Structure)fields[i],layout.layouts[i],slab,base + layout.slots[i]);
+            } else if(layout.slots[i]<0) {
+                pvFields[i] = pvDataCreate.createPVField(fields[i]);
+            }
+        }
+        return pvFields;
+    }
+
+    private final Layout layout;
+    private final long[] slab;
+    private final int base;
+    // the PVScalars created so far, read without locking
+    private final AtomicReferenceArray<PVField> pvScalars;
+    private volatile boolean allCreated = false;
+
+    /**
+     * Constructor.
+     * @param structure the reflection interface for the PVStructure data.
+     */
+    public SlabPVStructure(Structure structure) {
+        this(structure,getLayout(structure));
+    }
+
+    private SlabPVStructure(Structure structure,Layout layout) {
+        this(structure,layout,new long[layout.size],0);
+    }
+
+    private SlabPVStructure(Structure structure,Layout layout,long[] slab,int base) {
+        super(structure,createPVFields(structure,layout,slab,base));
+        this.layout = layout;
+        this.slab = slab;
+        this.base = base;
+        pvScalars = new AtomicReferenceArray<PVField>(layout.slots.length);
+    }
+
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.factory.BasePVStructure#getPVField(int)
+     */
+    @Override
+    protected PVField getPVField(int index) {
+        if(layout.scalarTypes[index]==null) return super.getPVField(index);
+        PVField pvField = pvScalars.get(index);
+        if(pvField!=null) return pvField;
+        return createPVScalar(index);
+    }
+
+    /*
+     * The PVScalar is complete before it is published in pvScalars,
+     * so a thread that finds it there without locking sees its parent and name.
+     */
+    private synchronized PVField createPVScalar(int index) {
+        PVField pvField = pvScalars.get(index);
+        if(pvField!=null) return pvField;
+        PVField[] pvFields = super.getPVFields();
+        Structure structure = getStructure();
+        Scalar scalar = (Scalar)structure.getField(index);
+        int slot = base + layout.slots[index];
+        AbstractPVField pv;
+        switch(layout.scalarTypes[index]) {
+        case pvBoolean: pv = new SlabPVBoolean(scalar,slab,slot); break;
+        case pvByte:    pv = new SlabPVByte(scalar,slab,slot); break;
+        case pvShort:   pv = new SlabPVShort(scalar,slab,slot); break;
+        case pvInt:     pv = new SlabPVInt(scalar,slab,slot); break;
+        case pvLong:    pv = new SlabPVLong(scalar,slab,slot); break;
+        case pvUByte:   pv = new SlabPVUByte(scalar,slab,slot); break;
+        case pvUShort:  pv = new SlabPVUShort(scalar,slab,slot); break;
+        case pvUInt:    pv = new SlabPVUInt(scalar,slab,slot); break;
+        case pvULong:   pv = new SlabPVULong(scalar,slab,slot); break;
+        case pvFloat:   pv = new SlabPVFloat(scalar,slab,slot); break;
+        case pvDouble:  pv = new SlabPVDouble(scalar,slab,slot); break;
+        default:
+            throw new IllegalStateException("SlabPVStructure: Logic error");
+        }
+        pv.setData(scalar,this,structure.getFieldName(index));
+        if(isImmutable()) pv.setImmutable();
+        pvFields[index] = pv;
+        pvScalars.set(index, pv);
+        return pv;
+    }
+
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.factory.BasePVStructure#getPVFields()
+     */
+    @Override
+    public PVField[] getPVFields() {
+        PVField[] pvFields = super.getPVFields();
+        if(!allCreated) {
+            // holding the lock makes the PVScalars created by other threads visible
+            synchronized(this) {
+                for(int i=0; i<pvFields.length; i++) {
+                    if(layout.scalarTypes[i]!=null) createPVScalar(i);
+                }
+                allCreated = true;
+            }
+        }
+        return pvFields;
+    }
+
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.factory.BasePVStructure#serialize(java.nio.ByteBuffer, org.epics.pvdata.pv.SerializableControl)
+     */
+    @Override
+    public void serialize(ByteBuffer buffer, SerializableControl flusher) {
+        PVField[] pvFields = super.getPVFields();
+        for(int i=0; i<pvFields.length; i++) {
+            ScalarType scalarType = layout.scalarTypes[i];
+            if(scalarType!=null) {
+                serialize(scalarType,slab[base + layout.slots[i]],buffer,flusher);
+            } else {
+                pvFields[i].serialize(buffer, flusher);
+            }
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.factory.BasePVStructure#deserialize(java.nio.ByteBuffer, org.epics.pvdata.pv.DeserializableControl)
+     */
+    @Override
+    public void deserialize(ByteBuffer buffer, DeserializableControl control) {
+        PVField[] pvFields = super.getPVFields();
+        for(int i=0; i<pvFields.length; i++) {
+            ScalarType scalarType = layout.scalarTypes[i];
+            if(scalarType!=null) {
+                slab[base + layout.slots[i]] = deserialize(scalarType,buffer,control);
+            } else {
+                pvFields[i].deserialize(buffer, control);
+            }
+        }
+    }
+
+    private static void serialize(ScalarType scalarType,long value,ByteBuffer buffer,SerializableControl flusher) {
+        switch(scalarType) {
+        case pvBoolean:
+        case pvByte:
+        case pvUByte:
+            flusher.ensureBuffer(1);
+            buffer.put((byte)value);
+            return;
+        case pvShort:
+        case pvUShort:
+            flusher.ensureBuffer(Short.SIZE/Byte.SIZE);
+            buffer.putShort((short)value);
+            return;
+        case pvInt:
+        case pvUInt:
+        case pvFloat:
+            flusher.ensureBuffer(Integer.SIZE/Byte.SIZE);
+            buffer.putInt((int)value);
+            return;
+        default:
+            flusher.ensureBuffer(Long.SIZE/Byte.SIZE);
+            buffer.putLong(value);
+        }
+    }
+
+    private static long deserialize(ScalarType scalarType,ByteBuffer buffer,DeserializableControl control) {
+        switch(scalarType) {
+        case pvBoolean:
+            control.ensureData(1);
+            return buffer.get()!=0 ? 1 : 0;
+        case pvByte:
+        case pvUByte:
+            control.ensureData(1);
+            return buffer.get();
+        case pvShort:
+        case pvUShort:
+            control.ensureData(Short.SIZE/Byte.SIZE);
+            return buffer.getShort();
+        case pvInt:
+        case pvUInt:
+        case pvFloat:
+            control.ensureData(Integer.SIZE/Byte.SIZE);
+            return buffer.getInt();
+        default:
+            control.ensureData(Long.SIZE/Byte.SIZE);
+            return buffer.getLong();
+        }
+    }
+
+    /*
+     * Base class for a PVScalar whose value is an element of the slab.
+     * Float and double values are kept as their raw bits.
+     */
+    private static abstract class SlabPVScalar extends AbstractPVScalar {
+        protected final long[] slab;
+        protected final int slot;
+        private final ScalarType scalarType;
+
+        protected SlabPVScalar(Scalar scalar,long[] slab,int slot) {
+            super(scalar);
+            this.slab = slab;
+            this.slot = slot;
+            scalarType = scalar.getScalarType();
+        }
+
+        protected void putValue(long value) {
+            if(super.isImmutable()) {
+                throw new IllegalArgumentException("field is immutable");
+            }
+            slab[slot] = value;
+            super.postPut();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Serializable#serialize(java.nio.ByteBuffer, org.epics.pvdata.pv.SerializableControl)
+         */
+        @Override
+        public void serialize(ByteBuffer buffer, SerializableControl flusher) {
+            SlabPVStructure.serialize(scalarType,slab[slot],buffer,flusher);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Serializable#deserialize(java.nio.ByteBuffer, org.epics.pvdata.pv.DeserializableControl)
+         */
+        @Override
+        public void deserialize(ByteBuffer buffer, DeserializableControl control) {
+            slab[slot] = SlabPVStructure.deserialize(scalarType,buffer,control);
+        }
+    }
+
+    private static final class SlabPVBoolean extends SlabPVScalar implements PVBoolean {
+        private SlabPVBoolean(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public boolean get() {
+            return slab[slot]!=0;
+        }
+        public void put(boolean value) {
+            putValue(value ? 1 : 0);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVBoolean) && ((PVBoolean)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return (get() ? 1231 : 1237);
+        }
+    }
+
+    private static final class SlabPVByte extends SlabPVScalar implements PVByte {
+        private SlabPVByte(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public byte get() {
+            return (byte)slab[slot];
+        }
+        public void put(byte value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVByte) && ((PVByte)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return get();
+        }
+    }
+
+    private static final class SlabPVShort extends SlabPVScalar implements PVShort {
+        private SlabPVShort(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public short get() {
+            return (short)slab[slot];
+        }
+        public void put(short value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVShort) && ((PVShort)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return get();
+        }
+    }
+
+    private static final class SlabPVInt extends SlabPVScalar implements PVInt {
+        private SlabPVInt(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public int get() {
+            return (int)slab[slot];
+        }
+        public void put(int value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVInt) && ((PVInt)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return get();
+        }
+    }
+
+    private static final class SlabPVLong extends SlabPVScalar implements PVLong {
+        private SlabPVLong(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public long get() {
+            return slab[slot];
+        }
+        public void put(long value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVLong) && ((PVLong)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return (int)get();
+        }
+    }
+
+    private static final class SlabPVUByte extends SlabPVScalar implements PVUByte {
+        private SlabPVUByte(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public byte get() {
+            return (byte)slab[slot];
+        }
+        public void put(byte value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVUByte) && ((PVUByte)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return get();
+        }
+    }
+
+    private static final class SlabPVUShort extends SlabPVScalar implements PVUShort {
+        private SlabPVUShort(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public short get() {
+            return (short)slab[slot];
+        }
+        public void put(short value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVUShort) && ((PVUShort)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return get();
+        }
+    }
+
+    private static final class SlabPVUInt extends SlabPVScalar implements PVUInt {
+        private SlabPVUInt(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public int get() {
+            return (int)slab[slot];
+        }
+        public void put(int value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVUInt) && ((PVUInt)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return get();
+        }
+    }
+
+    private static final class SlabPVULong extends SlabPVScalar implements PVULong {
+        private SlabPVULong(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public long get() {
+            return slab[slot];
+        }
+        public void put(long value) {
+            putValue(value);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVULong) && ((PVULong)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return (int)get();
+        }
+    }
+
+    private static final class SlabPVFloat extends SlabPVScalar implements PVFloat {
+        private SlabPVFloat(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public float get() {
+            return Float.intBitsToFloat((int)slab[slot]);
+        }
+        public void put(float value) {
+            putValue(Float.floatToRawIntBits(value));
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVFloat) && ((PVFloat)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return (int)get();
+        }
+    }
+
+    private static final class SlabPVDouble extends SlabPVScalar implements PVDouble {
+        private SlabPVDouble(Scalar scalar,long[] slab,int slot) {
+            super(scalar,slab,slot);
+        }
+        public double get() {
+            return Double.longBitsToDouble(slab[slot]);
+        }
+        public void put(double value) {
+            putValue(Double.doubleToRawLongBits(value));
+        }
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof PVDouble) && ((PVDouble)obj).get()==get();
+        }
+        @Override
+        public int hashCode() {
+            return (int)get();
+        }
+    }
+}
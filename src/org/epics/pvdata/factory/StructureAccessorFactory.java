@@ -0,0 +1,373 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.factory;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.DeserializableControl;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.PVBoolean;
+import org.epics.pvdata.pv.PVByte;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVFloat;
+import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVShort;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVStructureAccessor;
+import org.epics.pvdata.pv.PVUByte;
+import org.epics.pvdata.pv.PVUInt;
+import org.epics.pvdata.pv.PVULong;
+import org.epics.pvdata.pv.PVUShort;
+import org.epics.pvdata.pv.Scalar;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.SerializableControl;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.StructureAccessor;
+import org.epics.pvdata.pv.Type;
+
+/**
+ * Factory for StructureAccessor.
+ * There is one StructureAccessor for each introspection interface while the accessor is used.
+ * The cache does not keep either the accessor or the introspection interface from being garbage collected.
+ */
+public final class StructureAccessorFactory {
+    private StructureAccessorFactory() {} // don't create
+
+    private static final Convert convert = ConvertFactory.getConvert();
+    // The accessor refers to its structure, so the value is weak as well as the key.
+    private static final Map<Structure,WeakReference<StructureAccessorImpl>> accessorCache =
+            Collections.synchronizedMap(new WeakHashMap<Structure,WeakReference<StructureAccessorImpl>>());
+
+    /**
+     * Get the StructureAccessor for an introspection interface.
+     * @param structure The introspection interface.
+     * @return The StructureAccessor.
+     */
+    public static StructureAccessor getStructureAccessor(Structure structure) {
+        if(structure==null) {
+            throw new IllegalArgumentException("structure is null");
+        }
+        // the check and the put must be atomic so that there is one accessor for a structure
+        synchronized(accessorCache) {
+            WeakReference<StructureAccessorImpl> reference = accessorCache.get(structure);
+            StructureAccessorImpl accessor = (reference==null) ? null : reference.get();
+            if(accessor==null) {
+                accessor = new StructureAccessorImpl(structure);
+                accessorCache.put(structure, new WeakReference<StructureAccessorImpl>(accessor));
+            }
+            return accessor;
+        }
+    }
+
+    private static final class StructureAccessorImpl implements StructureAccessor {
+        private final Structure structure;
+        private final String[] names;
+        private final Field[] fields;
+        // the scalar type of each leaf field, null if it is not a scalar
+        private final ScalarType[] scalarTypes;
+        private final Map<String,Integer> indexMap = new HashMap<String,Integer>();
+
+        private StructureAccessorImpl(Structure structure) {
+            this.structure = structure;
+            ArrayList<String> nameList = new ArrayList<String>();
+            ArrayList<Field> fieldList = new ArrayList<Field>();
+            addLeafFields(structure,"",nameList,fieldList);
+            names = nameList.toArray(new String[nameList.size()]);
+            fields = fieldList.toArray(new Field[fieldList.size()]);
+            scalarTypes = new ScalarType[fields.length];
+            for(int i=0; i<fields.length; i++) {
+                if(fields[i].getType()==Type.scalar) {
+                    scalarTypes[i] = ((Scalar)fields[i]).getScalarType();
+                }
+                if(!indexMap.containsKey(names[i])) indexMap.put(names[i], i);
+            }
+        }
+
+        private static void addLeafFields(Structure structure,String prefix,
+                ArrayList<String> nameList,ArrayList<Field> fieldList)
+        {
+            Field[] subFields = structure.getFields();
+            String[] subNames = structure.getFieldNames();
+            for(int i=0; i<subFields.length; i++) {
+                String name = prefix + subNames[i];
+                if(subFields[i].getType()==Type.structure) {
+                    addLeafFields((Structure)subFields[i],name + ".",nameList,fieldList);
+                } else {
+                    nameList.add(name);
+                    fieldList.add(subFields[i]);
+                }
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.StructureAccessor#getStructure()
+         */
+        public Structure getStructure() {
+            return structure;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.StructureAccessor#getNumberLeafFields()
+         */
+        public int getNumberLeafFields() {
+            return fields.length;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.StructureAccessor#getLeafFieldIndex(java.lang.String)
+         */
+        public int getLeafFieldIndex(String fieldName) {
+            Integer index = indexMap.get(fieldName);
+            return (index==null) ? -1 : index.intValue();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.StructureAccessor#getLeafFieldName(int)
+         */
+        public String getLeafFieldName(int index) {
+            return names[index];
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.StructureAccessor#getLeafField(int)
+         */
+        public Field getLeafField(int index) {
+            return fields[index];
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.StructureAccessor#bind(org.epics.pvdata.pv.PVStructure)
+         */
+        public PVStructureAccessor bind(PVStructure pvStructure) {
+            if(!structure.equals(pvStructure.getStructure())) {
+                throw new IllegalArgumentException("pvStructure has a different introspection interface");
+            }
+            PVField[] leaves = new PVField[fields.length];
+            int next = addLeaves(pvStructure,leaves,0);
+            if(next!=leaves.length) {
+                throw new IllegalStateException("StructureAccessor: Logic error");
+            }
+            return new PVStructureAccessorImpl(this,pvStructure,leaves);
+        }
+
+        private static int addLeaves(PVStructure pvStructure,PVField[] leaves,int next) {
+            PVField[] pvFields = pvStructure.getPVFields();
+            for(int i=0; i<pvFields.length; i++) {
+                PVField pvField = pvFields[i];
+                if(pvField.getField().getType()==Type.structure) {
+                    next = addLeaves((PVStructure)pvField,leaves,next);
+                } else {
+                    leaves[next++] = pvField;
+                }
+            }
+            return next;
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "StructureAccessor " + structure.getID() + " leafFields " + fields.length;
+        }
+    }
+
+    private static final class PVStructureAccessorImpl implements PVStructureAccessor {
+        private final StructureAccessorImpl accessor;
+        private final PVStructure pvStructure;
+        private final PVField[] leaves;
+
+        private PVStructureAccessorImpl(StructureAccessorImpl accessor,PVStructure pvStructure,PVField[] leaves) {
+            this.accessor = accessor;
+            this.pvStructure = pvStructure;
+            this.leaves = leaves;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getStructureAccessor()
+         */
+        public StructureAccessor getStructureAccessor() {
+            return accessor;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getPVStructure()
+         */
+        public PVStructure getPVStructure() {
+            return pvStructure;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getPVField(int)
+         */
+        public PVField getPVField(int index) {
+            return leaves[index];
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getBoolean(int)
+         */
+        public boolean getBoolean(int index) {
+            return ((PVBoolean)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putBoolean(int, boolean)
+         */
+        public void putBoolean(int index, boolean value) {
+            ((PVBoolean)leaves[index]).put(value);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getByte(int)
+         */
+        public byte getByte(int index) {
+            if(accessor.scalarTypes[index]==ScalarType.pvUByte) return ((PVUByte)leaves[index]).get();
+            return ((PVByte)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putByte(int, byte)
+         */
+        public void putByte(int index, byte value) {
+            if(accessor.scalarTypes[index]==ScalarType.pvUByte) {
+                ((PVUByte)leaves[index]).put(value);
+            } else {
+                ((PVByte)leaves[index]).put(value);
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getShort(int)
+         */
+        public short getShort(int index) {
+            if(accessor.scalarTypes[index]==ScalarType.pvUShort) return ((PVUShort)leaves[index]).get();
+            return ((PVShort)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putShort(int, short)
+         */
+        public void putShort(int index, short value) {
+            if(accessor.scalarTypes[index]==ScalarType.pvUShort) {
+                ((PVUShort)leaves[index]).put(value);
+            } else {
+                ((PVShort)leaves[index]).put(value);
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getInt(int)
+         */
+        public int getInt(int index) {
+            if(accessor.scalarTypes[index]==ScalarType.pvUInt) return ((PVUInt)leaves[index]).get();
+            return ((PVInt)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putInt(int, int)
+         */
+        public void putInt(int index, int value) {
+            if(accessor.scalarTypes[index]==ScalarType.pvUInt) {
+                ((PVUInt)leaves[index]).put(value);
+            } else {
+                ((PVInt)leaves[index]).put(value);
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getLong(int)
+         */
+        public long getLong(int index) {
+            if(accessor.scalarTypes[index]==ScalarType.pvULong) return ((PVULong)leaves[index]).get();
+            return ((PVLong)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putLong(int, long)
+         */
+        public void putLong(int index, long value) {
+            if(accessor.scalarTypes[index]==ScalarType.pvULong) {
+                ((PVULong)leaves[index]).put(value);
+            } else {
+                ((PVLong)leaves[index]).put(value);
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getFloat(int)
+         */
+        public float getFloat(int index) {
+            return ((PVFloat)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putFloat(int, float)
+         */
+        public void putFloat(int index, float value) {
+            ((PVFloat)leaves[index]).put(value);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getDouble(int)
+         */
+        public double getDouble(int index) {
+            return ((PVDouble)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putDouble(int, double)
+         */
+        public void putDouble(int index, double value) {
+            ((PVDouble)leaves[index]).put(value);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#getString(int)
+         */
+        public String getString(int index) {
+            return ((PVString)leaves[index]).get();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#putString(int, java.lang.String)
+         */
+        public void putString(int index, String value) {
+            ((PVString)leaves[index]).put(value);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.PVStructureAccessor#copyTo(org.epics.pvdata.pv.PVStructureAccessor)
+         */
+        public void copyTo(PVStructureAccessor to) {
+            // an equal structure can have another accessor if the first one was garbage collected
+            StructureAccessor toAccessor = to.getStructureAccessor();
+            if(toAccessor!=accessor && !toAccessor.getStructure().equals(accessor.structure)) {
+                throw new IllegalArgumentException("to has a different introspection interface");
+            }
+            ScalarType[] scalarTypes = accessor.scalarTypes;
+            for(int i=0; i<leaves.length; i++) {
+                ScalarType scalarType = scalarTypes[i];
+                if(scalarType==null) {
+                    convert.copy(leaves[i],to.getPVField(i));
+                    continue;
+                }
+                switch(scalarType) {
+                case pvBoolean: to.putBoolean(i,getBoolean(i)); break;
+                case pvByte:
+                case pvUByte:   to.putByte(i,getByte(i)); break;
+                case pvShort:
+                case pvUShort:  to.putShort(i,getShort(i)); break;
+                case pvInt:
+                case pvUInt:    to.putInt(i,getInt(i)); break;
+                case pvLong:
+                case pvULong:   to.putLong(i,getLong(i)); break;
+                case pvFloat:   to.putFloat(i,getFloat(i)); break;
+                case pvDouble:  to.putDouble(i,getDouble(i)); break;
+                case pvString:  to.putString(i,getString(i)); break;
+                }
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Serializable#serialize(java.nio.ByteBuffer, org.epics.pvdata.pv.SerializableControl)
+         */
+        public void serialize(ByteBuffer buffer, SerializableControl flusher) {
+            for(int i=0; i<leaves.length; i++) {
+                leaves[i].serialize(buffer, flusher);
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.pv.Serializable#deserialize(java.nio.ByteBuffer, org.epics.pvdata.pv.DeserializableControl)
+         */
+        public void deserialize(ByteBuffer buffer, DeserializableControl control) {
+            for(int i=0; i<leaves.length; i++) {
+                leaves[i].deserialize(buffer, control);
+            }
+        }
+    }
+}
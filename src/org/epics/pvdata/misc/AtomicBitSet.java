@@ -0,0 +1,228 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.misc;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size bit set that can be modified by several threads without locking.
+ * Each word is updated with compare and set, so writers setting bits of different fields
+ * of a record never lose each other's changes.
+ * <p>A reader takes the changes with {@code getAndClear}, which moves every set bit
+ * into a plain {@code BitSet} and clears it here in one atomic step per word.
+ * A bit set concurrently with {@code getAndClear} is either moved by that call or
+ * left for the next one, but it is never lost and never moved twice.
+ * <p>The size is fixed when the bit set is created, normally the number of fields of a structure.
+ */
+public final class AtomicBitSet {
+    private final static int ADDRESS_BITS_PER_WORD = 6;
+    private final static int BITS_PER_WORD = 1 << ADDRESS_BITS_PER_WORD;
+
+    private final AtomicLongArray words;
+    private final int nbits;
+
+    /**
+     * Creates a bit set that can hold bits 0 through nbits-1.
+     * All bits are initially {@code false}.
+     * @param nbits the number of bits.
+     * @throws NegativeArraySizeException if nbits is negative.
+     */
+    public AtomicBitSet(int nbits) {
+        if (nbits < 0)
+            throw new NegativeArraySizeException("nbits < 0: " + nbits);
+        this.nbits = nbits;
+        words = new AtomicLongArray(wordIndex(nbits-1) + 1);
+    }
+
+    private static int wordIndex(int bitIndex) {
+        return bitIndex >> ADDRESS_BITS_PER_WORD;
+    }
+
+    private void checkIndex(int bitIndex) {
+        if (bitIndex < 0 || bitIndex >= nbits)
+            throw new IndexOutOfBoundsException("bitIndex: " + bitIndex + " nbits: " + nbits);
+    }
+
+    /**
+     * Get the number of bits this bit set can hold.
+     * @return the size.
+     */
+    public int size() {
+        return nbits;
+    }
+
+    /**
+     * Get the value of a bit.
+     * @param bitIndex the bit index.
+     * @return the value of the bit.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public boolean get(int bitIndex) {
+        checkIndex(bitIndex);
+        return (words.get(wordIndex(bitIndex)) & (1L << bitIndex)) != 0;
+    }
+
+    /**
+     * Sets a bit to {@code true}.
+     * @param bitIndex the bit index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public void set(int bitIndex) {
+        getAndSet(bitIndex);
+    }
+
+    /**
+     * Sets a bit to {@code true} and returns its previous value.
+     * @param bitIndex the bit index.
+     * @return the previous value of the bit.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public boolean getAndSet(int bitIndex) {
+        checkIndex(bitIndex);
+        int wordIndex = wordIndex(bitIndex);
+        long mask = 1L << bitIndex;
+        while (true) {
+            long word = words.get(wordIndex);
+            if ((word & mask) != 0)
+                return true;
+            if (words.compareAndSet(wordIndex, word, word | mask))
+                return false;
+        }
+    }
+
+    /**
+     * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to {@code true}.
+     * Each word is set atomically but the range as a whole is not.
+     * @param fromIndex the index of the first bit.
+     * @param toIndex the index after the last bit.
+     * @throws IndexOutOfBoundsException if the range is not valid.
+     */
+    public void set(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > nbits || fromIndex > toIndex)
+            throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " toIndex: " + toIndex + " nbits: " + nbits);
+        if (fromIndex == toIndex)
+            return;
+        int startWordIndex = wordIndex(fromIndex);
+        int endWordIndex = wordIndex(toIndex - 1);
+        long firstWordMask = -1L << fromIndex;
+        long lastWordMask = -1L >>> -toIndex;
+        for (int i = startWordIndex; i <= endWordIndex; i++) {
+            long mask = -1L;
+            if (i == startWordIndex) mask &= firstWordMask;
+            if (i == endWordIndex) mask &= lastWordMask;
+            orWord(i, mask);
+        }
+    }
+
+    private void orWord(int wordIndex, long mask) {
+        while (true) {
+            long word = words.get(wordIndex);
+            if ((word & mask) == mask)
+                return;
+            if (words.compareAndSet(wordIndex, word, word | mask))
+                return;
+        }
+    }
+
+    /**
+     * Sets a bit to {@code false}.
+     * @param bitIndex the bit index.
+     * @throws IndexOutOfBoundsException if the index is out of range.
+     */
+    public void clear(int bitIndex) {
+        checkIndex(bitIndex);
+        int wordIndex = wordIndex(bitIndex);
+        long mask = 1L << bitIndex;
+        while (true) {
+            long word = words.get(wordIndex);
+            if ((word & mask) == 0)
+                return;
+            if (words.compareAndSet(wordIndex, word, word & ~mask))
+                return;
+        }
+    }
+
+    /**
+     * Sets all bits to {@code false}.
+     * Each word is cleared atomically but the bit set as a whole is not.
+     */
+    public void clear() {
+        for (int i = 0; i < words.length(); i++)
+            words.set(i, 0L);
+    }
+
+    /**
+     * Is no bit set?
+     * @return true if no bit is set.
+     */
+    public boolean isEmpty() {
+        for (int i = 0; i < words.length(); i++) {
+            if (words.get(i) != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of bits that are set.
+     * @return the number of bits set.
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int i = 0; i < words.length(); i++)
+            sum += Long.bitCount(words.get(i));
+        return sum;
+    }
+
+    /**
+     * Performs a logical <b>OR</b> of this bit set into bitSet, word by word.
+     * This bit set is not modified.
+     * @param bitSet the bit set that receives the bits.
+     */
+    public void or(BitSet bitSet) {
+        for (int i = 0; i < words.length(); i++)
+            bitSet.orWord(i, words.get(i));
+    }
+
+    /**
+     * Atomically moves the set bits of this bit set into bitSet.
+     * Each word is cleared here and or'ed into bitSet in one step,
+     * so a bit set by another thread is moved exactly once.
+     * @param bitSet the bit set that receives the bits.
+     * @return true if any bit was moved.
+     */
+    public boolean getAndClear(BitSet bitSet) {
+        boolean result = false;
+        for (int i = 0; i < words.length(); i++) {
+            if (words.get(i) == 0) continue;
+            long word = words.getAndSet(i, 0L);
+            if (word == 0) continue;
+            bitSet.orWord(i, word);
+            result = true;
+        }
+        return result;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append('{');
+        boolean first = true;
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            while (word != 0) {
+                int bit = i * BITS_PER_WORD + Long.numberOfTrailingZeros(word);
+                if (!first) b.append(", ");
+                b.append(bit);
+                first = false;
+                word &= word - 1;
+            }
+        }
+        b.append('}');
+        return b.toString();
+    }
+}
@@ -470,6 +470,19 @@ public final class BitSet implements Cloneable, java.io.Serializable, org.epics.
         return retVal;
     }
 
+    /**
+     * Performs a logical <b>OR</b> of one word of this bit set with word.
+     * Used by AtomicBitSet to merge word by word.
+     * @param wordIndex the index of the word.
+     * @param word the bits to set.
+     */
+    void orWord(int wordIndex, long word) {
+        if (word == 0)
+            return;
+        expandTo(wordIndex);
+        words[wordIndex] |= word; // Restores invariants
+    }
+
     /**
      * Fast copy operation.
      * @param src bit-set to be copied from.
@@ -856,6 +869,144 @@ public final class BitSet implements Cloneable, java.io.Serializable, org.epics.
         }
     }
 
+    /**
+     * Calls visitor.setBit for each bit that is set to {@code true}, in ascending order.
+     * Unlike a {@code nextSetBit} loop each word is only read once.
+     * The visitor must not modify this {@code BitSet}.
+     *
+     * @param visitor the visitor
+     */
+    public void forEachSetBit(BitSetVisitor visitor) {
+        for (int u = 0; u < wordsInUse; u++) {
+            long word = words[u];
+            while (word != 0) {
+                visitor.setBit(u * BITS_PER_WORD + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+    }
+
+    /**
+     * Calls visitor.setBit for each bit from {@code fromIndex} (inclusive)
+     * to {@code toIndex} (exclusive) that is set to {@code true}, in ascending order.
+     * The visitor must not modify this {@code BitSet}.
+     *
+     * @param fromIndex index of the first bit
+     * @param toIndex index after the last bit
+     * @param visitor the visitor
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void forEachSetBit(int fromIndex, int toIndex, BitSetVisitor visitor) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int startWordIndex = wordIndex(fromIndex);
+        int endWordIndex = wordIndex(toIndex - 1);
+        if (startWordIndex >= wordsInUse)
+            return;
+        long lastWordMask = WORD_MASK >>> -toIndex;
+        if (endWordIndex >= wordsInUse) {
+            endWordIndex = wordsInUse - 1;
+            lastWordMask = WORD_MASK;
+        }
+        long word = words[startWordIndex] & (WORD_MASK << fromIndex);
+        for (int u = startWordIndex; ; ) {
+            if (u == endWordIndex)
+                word &= lastWordMask;
+            while (word != 0) {
+                visitor.setBit(u * BITS_PER_WORD + Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+            if (++u > endWordIndex)
+                return;
+            word = words[u];
+        }
+    }
+
+    /**
+     * Creates a cursor over the bits that are set in this {@code BitSet}.
+     * A cursor can be reset and reused, so iteration does not allocate.
+     *
+     * @return the cursor, positioned before the first set bit
+     */
+    public Cursor cursor() {
+        return new Cursor(this);
+    }
+
+    /**
+     * Iterates over the set bits of a {@code BitSet} in ascending order.
+     * The cursor keeps the remaining bits of the current word,
+     * so, unlike {@code nextSetBit}, no word is scanned twice.
+     * Bits may be cleared while iterating; a bit set ahead of the
+     * cursor is seen if it is not in the current word.
+     */
+    public static final class Cursor {
+        private final BitSet bitSet;
+        private int wordIndex;
+        private int endWordIndex;
+        private long lastWordMask;
+        private long word;
+
+        private Cursor(BitSet bitSet) {
+            this.bitSet = bitSet;
+            reset(0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Positions the cursor before the first set bit.
+         */
+        public void reset() {
+            reset(0, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Positions the cursor to iterate over the bits from
+         * {@code fromIndex} (inclusive) to {@code toIndex} (exclusive).
+         *
+         * @param fromIndex index of the first bit
+         * @param toIndex index after the last bit
+         * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+         *         or {@code toIndex} is negative, or {@code fromIndex} is
+         *         larger than {@code toIndex}
+         */
+        public void reset(int fromIndex, int toIndex) {
+            checkRange(fromIndex, toIndex);
+            if (fromIndex == toIndex) {
+                wordIndex = endWordIndex = 0;
+                word = 0;
+                return;
+            }
+            wordIndex = wordIndex(fromIndex);
+            endWordIndex = wordIndex(toIndex - 1);
+            lastWordMask = WORD_MASK >>> -toIndex;
+            word = (wordIndex < bitSet.wordsInUse) ? bitSet.words[wordIndex] & (WORD_MASK << fromIndex) : 0;
+            if (wordIndex == endWordIndex)
+                word &= lastWordMask;
+        }
+
+        /**
+         * Returns the next set bit.
+         *
+         * @return the index of the next set bit, or {@code -1} if there is none
+         */
+        public int next() {
+            while (word == 0) {
+                if (wordIndex >= endWordIndex || wordIndex + 1 >= bitSet.wordsInUse) {
+                    wordIndex = endWordIndex;
+                    return -1;
+                }
+                word = bitSet.words[++wordIndex];
+                if (wordIndex == endWordIndex)
+                    word &= lastWordMask;
+            }
+            int bitIndex = wordIndex * BITS_PER_WORD + Long.numberOfTrailingZeros(word);
+            word &= word - 1;
+            return bitIndex;
+        }
+    }
+
     /**
      * Returns the "logical size" of this {@code BitSet}: the index of
      * the highest set bit in the {@code BitSet} plus one. Returns zero
@@ -912,6 +1063,40 @@ public final class BitSet implements Cloneable, java.io.Serializable, org.epics.
         return sum;
     }
 
+    /**
+     * Returns the number of bits set to {@code true} from {@code fromIndex}
+     * (inclusive) to {@code toIndex} (exclusive).
+     *
+     * @param fromIndex index of the first bit
+     * @param toIndex index after the last bit
+     * @return the number of bits set in the range
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public int cardinality(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return 0;
+        int startWordIndex = wordIndex(fromIndex);
+        if (startWordIndex >= wordsInUse)
+            return 0;
+        int endWordIndex = wordIndex(toIndex - 1);
+        long lastWordMask = WORD_MASK >>> -toIndex;
+        if (endWordIndex >= wordsInUse) {
+            endWordIndex = wordsInUse - 1;
+            lastWordMask = WORD_MASK;
+        }
+        long firstWordMask = WORD_MASK << fromIndex;
+        if (startWordIndex == endWordIndex)
+            return Long.bitCount(words[startWordIndex] & firstWordMask & lastWordMask);
+        int sum = Long.bitCount(words[startWordIndex] & firstWordMask);
+        for (int i = startWordIndex + 1; i < endWordIndex; i++)
+            sum += Long.bitCount(words[i]);
+        sum += Long.bitCount(words[endWordIndex] & lastWordMask);
+        return sum;
+    }
+
     /**
      * Performs a logical <b>AND</b> of this target bit set with the
      * argument bit set. This bit set is modified so that each bit in it
@@ -1040,6 +1225,133 @@ public final class BitSet implements Cloneable, java.io.Serializable, org.epics.
         recalculateWordsInUse();
     }
 
+    /**
+     * Returns the mask of the bits of word {@code wordIndex} that are in
+     * the range {@code fromIndex} (inclusive) to {@code toIndex} (exclusive).
+     * The range must not be empty and must include part of the word.
+     */
+    private static long rangeMask(int wordIndex, int fromIndex, int toIndex) {
+        long mask = WORD_MASK;
+        if (wordIndex == wordIndex(fromIndex))
+            mask &= WORD_MASK << fromIndex;
+        if (wordIndex == wordIndex(toIndex - 1))
+            mask &= WORD_MASK >>> -toIndex;
+        return mask;
+    }
+
+    /**
+     * Performs a logical <b>AND</b> of the bits from {@code fromIndex}
+     * (inclusive) to {@code toIndex} (exclusive) of this bit set with
+     * the same bits of the argument. Bits outside the range are not changed.
+     *
+     * @param set a bit set
+     * @param fromIndex index of the first bit
+     * @param toIndex index after the last bit
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void and(BitSet set, int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex || this == set)
+            return;
+        int startWordIndex = wordIndex(fromIndex);
+        int endWordIndex = Math.min(wordIndex(toIndex - 1), wordsInUse - 1);
+        for (int i = startWordIndex; i <= endWordIndex; i++) {
+            long other = (i < set.wordsInUse) ? set.words[i] : 0;
+            words[i] &= other | ~rangeMask(i, fromIndex, toIndex);
+        }
+        recalculateWordsInUse();
+    }
+
+    /**
+     * Performs a logical <b>OR</b> of the bits from {@code fromIndex}
+     * (inclusive) to {@code toIndex} (exclusive) of this bit set with
+     * the same bits of the argument. Bits outside the range are not changed.
+     *
+     * @param set a bit set
+     * @param fromIndex index of the first bit
+     * @param toIndex index after the last bit
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void or(BitSet set, int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex || this == set)
+            return;
+        int startWordIndex = wordIndex(fromIndex);
+        int endWordIndex = Math.min(wordIndex(toIndex - 1), set.wordsInUse - 1);
+        for (int i = startWordIndex; i <= endWordIndex; i++)
+            orWord(i, set.words[i] & rangeMask(i, fromIndex, toIndex));
+    }
+
+    /**
+     * Sets to {@code true} the bits of this bit set, starting at {@code destIndex},
+     * whose corresponding bits from {@code fromIndex} (inclusive) to {@code toIndex}
+     * (exclusive) of the argument are set. Bit {@code fromIndex + i} of the argument
+     * is or'ed into bit {@code destIndex + i}. This is used to merge the changes
+     * of a substructure into the bit set of a structure that holds it at a different offset.
+     *
+     * @param set a bit set
+     * @param fromIndex index of the first bit of the argument
+     * @param toIndex index after the last bit of the argument
+     * @param destIndex index of the bit of this bit set that receives bit {@code fromIndex}
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}, or {@code destIndex} is negative
+     */
+    public void or(BitSet set, int fromIndex, int toIndex, int destIndex) {
+        checkRange(fromIndex, toIndex);
+        if (destIndex < 0)
+            throw new IndexOutOfBoundsException("destIndex < 0: " + destIndex);
+        if (fromIndex == toIndex)
+            return;
+        if (this == set)
+            set = (BitSet) clone();
+        int shift = fromIndex - destIndex;
+        int destEnd = destIndex + (toIndex - fromIndex);
+        int endWordIndex = wordIndex(destEnd - 1);
+        for (int i = wordIndex(destIndex); i <= endWordIndex; i++)
+            orWord(i, set.bitsAt(i * BITS_PER_WORD + shift) & rangeMask(i, destIndex, destEnd));
+    }
+
+    /**
+     * Returns the 64 bits starting at {@code bitIndex}, which can be negative.
+     */
+    private long bitsAt(int bitIndex) {
+        int u = bitIndex >> ADDRESS_BITS_PER_WORD;
+        int shift = bitIndex & BIT_INDEX_MASK;
+        long low = (u >= 0 && u < wordsInUse) ? words[u] : 0;
+        if (shift == 0)
+            return low;
+        long high = (u + 1 >= 0 && u + 1 < wordsInUse) ? words[u + 1] : 0;
+        return (low >>> shift) | (high << (BITS_PER_WORD - shift));
+    }
+
+    /**
+     * Clears the bits from {@code fromIndex} (inclusive) to {@code toIndex}
+     * (exclusive) of this bit set whose corresponding bit is set in the argument.
+     * Bits outside the range are not changed.
+     *
+     * @param set a bit set
+     * @param fromIndex index of the first bit
+     * @param toIndex index after the last bit
+     * @throws IndexOutOfBoundsException if {@code fromIndex} is negative,
+     *         or {@code toIndex} is negative, or {@code fromIndex} is
+     *         larger than {@code toIndex}
+     */
+    public void andNot(BitSet set, int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        if (fromIndex == toIndex)
+            return;
+        int startWordIndex = wordIndex(fromIndex);
+        int endWordIndex = Math.min(wordIndex(toIndex - 1), Math.min(wordsInUse, set.wordsInUse) - 1);
+        for (int i = startWordIndex; i <= endWordIndex; i++)
+            words[i] &= ~(set.words[i] & rangeMask(i, fromIndex, toIndex));
+        recalculateWordsInUse();
+    }
+
     /**
      * Returns the hash code value for this bit set. The hash code depends
      * only on which bits are set within this {@code BitSet}.
@@ -21,7 +21,7 @@ public interface BitSetUtil {
      * 2) If the bit for the structure is not set but all immediate subfields have their bit set then
      * the bit for the structure is set and the bits for all subfields are cleared.
      * </p>
-     * <p>Note that this is a recursive algorithm.</p>
+     * <p>The cost is proportional to the number of set bits and not to the number of fields.</p>
      * <p>Channel Access can call this before sending data. It can then pass entire structures if the structure offset bit is set.</p>
      * @param bitSet The bitSet for pvStructure. 
      * @param pvStructure the PVStructure relative to which the compression is performed
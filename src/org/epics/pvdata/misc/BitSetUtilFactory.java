@@ -4,13 +4,18 @@
  */
 package org.epics.pvdata.misc;
 
-import org.epics.pvdata.pv.PVField;
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+import org.epics.pvdata.pv.Field;
 import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.Type;
 
 /**
  * 
  * Factory that implements BitSetUtil.
- * It has NO internal state.
+ * The only internal state is a cache of the field offsets of each Structure it has been given.
  * @author mrk
  *
  */
@@ -25,63 +30,201 @@ public class BitSetUtilFactory {
     public static BitSetUtil getCompressBitSet() {
         return compressBitSet;
     }
+    /**
+     * Compress the bits in a BitSet related to a structure.
+     * This is the same as BitSetUtil.compress(bitSet,pvStructure) where pvStructure has the introspection interface structure.
+     * @param bitSet The bitSet for a top level PVStructure.
+     * @param structure The introspection interface of the PVStructure.
+     * @return (false,true) if (no, at least one) bit is set in bitSet.
+     */
+    public static boolean compress(BitSet bitSet,Structure structure) {
+        return compressBitSet.compress(bitSet,structure);
+    }
+    /**
+     * Expand the bits in a BitSet related to a structure.
+     * This is the reverse of compress. For each structure that has its bit set the bits for all subfields are set,
+     * so that every changed field has its own bit.
+     * @param bitSet The bitSet for pvStructure.
+     * @param pvStructure the PVStructure relative to which the expansion is performed
+     */
+    public static void expand(BitSet bitSet,PVStructure pvStructure) {
+        compressBitSet.expand(bitSet,pvStructure.getStructure());
+    }
+    /**
+     * Expand the bits in a BitSet related to a structure.
+     * @param bitSet The bitSet for a top level PVStructure.
+     * @param structure The introspection interface of the PVStructure.
+     */
+    public static void expand(BitSet bitSet,Structure structure) {
+        compressBitSet.expand(bitSet,structure);
+    }
     
     private static final class CompressBitSetImpl implements BitSetUtil{
+        // structures that have been seen. The value only refers to int arrays so the key can be collected.
+        private final WeakHashMap<Structure,Layout> layoutMap = new WeakHashMap<Structure,Layout>();
+        // the layout used last, which is found without computing hashCode
+        private volatile Layout lastLayout = null;
+        private final ThreadLocal<BitSet> candidatesLocal = new ThreadLocal<BitSet>() {
+            @Override
+            protected BitSet initialValue() {
+                return new BitSet();
+            }
+        };
+
         /* (non-Javadoc)
          * @see org.epics.pvdata.pvCopy.BitSetUtil#compress(org.epics.pvdata.misc.BitSet, org.epics.pvdata.pv.PVStructure)
          */
         @Override
         public boolean compress(BitSet bitSet, PVStructure pvStructure) {
-            return checkBitSetPVField(pvStructure,bitSet,0);
+            return compress(bitSet,pvStructure.getStructure());
         }
-        
-        private boolean checkBitSetPVField(PVField pvField,BitSet bitSet,int initialOffset) {
-            int offset = initialOffset;
-            int nbits = pvField.getNumberFields();
-            if(nbits==1) return bitSet.get(offset);
-            int nextSetBit = bitSet.nextSetBit(offset);
-            if(nextSetBit>=(offset+nbits)) return false;
-            if(nextSetBit<0) return false;
-            if(bitSet.get(offset)) {
-                if(nbits>1) bitSet.clear(offset+1, offset+nbits);
+        private boolean compress(BitSet bitSet, Structure structure) {
+            Layout layout = getLayout(structure);
+            int numberFields = layout.numberFields;
+            int[] nextOffset = layout.nextOffset;
+            int[] parentOffset = layout.parentOffset;
+            if(numberFields==1) return bitSet.get(0);
+            BitSet candidates = candidatesLocal.get();
+            candidates.clear();
+            // clear the subfields of each structure that has its bit set
+            // and remember the parents of all fields that remain set
+            int offset = bitSet.nextSetBit(0);
+            if(offset<0 || offset>=numberFields) return false;
+            if(offset==0) {
+                bitSet.clear(1, numberFields);
                 return true;
             }
-            boolean atLeastOneBitSet = false;
-            boolean allBitsSet = true;
-            PVStructure pvStructure = (PVStructure)pvField;
-            offset = pvStructure.getFieldOffset() + 1;
-            while(offset<initialOffset + nbits) {
-                PVField pvSubField = pvStructure.getSubField(offset);
-                int nbitsNow = pvSubField.getNumberFields();
-                if(nbitsNow==1) {
-                    if(bitSet.get(offset)) {
-                        atLeastOneBitSet = true;
-                    } else {
-                        allBitsSet = false;
-                    }
-                    offset++;
+            while(offset>=0 && offset<numberFields) {
+                candidates.set(parentOffset[offset]);
+                int next = nextOffset[offset];
+                if(next>offset+1) {
+                    bitSet.clear(offset+1, next);
+                    offset = bitSet.nextSetBit(next);
+                } else {
+                    offset = bitSet.nextSetBit(offset+1);
+                }
+            }
+            // A structure is after all its subfields in descending offset order,
+            // so when it is checked all its subfields have already been compressed.
+            offset = candidates.previousSetBit(numberFields-1);
+            while(offset>=0) {
+                candidates.clear(offset);
+                if(allSubfieldsSet(bitSet,layout,offset)) {
+                    bitSet.clear(offset+1, nextOffset[offset]);
+                    bitSet.set(offset);
+                    if(offset>0) candidates.set(parentOffset[offset]);
+                }
+                offset = candidates.previousSetBit(offset-1);
+            }
+            return true;
+        }
+        private void expand(BitSet bitSet, Structure structure) {
+            Layout layout = getLayout(structure);
+            int numberFields = layout.numberFields;
+            int[] nextOffset = layout.nextOffset;
+            int offset = bitSet.nextSetBit(0);
+            while(offset>=0 && offset<numberFields) {
+                int next = nextOffset[offset];
+                if(next>offset+1) {
+                    bitSet.set(offset+1, next);
+                    offset = bitSet.nextSetBit(next);
                 } else {
-                    boolean result = checkBitSetPVField(pvSubField,bitSet,offset);
-                    if(result) {
-                        atLeastOneBitSet = true;
-                        if(!bitSet.get(offset)) {
-                            allBitsSet = false;
-                        }
-                    } else {
-                        allBitsSet = false;
-                    }
-                    offset += pvSubField.getNumberFields();
+                    offset = bitSet.nextSetBit(offset+1);
+                }
+            }
+        }
 
+        private Layout getLayout(Structure structure) {
+            Layout layout = lastLayout;
+            if(layout!=null && layout.structure.get()==structure) return layout;
+            synchronized(layoutMap) {
+                layout = layoutMap.get(structure);
+                if(layout==null) {
+                    layout = new Layout(structure);
+                    layoutMap.put(structure, layout);
                 }
             }
-            if(allBitsSet) {
-                if(nbits>1) {
-                    bitSet.clear(initialOffset+1, initialOffset+nbits);
+            lastLayout = layout;
+            return layout;
+        }
+
+        private static boolean allSubfieldsSet(BitSet bitSet,Layout layout,int offset) {
+            int end = layout.nextOffset[offset];
+            if(layout.onlyScalarSubfields[offset]) {
+                return isRangeSet(bitSet.getBitArray(),offset+1,end);
+            }
+            int subOffset = offset + 1;
+            while(subOffset<end) {
+                if(!bitSet.get(subOffset)) return false;
+                subOffset = layout.nextOffset[subOffset];
+            }
+            return true;
+        }
+
+        /*
+         * Are all bits from fromIndex up to but not including toIndex set?
+         */
+        private static boolean isRangeSet(long[] words,int fromIndex,int toIndex) {
+            int startWord = fromIndex >> 6;
+            int endWord = (toIndex - 1) >> 6;
+            if(endWord>=words.length) return false;
+            long firstMask = -1L << fromIndex;
+            long lastMask = -1L >>> -toIndex;
+            if(startWord==endWord) {
+                long mask = firstMask & lastMask;
+                return (words[startWord] & mask)==mask;
+            }
+            if((words[startWord] & firstMask)!=firstMask) return false;
+            for(int i=startWord+1; i<endWord; i++) {
+                if(words[i]!=-1L) return false;
+            }
+            return (words[endWord] & lastMask)==lastMask;
+        }
+    }
+
+    /*
+     * The offsets of all fields of a structure, computed once from the introspection interface.
+     */
+    private static final class Layout {
+        private final WeakReference<Structure> structure;
+        private final int numberFields;
+        // the offset after the last subfield of each field
+        private final int[] nextOffset;
+        // the offset of the structure that holds each field. 0 for the top.
+        private final int[] parentOffset;
+        // true for each structure that has only fields that are not structures
+        private final boolean[] onlyScalarSubfields;
+
+        private Layout(Structure structure) {
+            this.structure = new WeakReference<Structure>(structure);
+            numberFields = numberFields(structure);
+            nextOffset = new int[numberFields];
+            parentOffset = new int[numberFields];
+            onlyScalarSubfields = new boolean[numberFields];
+            compute(structure,0,0);
+        }
+
+        private static int numberFields(Field field) {
+            if(field.getType()!=Type.structure) return 1;
+            int number = 1;
+            for(Field subField : ((Structure)field).getFields()) number += numberFields(subField);
+            return number;
+        }
+
+        private int compute(Field field,int offset,int parent) {
+            parentOffset[offset] = parent;
+            int next = offset + 1;
+            if(field.getType()==Type.structure) {
+                boolean onlyScalar = true;
+                for(Field subField : ((Structure)field).getFields()) {
+                    int subNext = compute(subField,next,offset);
+                    if(subNext>next+1) onlyScalar = false;
+                    next = subNext;
                 }
-                bitSet.set(initialOffset);
+                onlyScalarSubfields[offset] = onlyScalar;
             }
-            return atLeastOneBitSet;
+            nextOffset[offset] = next;
+            return next;
         }
-        
     }
 }
@@ -0,0 +1,16 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.misc;
+
+/**
+ * The interface that must be implemented by code that calls BitSet.forEachSetBit.
+ */
+public interface BitSetVisitor {
+    /**
+     * Called for each bit that is set, in ascending order.
+     * @param bitIndex the index of the bit.
+     */
+    void setBit(int bitIndex);
+}
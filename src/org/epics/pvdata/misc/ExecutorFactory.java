@@ -4,6 +4,10 @@
  */
 package org.epics.pvdata.misc;
 
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -24,6 +28,58 @@ public class ExecutorFactory {
     static public Executor create(String threadName, ThreadPriority priority) {
         return new ExecutorInstance(threadName,priority);
     }
+
+    /**
+     * Create an Executor that does not have its own thread but runs commands via a shared
+     * work-stealing pool.
+     * Commands are executed one at a time and in the order execute was called,
+     * just as for an Executor created by create.
+     * Since the pool threads are shared a command should not block for long.
+     *
+     * @param name the name of the executor
+     * @return the Executor interface
+     */
+    static public Executor createPooled(String name) {
+        return new PooledExecutorInstance(name,getSharedPool());
+    }
+
+    /**
+     * Create an Executor that runs commands via the specified java.util.concurrent.Executor.
+     * Commands are executed one at a time and in the order execute was called.
+     * This can, for example, be given an executor that creates a virtual thread per task
+     * so that commands can block.
+     *
+     * @param name the name of the executor
+     * @param pool the java.util.concurrent.Executor that provides the threads
+     * @return the Executor interface
+     */
+    static public Executor create(String name, java.util.concurrent.Executor pool) {
+        return new PooledExecutorInstance(name,pool);
+    }
+
+    /**
+     * Get the work-stealing pool used by executors created via createPooled.
+     * The pool has one daemon thread per available processor.
+     *
+     * @return the shared pool
+     */
+    static public synchronized ForkJoinPool getSharedPool() {
+        if(sharedPool==null) {
+            ForkJoinPool.ForkJoinWorkerThreadFactory factory = new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                @Override
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                    ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("pvDataExecutorPool-" + thread.getPoolIndex());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            };
+            sharedPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),factory,null,true);
+        }
+        return sharedPool;
+    }
+
+    static private ForkJoinPool sharedPool = null;
     
     static private class ExecutorInstance implements Executor {
         private ThreadInstance thread;
@@ -137,4 +193,93 @@ public class ExecutorFactory {
         }
     }
         
+
+    /*
+     * The nodes of an executor are kept in a lock free queue.
+     * At most one task that drains the queue is submitted to the pool at a time,
+     * which keeps commands serialized and in order.
+     * The task runs at most maxBatch commands and then resubmits itself,
+     * so that one busy executor can not monopolize a pool thread.
+     */
+    static private class PooledExecutorInstance implements Executor, Runnable {
+        private static final int maxBatch = 64;
+        private final String name;
+        private final java.util.concurrent.Executor pool;
+        private final ConcurrentLinkedQueue<PooledExecutorNode> runList = new ConcurrentLinkedQueue<PooledExecutorNode>();
+        private final AtomicBoolean isScheduled = new AtomicBoolean(false);
+        private volatile boolean alive = true;
+
+        private PooledExecutorInstance(String name, java.util.concurrent.Executor pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Executor#createNode(java.lang.Runnable)
+         */
+        public ExecutorNode createNode(Runnable command) {
+            return new PooledExecutorNode(command);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Executor#execute(org.epics.pvdata.misc.ExecutorNode)
+         */
+        public void execute(ExecutorNode executorNode) {
+            PooledExecutorNode node = (PooledExecutorNode)executorNode;
+            if(!alive) return;
+            if(!node.isOnList.compareAndSet(false, true)) return;
+            runList.add(node);
+            schedule();
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Executor#stop()
+         */
+        public void stop() {
+            alive = false;
+            PooledExecutorNode node = null;
+            while((node = runList.poll())!=null) node.isOnList.set(false);
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Runnable#run()
+         */
+        @Override
+        public void run() {
+            try {
+                for(int i=0; i<maxBatch && alive; i++) {
+                    PooledExecutorNode node = runList.poll();
+                    if(node==null) break;
+                    node.isOnList.set(false);
+                    node.command.run();
+                }
+            } finally {
+                isScheduled.set(false);
+                if(alive && !runList.isEmpty()) schedule();
+            }
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "executor " + name + " alive " + alive;
+        }
+
+        private void schedule() {
+            if(isScheduled.compareAndSet(false, true)) {
+                try {
+                    pool.execute(this);
+                } catch (RuntimeException e) {
+                    isScheduled.set(false);
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static class PooledExecutorNode implements ExecutorNode {
+        private final AtomicBoolean isOnList = new AtomicBoolean(false);
+        private final Runnable command;
+
+        private PooledExecutorNode(Runnable command) {
+            this.command = command;
+        }
+    }
 }
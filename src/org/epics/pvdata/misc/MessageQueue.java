@@ -9,6 +9,8 @@ import org.epics.pvdata.pv.MessageType;
 
 /**
  * A queue for Requester messages.
+ * Any number of threads can call put concurrently without blocking.
+ * Only one thread at a time may call get.
  * @author mrk
  *
  */
@@ -45,9 +47,10 @@ public interface MessageQueue {
     boolean isFull();
 
     /**
-     * Get the number of calls to replaceFirst and/or replaceLast since the last call.
+     * Get the number of puts that found the queue full since the last call.
+     * Each of these either replaced the last message or, if replaceLast was false, was discarded.
      *
-     * @return the number of calls to replaceFirst and/or replaceLast since the last call
+     * @return the number of overruns since the last call
      */
     int getClearOverrun();
 }
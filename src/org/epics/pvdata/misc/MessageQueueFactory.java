@@ -4,6 +4,11 @@
  */
 package org.epics.pvdata.misc;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import org.epics.pvdata.pv.MessageType;
 
 /**
@@ -17,77 +22,135 @@ public class MessageQueueFactory {
      * 
      * @param size the number of nodes. This can not be changed.
      * @return the interface for the messageQueue
+     * @throws IllegalArgumentException if size is less than 1
      */
     public static MessageQueue create(int size) {
         return new MessageQueueImpl(size);
     }
     
+    /**
+     * Get as many messages as are available, up to the length of messageNodes.
+     * Only the thread that calls get may call drain.
+     * 
+     * @param messageQueue the queue
+     * @param messageNodes the array that receives the messages, oldest first
+     * @return the number of messages put into messageNodes
+     */
+    public static int drain(MessageQueue messageQueue, MessageNode[] messageNodes) {
+        if(messageQueue instanceof MessageQueueImpl) {
+            return ((MessageQueueImpl)messageQueue).drain(messageNodes);
+        }
+        int number = 0;
+        while(number<messageNodes.length) {
+            MessageNode messageNode = messageQueue.get();
+            if(messageNode==null) break;
+            messageNodes[number++] = messageNode;
+        }
+        return number;
+    }
+    
+    /*
+     * A bounded ring for multiple producers and a single consumer.
+     * Each slot has a sequence number that tells producers and the consumer
+     * whether the slot is free for the put at a given position or holds the message for the get
+     * at a given position. Producers claim a position by a compareAndSet of tail.
+     * A put that finds the queue full and has replaceLast true replaces the message in the slot
+     * of the most recent put by a compareAndSet, which fails if the consumer took it meanwhile.
+     * Every put creates a new MessageNode, so a node returned by get is never modified again.
+     */
     private static class MessageQueueImpl implements MessageQueue {
-        private MessageNode[] messageNodes;
-        private int size;
-        private int numFree;
-        private int nextFree = 0;
-        private int nextMessage = 0;
-        private int numOverrun = 0;
+        private final int size;
+        private final AtomicReferenceArray<MessageNode> messageNodes;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong(0);
+        private final AtomicInteger numOverrun = new AtomicInteger(0);
+        private volatile long head = 0;
         
         private MessageQueueImpl(int size) {
-            messageNodes = new MessageNode[size];
-            for(int i=0; i<size; i++) {
-                messageNodes[i] = new MessageNode();
-            }
+            if(size<1) throw new IllegalArgumentException("size must be at least 1");
             this.size = size;
-            numFree = size;
+            messageNodes = new AtomicReferenceArray<MessageNode>(size);
+            sequences = new AtomicLongArray(size);
+            for(int i=0; i<size; i++) sequences.set(i, i);
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.MessageQueue#get()
          */
         public MessageNode get() {
-            if(numFree==size) return null;
-            MessageNode value = messageNodes[nextMessage++];
-            if(nextMessage==size) nextMessage = 0;
-            numFree++;
+            long position = head;
+            int index = (int)(position%size);
+            if(sequences.get(index)!=position+1) return null;
+            MessageNode value = messageNodes.getAndSet(index, null);
+            sequences.set(index, position + size);
+            head = position + 1;
             return value;
         }
+        private int drain(MessageNode[] nodes) {
+            int number = 0;
+            long position = head;
+            while(number<nodes.length) {
+                int index = (int)(position%size);
+                if(sequences.get(index)!=position+1) break;
+                nodes[number++] = messageNodes.getAndSet(index, null);
+                sequences.set(index, position + size);
+                position++;
+            }
+            head = position;
+            return number;
+        }
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.MessageQueue#put(java.lang.String, org.epics.pvdata.pv.MessageType, boolean)
          */
         public boolean put(String message, MessageType messageType,boolean replaceLast) {
-            MessageNode messageNode = null;
-            boolean ok = true;
-            if(numFree==0) {
-                int index = ((nextFree==0) ? size-1 : nextFree--) ;
-                messageNode = messageNodes[index];
-                numOverrun++;
-                ok = false;
-            } else {
-                messageNode = messageNodes[nextFree];
-                nextFree++;
-                if(nextFree==size) nextFree = 0;
-                numFree--;
-            }
+            MessageNode messageNode = new MessageNode();
             messageNode.message = message;
             messageNode.messageType = messageType;
-            return ok;
+            while(true) {
+                long position = tail.get();
+                int index = (int)(position%size);
+                long diff = sequences.get(index) - position;
+                if(diff==0) {
+                    if(tail.compareAndSet(position, position + 1)) {
+                        messageNodes.set(index, messageNode);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                } else if(diff<0) {
+                    // full
+                    if(!replaceLast) {
+                        numOverrun.incrementAndGet();
+                        return false;
+                    }
+                    long last = position - 1;
+                    int lastIndex = (int)(last%size);
+                    MessageNode lastNode = messageNodes.get(lastIndex);
+                    if(lastNode!=null && sequences.get(lastIndex)==last+1
+                    && messageNodes.compareAndSet(lastIndex, lastNode, messageNode))
+                    {
+                        numOverrun.incrementAndGet();
+                        return false;
+                    }
+                }
+                // another thread changed the queue. try again.
+            }
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.MessageQueue#isEmpty()
          */
         public boolean isEmpty() {
-            return ((numFree==size) ? true : false);
+            return tail.get()==head;
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.MessageQueue#isFull()
          */
         public boolean isFull() {
-            return ((numFree==0) ? true : false);
+            return tail.get() - head>=size;
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.MessageQueue#getClearOverrun()
          */
         public int getClearOverrun() {
-            int value = numOverrun;
-            numOverrun = 0;
-            return value;
+            return numOverrun.getAndSet(0);
         }
     }
 }
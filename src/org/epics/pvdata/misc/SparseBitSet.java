@@ -0,0 +1,582 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.misc;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.epics.pvdata.pv.DeserializableControl;
+import org.epics.pvdata.pv.SerializableControl;
+
+/**
+ * A bit set for very large structures where only a few fields change.
+ * The bits are kept in chunks of 65536 bits. A chunk that has at most 4096 bits set
+ * is a sorted array of the low 16 bits of each index, otherwise it is a bitmap.
+ * Chunks that have no bit set take no space.
+ * <p>When serialized the encoding is chosen by density: either the list of set bits,
+ * as differences from the previous bit, or the same words that {@code BitSet} sends.
+ * <p>{@code copyTo} and {@code set(BitSet)} convert to and from a {@code BitSet}.
+ * <p>A {@code SparseBitSet} is not safe for multithreaded use without
+ * external synchronization.
+ */
+public final class SparseBitSet implements org.epics.pvdata.pv.Serializable {
+    private final static int CHUNK_BITS = 16;
+    private final static int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private final static int WORDS_PER_CHUNK = (1 << CHUNK_BITS) / 64;
+    // an array chunk with more bits set than this becomes a bitmap
+    private final static int MAX_ARRAY_SIZE = 4096;
+
+    private final static byte DENSE = 0;
+    private final static byte SPARSE = 1;
+
+    // the high 16 bits of the indexes of each chunk, ascending
+    private int[] keys = new int[4];
+    private Chunk[] chunks = new Chunk[4];
+    private int numberChunks = 0;
+
+    /**
+     * Creates a new bit set. All bits are initially {@code false}.
+     */
+    public SparseBitSet() {
+    }
+
+    private static int checkIndex(int bitIndex) {
+        if (bitIndex < 0)
+            throw new IndexOutOfBoundsException("bitIndex < 0: " + bitIndex);
+        return bitIndex;
+    }
+
+    private int findChunk(int key) {
+        return Arrays.binarySearch(keys, 0, numberChunks, key);
+    }
+
+    /**
+     * Get the value of a bit.
+     * @param bitIndex the bit index.
+     * @return the value of the bit.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public boolean get(int bitIndex) {
+        int index = findChunk(checkIndex(bitIndex) >>> CHUNK_BITS);
+        return index >= 0 && chunks[index].get(bitIndex & CHUNK_MASK);
+    }
+
+    /**
+     * Sets a bit to {@code true}.
+     * @param bitIndex the bit index.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public void set(int bitIndex) {
+        getAndSet(bitIndex);
+    }
+
+    /**
+     * Sets a bit to {@code true} and returns its previous value.
+     * @param bitIndex the bit index.
+     * @return the previous value of the bit.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public boolean getAndSet(int bitIndex) {
+        int key = checkIndex(bitIndex) >>> CHUNK_BITS;
+        int index = findChunk(key);
+        if (index < 0) {
+            index = -index - 1;
+            if (numberChunks == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * numberChunks);
+                chunks = Arrays.copyOf(chunks, 2 * numberChunks);
+            }
+            System.arraycopy(keys, index, keys, index + 1, numberChunks - index);
+            System.arraycopy(chunks, index, chunks, index + 1, numberChunks - index);
+            keys[index] = key;
+            chunks[index] = new ArrayChunk();
+            numberChunks++;
+        }
+        Chunk chunk = chunks[index];
+        if (chunk.get(bitIndex & CHUNK_MASK))
+            return true;
+        chunks[index] = chunk.add(bitIndex & CHUNK_MASK);
+        return false;
+    }
+
+    /**
+     * Sets a bit to {@code false}.
+     * @param bitIndex the bit index.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public void clear(int bitIndex) {
+        int index = findChunk(checkIndex(bitIndex) >>> CHUNK_BITS);
+        if (index < 0)
+            return;
+        Chunk chunk = chunks[index].remove(bitIndex & CHUNK_MASK);
+        if (chunk != null) {
+            chunks[index] = chunk;
+            return;
+        }
+        numberChunks--;
+        System.arraycopy(keys, index + 1, keys, index, numberChunks - index);
+        System.arraycopy(chunks, index + 1, chunks, index, numberChunks - index);
+        chunks[numberChunks] = null;
+    }
+
+    /**
+     * Sets all bits to {@code false}.
+     */
+    public void clear() {
+        Arrays.fill(chunks, 0, numberChunks, null);
+        numberChunks = 0;
+    }
+
+    /**
+     * Is no bit set?
+     * @return true if no bit is set.
+     */
+    public boolean isEmpty() {
+        return numberChunks == 0;
+    }
+
+    /**
+     * Get the number of bits that are set.
+     * @return the number of bits set.
+     */
+    public int cardinality() {
+        int sum = 0;
+        for (int i = 0; i < numberChunks; i++)
+            sum += chunks[i].cardinality();
+        return sum;
+    }
+
+    /**
+     * Returns the index of the highest set bit plus one.
+     * @return the logical size of this bit set.
+     */
+    public int length() {
+        if (numberChunks == 0)
+            return 0;
+        return (keys[numberChunks - 1] << CHUNK_BITS) + chunks[numberChunks - 1].last() + 1;
+    }
+
+    /**
+     * Returns the index of the first bit that is set on or after fromIndex.
+     * @param fromIndex the index to start checking from (inclusive).
+     * @return the index of the next set bit, or -1 if there is none.
+     * @throws IndexOutOfBoundsException if the index is negative.
+     */
+    public int nextSetBit(int fromIndex) {
+        int key = checkIndex(fromIndex) >>> CHUNK_BITS;
+        int index = findChunk(key);
+        int low = fromIndex & CHUNK_MASK;
+        if (index < 0) {
+            index = -index - 1;
+            low = 0;
+        }
+        for (; index < numberChunks; index++, low = 0) {
+            int next = chunks[index].next(low);
+            if (next >= 0)
+                return (keys[index] << CHUNK_BITS) + next;
+        }
+        return -1;
+    }
+
+    /**
+     * Calls visitor.setBit for each bit that is set, in ascending order.
+     * The visitor must not modify this bit set.
+     * @param visitor the visitor.
+     */
+    public void forEachSetBit(BitSetVisitor visitor) {
+        for (int i = 0; i < numberChunks; i++)
+            chunks[i].forEach(keys[i] << CHUNK_BITS, visitor);
+    }
+
+    /**
+     * Replaces the bits of this bit set with the bits of bitSet.
+     * @param bitSet the bits to copy.
+     */
+    public void set(BitSet bitSet) {
+        clear();
+        long[] words = bitSet.getBitArray();
+        int wordsInUse = (bitSet.length() + 63) >>> 6;
+        for (int start = 0; start < wordsInUse; start += WORDS_PER_CHUNK)
+            setChunk(start, words, Math.min(wordsInUse, start + WORDS_PER_CHUNK));
+    }
+
+    /*
+     * Appends the chunk that holds words[start] to words[end-1].
+     * The chunks must be appended in ascending order.
+     */
+    private void setChunk(int start, long[] words, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++)
+            count += Long.bitCount(words[i]);
+        if (count == 0)
+            return;
+        Chunk chunk;
+        if (count > MAX_ARRAY_SIZE) {
+            long[] bitmap = new long[WORDS_PER_CHUNK];
+            System.arraycopy(words, start, bitmap, 0, end - start);
+            chunk = new BitmapChunk(bitmap, count);
+        } else {
+            char[] values = new char[count];
+            int n = 0;
+            for (int i = start; i < end; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    values[n++] = (char) (((i - start) << 6) + Long.numberOfTrailingZeros(word));
+            }
+            chunk = new ArrayChunk(values, count);
+        }
+        if (numberChunks == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * numberChunks);
+            chunks = Arrays.copyOf(chunks, 2 * numberChunks);
+        }
+        keys[numberChunks] = start / WORDS_PER_CHUNK;
+        chunks[numberChunks++] = chunk;
+    }
+
+    /**
+     * Replaces the bits of bitSet with the bits of this bit set.
+     * @param bitSet the bit set that receives the bits.
+     */
+    public void copyTo(BitSet bitSet) {
+        bitSet.clear();
+        for (int i = 0; i < numberChunks; i++)
+            chunks[i].orInto(bitSet, keys[i] * WORDS_PER_CHUNK);
+    }
+
+    /**
+     * Performs a logical <b>OR</b> of this bit set with the argument.
+     * @param set a bit set.
+     */
+    public void or(SparseBitSet set) {
+        if (set == this)
+            return;
+        for (int i = 0; i < set.numberChunks; i++) {
+            final int base = set.keys[i] << CHUNK_BITS;
+            set.chunks[i].forEach(base, new BitSetVisitor() {
+                public void setBit(int bitIndex) {
+                    set(bitIndex);
+                }
+            });
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int i = 0; i < numberChunks; i++)
+            h = 31 * (31 * h + keys[i]) + chunks[i].hashCode();
+        return h;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof SparseBitSet))
+            return false;
+        SparseBitSet set = (SparseBitSet) obj;
+        if (numberChunks != set.numberChunks)
+            return false;
+        for (int i = 0; i < numberChunks; i++) {
+            if (keys[i] != set.keys[i] || !chunks[i].equals(set.chunks[i]))
+                return false;
+        }
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        final StringBuilder b = new StringBuilder();
+        b.append('{');
+        forEachSetBit(new BitSetVisitor() {
+            public void setBit(int bitIndex) {
+                if (b.length() > 1)
+                    b.append(", ");
+                b.append(bitIndex);
+            }
+        });
+        b.append('}');
+        return b.toString();
+    }
+
+    /*
+     * The number of bytes of the sparse encoding, or -1 if it is more than limit.
+     */
+    private int sparseSize(int limit) {
+        int size = sizeSize(cardinality());
+        int previous = -1;
+        for (int bitIndex = nextSetBit(0); bitIndex >= 0; bitIndex = nextSetBit(bitIndex + 1)) {
+            size += sizeSize(bitIndex - previous - 1);
+            if (size > limit)
+                return -1;
+            previous = bitIndex;
+        }
+        return size;
+    }
+
+    private static int sizeSize(int size) {
+        return (size < 254) ? 1 : 5;
+    }
+
+    /**
+     * Writes a tag byte and then either the list of set bits or the words of the bit set,
+     * whichever is shorter. The words are in the format of {@code BitSet.serialize}.
+     * @see org.epics.pvdata.pv.Serializable#serialize(java.nio.ByteBuffer, org.epics.pvdata.pv.SerializableControl)
+     */
+    @Override
+    public void serialize(ByteBuffer buffer, SerializableControl flusher) {
+        int denseBytes = (length() + 7) >>> 3;
+        int sparseBytes = sparseSize(denseBytes + sizeSize(denseBytes));
+        flusher.ensureBuffer(1);
+        if (sparseBytes < 0) {
+            buffer.put(DENSE);
+            BitSet bitSet = new BitSet(length());
+            copyTo(bitSet);
+            bitSet.serialize(buffer, flusher);
+            return;
+        }
+        buffer.put(SPARSE);
+        SerializeHelper.writeSize(cardinality(), buffer, flusher);
+        int previous = -1;
+        for (int bitIndex = nextSetBit(0); bitIndex >= 0; bitIndex = nextSetBit(bitIndex + 1)) {
+            SerializeHelper.writeSize(bitIndex - previous - 1, buffer, flusher);
+            previous = bitIndex;
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.epics.pvdata.pv.Serializable#deserialize(java.nio.ByteBuffer, org.epics.pvdata.pv.DeserializableControl)
+     */
+    @Override
+    public void deserialize(ByteBuffer buffer, DeserializableControl control) {
+        control.ensureData(1);
+        byte encoding = buffer.get();
+        if (encoding == DENSE) {
+            BitSet bitSet = new BitSet();
+            bitSet.deserialize(buffer, control);
+            set(bitSet);
+            return;
+        }
+        if (encoding != SPARSE)
+            throw new IllegalArgumentException("unknown SparseBitSet encoding " + encoding);
+        clear();
+        int count = SerializeHelper.readSize(buffer, control);
+        int bitIndex = -1;
+        for (int i = 0; i < count; i++) {
+            bitIndex += SerializeHelper.readSize(buffer, control) + 1;
+            set(bitIndex);
+        }
+    }
+
+    /*
+     * The bits of one chunk. add and remove return the chunk that replaces this one;
+     * remove returns null when the chunk becomes empty.
+     */
+    private static abstract class Chunk {
+        abstract boolean get(int low);
+        abstract Chunk add(int low);
+        abstract Chunk remove(int low);
+        abstract int cardinality();
+        abstract int next(int low);
+        abstract int last();
+        abstract void forEach(int base, BitSetVisitor visitor);
+        abstract void orInto(BitSet bitSet, int baseWordIndex);
+    }
+
+    private static final class ArrayChunk extends Chunk {
+        private char[] values;
+        private int size;
+
+        private ArrayChunk() {
+            values = new char[4];
+            size = 0;
+        }
+
+        private ArrayChunk(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        private int find(int low) {
+            return Arrays.binarySearch(values, 0, size, (char) low);
+        }
+
+        boolean get(int low) {
+            return find(low) >= 0;
+        }
+
+        Chunk add(int low) {
+            int index = -find(low) - 1;
+            if (size == MAX_ARRAY_SIZE) {
+                long[] bitmap = new long[WORDS_PER_CHUNK];
+                for (int i = 0; i < size; i++)
+                    bitmap[values[i] >>> 6] |= 1L << values[i];
+                bitmap[low >>> 6] |= 1L << low;
+                return new BitmapChunk(bitmap, size + 1);
+            }
+            if (size == values.length)
+                values = Arrays.copyOf(values, Math.min(2 * size, MAX_ARRAY_SIZE));
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = (char) low;
+            size++;
+            return this;
+        }
+
+        Chunk remove(int low) {
+            int index = find(low);
+            if (index < 0)
+                return this;
+            if (size == 1)
+                return null;
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return this;
+        }
+
+        int cardinality() {
+            return size;
+        }
+
+        int next(int low) {
+            int index = find(low);
+            if (index < 0)
+                index = -index - 1;
+            return (index < size) ? values[index] : -1;
+        }
+
+        int last() {
+            return values[size - 1];
+        }
+
+        void forEach(int base, BitSetVisitor visitor) {
+            for (int i = 0; i < size; i++)
+                visitor.setBit(base + values[i]);
+        }
+
+        void orInto(BitSet bitSet, int baseWordIndex) {
+            int i = 0;
+            while (i < size) {
+                int wordIndex = values[i] >>> 6;
+                long word = 0;
+                for (; i < size && (values[i] >>> 6) == wordIndex; i++)
+                    word |= 1L << values[i];
+                bitSet.orWord(baseWordIndex + wordIndex, word);
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            int h = 1;
+            for (int i = 0; i < size; i++)
+                h = 31 * h + values[i];
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ArrayChunk))
+                return false;
+            ArrayChunk chunk = (ArrayChunk) obj;
+            if (size != chunk.size)
+                return false;
+            for (int i = 0; i < size; i++) {
+                if (values[i] != chunk.values[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private static final class BitmapChunk extends Chunk {
+        private final long[] words;
+        private int cardinality;
+
+        private BitmapChunk(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        boolean get(int low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        Chunk add(int low) {
+            words[low >>> 6] |= 1L << low;
+            cardinality++;
+            return this;
+        }
+
+        Chunk remove(int low) {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0)
+                return this;
+            words[low >>> 6] &= ~mask;
+            cardinality--;
+            if (cardinality > MAX_ARRAY_SIZE)
+                return this;
+            char[] values = new char[cardinality];
+            int n = 0;
+            for (int i = 0; i < WORDS_PER_CHUNK; i++) {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                    values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+            }
+            return new ArrayChunk(values, cardinality);
+        }
+
+        int cardinality() {
+            return cardinality;
+        }
+
+        int next(int low) {
+            int u = low >>> 6;
+            long word = words[u] & (-1L << low);
+            while (true) {
+                if (word != 0)
+                    return (u << 6) + Long.numberOfTrailingZeros(word);
+                if (++u == WORDS_PER_CHUNK)
+                    return -1;
+                word = words[u];
+            }
+        }
+
+        int last() {
+            for (int u = WORDS_PER_CHUNK - 1; ; u--) {
+                if (words[u] != 0)
+                    return (u << 6) + 63 - Long.numberOfLeadingZeros(words[u]);
+            }
+        }
+
+        void forEach(int base, BitSetVisitor visitor) {
+            for (int u = 0; u < WORDS_PER_CHUNK; u++) {
+                for (long word = words[u]; word != 0; word &= word - 1)
+                    visitor.setBit(base + (u << 6) + Long.numberOfTrailingZeros(word));
+            }
+        }
+
+        void orInto(BitSet bitSet, int baseWordIndex) {
+            for (int u = 0; u < WORDS_PER_CHUNK; u++)
+                bitSet.orWord(baseWordIndex + u, words[u]);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(words);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof BitmapChunk))
+                return false;
+            return Arrays.equals(words, ((BitmapChunk) obj).words);
+        }
+    }
+}
@@ -4,15 +4,20 @@
  */
 package org.epics.pvdata.misc;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.ListIterator;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Factory for creating threads.
+ * On a JVM that supports virtual threads (Java 21 and later) ThreadCreate can be told
+ * to create virtual instead of platform threads, either by calling setVirtualThreads(true)
+ * or by starting the JVM with -Dorg.epics.pvdata.misc.virtualThreads=true.
+ * The priority passed to ThreadCreate.create is ignored for virtual threads.
  * @author mrk
  *
  */
@@ -26,6 +31,75 @@ public class ThreadCreateFactory {
         return threadCreate;
     }
 
+    /**
+     * Is creating virtual threads supported by this JVM?
+     * This is decided by creating an unstarted virtual thread, so it is false
+     * on a JVM where virtual threads are a preview feature that is not enabled.
+     *
+     * @return (false,true) if virtual threads (are not, are) supported
+     */
+    public static boolean isVirtualThreadSupported() {
+        return ofVirtual!=null;
+    }
+
+    /**
+     * Should ThreadCreate.create create virtual threads?
+     * This only affects threads created after the call.
+     *
+     * @param value (false,true) means create (platform, virtual) threads
+     * @throws IllegalStateException if value is true and virtual threads are not supported
+     */
+    public static void setVirtualThreads(boolean value) {
+        if(value && !isVirtualThreadSupported()) {
+            throw new IllegalStateException("virtual threads are not supported by this JVM");
+        }
+        useVirtualThreads = value;
+    }
+
+    /**
+     * Does ThreadCreate.create create virtual threads?
+     *
+     * @return (false,true) if ThreadCreate.create creates (platform, virtual) threads
+     */
+    public static boolean isVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    private static Method ofVirtual = null;
+    private static Method builderName = null;
+    private static Method builderUnstarted = null;
+    static {
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            builderName = builder.getMethod("name", String.class);
+            builderUnstarted = builder.getMethod("unstarted", Runnable.class);
+            // Thread.ofVirtual exists but throws if virtual threads are a preview feature
+            if(createVirtualThread(new Runnable() {
+                public void run() {}
+            }, "virtualThreadProbe")==null) {
+                ofVirtual = null;
+            }
+        } catch (Exception e) {
+            ofVirtual = null;
+        }
+    }
+    private static volatile boolean useVirtualThreads =
+        isVirtualThreadSupported() && Boolean.getBoolean("org.epics.pvdata.misc.virtualThreads");
+
+    /*
+     * Returns null if the virtual thread can not be created.
+     */
+    private static Thread createVirtualThread(Runnable runnable, String name) {
+        try {
+            Object builder = ofVirtual.invoke(null);
+            builder = builderName.invoke(builder, name);
+            return (Thread)builderUnstarted.invoke(builder, runnable);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     private static ThreadCreateImpl threadCreate = new ThreadCreateImpl();
 
     private static class ThreadCreateImpl implements ThreadCreate {
@@ -40,35 +114,34 @@ public class ThreadCreateFactory {
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.ThreadCreate#getThreads()
          */
-        public synchronized Thread[] getThreads() {
-            int length = threadList.size();
-            Thread[] threads = new Thread[length];
-            ListIterator<Thread> iter = threadList.listIterator();
-            for(int i=0; i<length; i++) {
-                threads[i] = iter.next();
-            }
-            return threads;
+        public Thread[] getThreads() {
+            return threadSet.toArray(new Thread[0]);
         }
         
-        private synchronized void addThread(Thread thread) {
-            if(threadList.contains(thread)) {
+        private void addThread(Thread thread) {
+            if(!threadSet.add(thread)) {
                 throw new IllegalStateException("addThread but already on list");
             }
-            threadList.add(thread);
         }
         
-        private synchronized void removeThread(Thread thread) {
-            threadList.remove(thread);
+        private void removeThread(Thread thread) {
+            threadSet.remove(thread);
         }
         
-        private List<Thread> threadList = new LinkedList<Thread>();
+        private final Set<Thread> threadSet =
+            Collections.newSetFromMap(new ConcurrentHashMap<Thread,Boolean>());
 
         private static class RunnableImpl implements Runnable,ThreadReady {
 
             private RunnableImpl(String name, int priority, RunnableReady runnable) {
                 this.runnable = runnable;
-                thread = new Thread(this,name);
-                thread.setPriority(priority);
+                if(useVirtualThreads) {
+                    thread = createVirtualThread(this,name);
+                }
+                if(thread==null) {
+                    thread = new Thread(this,name);
+                    thread.setPriority(priority);
+                }
             }
 
             private Thread start() {
@@ -96,8 +169,11 @@ public class ThreadCreateFactory {
              */
             public void run() {
                 threadCreate.addThread(thread);
-                runnable.run(this);
-                threadCreate.removeThread(thread);
+                try {
+                    runnable.run(this);
+                } finally {
+                    threadCreate.removeThread(thread);
+                }
             }
             /* (non-Javadoc)
              * @see org.epics.pvdata.misc.ThreadReady#ready()
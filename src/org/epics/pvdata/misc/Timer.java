@@ -49,6 +49,78 @@ public interface Timer {
         boolean isScheduled();
     }
 
+    /**
+     * What a periodic TimerNode does when one or more periods have elapsed
+     * before the previous callback was made.
+     * In either case the node stays on its original schedule,
+     * i.e. callbacks are due at delay + n*period.
+     */
+    public enum OverrunPolicy {
+        /**
+         * Make every missed callback, one after the other, until the node is back on schedule.
+         */
+        catchUp,
+        /**
+         * Drop the missed callbacks and make the next one at the next time that is on schedule.
+         */
+        skip
+    }
+
+    /**
+     * Statistics kept for each TimerNode.
+     * Jitter is the time between when a callback was due and when it was made.
+     * The statistics are obtained via TimerFactory.getStatistics.
+     */
+    public interface TimerNodeStatistics {
+        /**
+         * Get the number of callbacks made.
+         *
+         * @return the number of callbacks
+         */
+        long getNumberCallbacks();
+
+        /**
+         * Get the number of periods whose deadline had already passed when a periodic node
+         * was rescheduled. For OverrunPolicy.skip this is the number of callbacks skipped.
+         *
+         * @return the number of overruns
+         */
+        long getNumberOverruns();
+
+        /**
+         * Get the jitter of the most recent callback.
+         *
+         * @return the jitter in nanoseconds
+         */
+        long getLastJitter();
+
+        /**
+         * Get the smallest jitter.
+         *
+         * @return the jitter in nanoseconds or 0 if no callbacks have been made
+         */
+        long getMinJitter();
+
+        /**
+         * Get the largest jitter.
+         *
+         * @return the jitter in nanoseconds
+         */
+        long getMaxJitter();
+
+        /**
+         * Get the average jitter.
+         *
+         * @return the jitter in nanoseconds or 0 if no callbacks have been made
+         */
+        double getAverageJitter();
+
+        /**
+         * Set all statistics to zero.
+         */
+        void reset();
+    }
+
     /**
      * Scheduler a call back after a specified delay.
      *
@@ -59,6 +131,9 @@ public interface Timer {
 
     /**
      * Schedule a periodic call back.
+     * Callbacks are scheduled at a fixed rate, i.e. each is due one period after
+     * the previous one was due, not one period after it was made.
+     * Periods shorter than a millisecond are supported.
      *
      * @param timerNode the TimerNode allocated via a call to createNode
      * @param delay the delay in seconds to the first callback
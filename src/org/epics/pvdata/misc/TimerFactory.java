@@ -6,14 +6,19 @@ package org.epics.pvdata.misc;
 
 import java.util.Comparator;
 import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
+import org.epics.pvdata.misc.Timer.OverrunPolicy;
 import org.epics.pvdata.misc.Timer.TimerCallback;
 import org.epics.pvdata.misc.Timer.TimerNode;
+import org.epics.pvdata.misc.Timer.TimerNodeStatistics;
 
 /**
  * Factory that creates a Timer.
  * This implementation of a Timer provides the following features not provided by java.util.Timer
  * 1) Timer thread has a priority and 2) A TimerNode can be reused.
+ * All times are based on System.nanoTime, so changes to the wall clock do not affect a Timer.
  * @author mrk
  *
  */
@@ -29,6 +34,33 @@ public class TimerFactory {
         return new TimerInstance(threadName,priority);
     }
 
+    /**
+     * Create and return a Timer implemented as a hashed timing wheel.
+     * Scheduling and canceling a TimerNode takes constant time no matter how many nodes are scheduled,
+     * at the cost of rounding every expiration time up to a multiple of tickDuration.
+     * All nodes that expire in the same tick are removed from the wheel together and
+     * their callbacks are then called one after the other.
+     * This is intended for timers that have many thousands of nodes scheduled.
+     *
+     * @param threadName the thread name for the timer thread
+     * @param priority the priority for the timer thread
+     * @param tickDuration the resolution of the timer in seconds
+     * @param ticksPerWheel the number of slots in the wheel. This is rounded up to a power of 2.
+     * @return the new timer
+     * @throws IllegalArgumentException if tickDuration or ticksPerWheel is not positive
+     */
+    static public Timer createHashedWheel(String threadName, ThreadPriority priority,
+            double tickDuration, int ticksPerWheel)
+    {
+        if(tickDuration<=0.0) {
+            throw new IllegalArgumentException("tickDuration must be positive");
+        }
+        if(ticksPerWheel<=0 || ticksPerWheel>(1<<30)) {
+            throw new IllegalArgumentException("illegal ticksPerWheel " + ticksPerWheel);
+        }
+        return new HashedWheelTimer(threadName,priority,tickDuration,ticksPerWheel);
+    }
+
     /**
      * Create a TimerNode that can be passed to the schedule methods.
      *
@@ -36,12 +68,42 @@ public class TimerFactory {
      * @return the TimerNode created
      */
     static public TimerNode createNode(TimerCallback timerCallback) {
-        return new TimerNodeImpl(timerCallback);
+        return new TimerNodeImpl(timerCallback,OverrunPolicy.skip);
     }
     
+    /**
+     * Create a TimerNode that can be passed to the schedule methods.
+     *
+     * @param timerCallback the callbacks called when the timer expires or is stopped
+     * @param overrunPolicy what a periodic node does if callbacks are late by more than a period
+     * @return the TimerNode created
+     */
+    static public TimerNode createNode(TimerCallback timerCallback, OverrunPolicy overrunPolicy) {
+        return new TimerNodeImpl(timerCallback,overrunPolicy);
+    }
+
+    /**
+     * Get the statistics for a TimerNode.
+     *
+     * @param timerNode a TimerNode created by createNode
+     * @return the statistics
+     */
+    static public TimerNodeStatistics getStatistics(TimerNode timerNode) {
+        return ((TimerNodeImpl)timerNode).statistics;
+    }
+
     static private final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+    // how long, in nanoseconds, the timer thread waits if no node is scheduled
+    static private final long idleDelay = 1000L*1000000000L;
+
+    /*
+     * Implemented by each timer so that TimerNodeImpl.cancel can remove itself.
+     */
+    private interface TimerImpl extends Timer {
+        void cancel(TimerNodeImpl timerNode);
+    }
 
-    static private class TimerInstance implements Timer, Comparator<TimerNodeImpl> {
+    static private class TimerInstance implements TimerImpl, Comparator<TimerNodeImpl> {
         private PriorityQueue<TimerNodeImpl> queue = new PriorityQueue<TimerNodeImpl>(16,this);
         private ThreadInstance thread;
         private volatile boolean isStopped = false;
@@ -53,9 +115,9 @@ public class TimerFactory {
          * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
          */
         public int compare(TimerNodeImpl arg0, TimerNodeImpl arg1) {
-            long a = arg0.timeToRun;
-            long b = arg1.timeToRun;
-            return (a < b)? -1 : ((a == b)? 0 : 1);
+            // nanoTime values must be compared via their difference
+            long diff = arg0.timeToRun - arg1.timeToRun;
+            return (diff < 0)? -1 : ((diff == 0)? 0 : 1);
         }
         /* (non-Javadoc)
          * @see org.epics.pvdata.misc.Timer#scheduleAfterDelay(org.epics.pvdata.misc.Timer.TimerNode, double)
@@ -67,8 +129,8 @@ public class TimerFactory {
          * @see org.epics.pvdata.misc.Timer#schedulePeriodic(org.epics.pvdata.misc.Timer.TimerNode, double, double)
          */
         public void schedulePeriodic(TimerNode timerNode, double delayDouble,double periodDouble) {
-            long delay = (long)(delayDouble*1000.0);
-            long period = (long)(periodDouble*1000.0);
+            long delay = (long)(delayDouble*1e9);
+            long period = (long)(periodDouble*1e9);
             TimerNodeImpl timerNodeImpl = (TimerNodeImpl)timerNode;
             if(timerNodeImpl.isQueued) {
                 throw new IllegalStateException("already scheduled");
@@ -79,7 +141,7 @@ public class TimerFactory {
             }
             timerNodeImpl.isCanceled = false;
             if(delay<0) delay = 0;
-            timerNodeImpl.timeToRun = System.currentTimeMillis() + delay;
+            timerNodeImpl.timeToRun = System.nanoTime() + delay;
             if(period<0) period = 0;
             timerNodeImpl.period = period;
             boolean isFirst = false;
@@ -105,16 +167,30 @@ public class TimerFactory {
                 synchronized(queue) {
                     TimerNodeImpl timerNode = queue.poll();
                     if(timerNode==null) return;
+                    timerNode.isQueued = false;
+                    timerNode.timerInstance = null;
                     timerCallback = timerNode.timerCallback;
                 }
                 timerCallback.timerStopped();
             }
         }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.TimerFactory.TimerImpl#cancel(org.epics.pvdata.misc.TimerFactory.TimerNodeImpl)
+         */
+        public void cancel(TimerNodeImpl timerNode) {
+            synchronized(queue) {
+                queue.remove(timerNode);
+                timerNode.isQueued = false;
+            }
+        }
 
 
         private class ThreadInstance implements RunnableReady {
 
             private volatile boolean alive = true;
+            private final ReentrantLock lock = new ReentrantLock();
+            private final Condition wakeUpCondition = lock.newCondition();
+            private boolean wokenUp = false;
 
             private ThreadInstance(String name,int priority) {
                 threadCreate.create(name, priority, this);
@@ -126,79 +202,328 @@ public class TimerFactory {
                 threadReady.ready();
                 while(alive) {
                     try {
-                        long currentTime = System.currentTimeMillis();
-                        long timeToRun = currentTime + 1000000;
-                        long period = 0;
+                        long currentTime = System.nanoTime();
+                        long delay = idleDelay;
+                        long timeDue = 0;
                         TimerNodeImpl nodeToCall = null;
                         synchronized(queue) {
                             TimerNodeImpl timerNode = queue.peek();
                             if(timerNode!=null) {
-                                timeToRun = timerNode.timeToRun;
-                                if(timeToRun<=currentTime) {
+                                delay = timerNode.timeToRun - currentTime;
+                                if(delay<=0) {
                                     if(!timerNode.isCanceled) {
                                         nodeToCall = timerNode;
+                                        timeDue = timerNode.timeToRun;
                                     }
                                     queue.poll();
-                                    period = timerNode.period;
-                                    if(period>0 && !timerNode.isCanceled) {
-                                        timerNode.timeToRun = currentTime + period;
+                                    if(timerNode.period>0 && !timerNode.isCanceled) {
+                                        timerNode.reschedule(currentTime);
                                         queue.add(timerNode);
                                     } else {
                                         timerNode.isQueued = false;
                                         timerNode.timerInstance = null;
                                     }
-                                    timerNode = queue.peek();
-                                    if(timerNode!=null) {
-                                        timeToRun = timerNode.timeToRun;
-                                    } else {
-                                        timeToRun = currentTime + 1000000;
-                                    }
                                 }
                             }
                         }
                         if(nodeToCall!=null) {
+                            nodeToCall.statistics.addCallback(System.nanoTime() - timeDue);
                             nodeToCall.timerCallback.callback();
+                            // look at the queue again before waiting
+                            continue;
                         }
-                        long delay = timeToRun - currentTime;
                         if(alive && delay>0) {
-                        	synchronized (this) {
-                        		if (!wokenUp)
-                        			this.wait(delay);
-                        		wokenUp = false;
-                        	}
+                            lock.lock();
+                            try {
+                                if (!wokenUp) wakeUpCondition.awaitNanos(delay);
+                                wokenUp = false;
+                            } finally {
+                                lock.unlock();
+                            }
                         }
                     }catch(InterruptedException e) {}
                 } 
             }
 
-            private boolean wokenUp = false;
             private void wakeUp() {
-            	synchronized (this) {
-	                wokenUp = true;
-            		this.notifyAll();
-            	}
+                lock.lock();
+                try {
+                    wokenUp = true;
+                    wakeUpCondition.signal();
+                } finally {
+                    lock.unlock();
+                }
             }
 
             private void stop() {
-            	synchronized (this) {
-	                alive = false;
-	                wokenUp = true;
-	                this.notifyAll();
-            	}
+                lock.lock();
+                try {
+                    alive = false;
+                    wokenUp = true;
+                    wakeUpCondition.signal();
+                } finally {
+                    lock.unlock();
+                }
             }
         }
     }
 
+    /*
+     * The wheel is an array of doubly linked lists of TimerNodeImpl.
+     * A node is put in the slot for the tick at which it expires.
+     * Each tick the timer thread visits the slot of the current tick and removes the nodes
+     * whose deadline has been reached; nodes for later rounds of the wheel are left in place.
+     * Ticks are measured from System.nanoTime at creation and the current tick is always computed
+     * from the clock, so a late timer thread processes all the ticks it missed.
+     */
+    static private class HashedWheelTimer implements TimerImpl, RunnableReady {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition moreWork = lock.newCondition();
+        private final TimerNodeImpl[] wheel;
+        private final int mask;
+        private final long tickNanos;
+        private final long startTime;
+        private long lastTick = 0;
+        private int numberQueued = 0;
+        private volatile boolean alive = true;
+        private volatile boolean isStopped = false;
+
+        private HashedWheelTimer(String threadName, ThreadPriority priority,
+                double tickDuration, int ticksPerWheel)
+        {
+            int size = 1;
+            while(size<ticksPerWheel) size <<= 1;
+            wheel = new TimerNodeImpl[size];
+            mask = size - 1;
+            tickNanos = Math.max(1L, (long)(tickDuration*1e9));
+            startTime = System.nanoTime();
+            threadCreate.create(threadName, priority.getJavaPriority(), this);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer#scheduleAfterDelay(org.epics.pvdata.misc.Timer.TimerNode, double)
+         */
+        public void scheduleAfterDelay(TimerNode timerNode, double delay) {
+            schedulePeriodic(timerNode,delay,-.1);
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer#schedulePeriodic(org.epics.pvdata.misc.Timer.TimerNode, double, double)
+         */
+        public void schedulePeriodic(TimerNode timerNode, double delayDouble, double periodDouble) {
+            TimerNodeImpl timerNodeImpl = (TimerNodeImpl)timerNode;
+            if(timerNodeImpl.isQueued) {
+                throw new IllegalStateException("already scheduled");
+            }
+            if(isStopped) {
+                timerNodeImpl.timerCallback.timerStopped();
+                return;
+            }
+            timerNodeImpl.isCanceled = false;
+            long delay = (long)(delayDouble*1e9);
+            if(delay<0) delay = 0;
+            long periodTicks = 0;
+            if(periodDouble>0.0) {
+                periodTicks = Math.max(1L, Math.round(periodDouble*1e9/tickNanos));
+            }
+            timerNodeImpl.period = periodTicks;
+            long expire = System.nanoTime() + delay - startTime;
+            long deadlineTick = (expire + tickNanos - 1)/tickNanos;
+            lock.lock();
+            try {
+                if(deadlineTick<=lastTick) deadlineTick = lastTick + 1;
+                timerNodeImpl.timeToRun = deadlineTick;
+                timerNodeImpl.wheelTick = deadlineTick;
+                timerNodeImpl.isQueued = true;
+                timerNodeImpl.timerInstance = this;
+                add(timerNodeImpl);
+                if(numberQueued==1) moreWork.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer#stop()
+         */
+        public void stop() {
+            TimerNodeImpl stopped = null;
+            lock.lock();
+            try {
+                isStopped = true;
+                alive = false;
+                moreWork.signal();
+                for(int i=0; i<wheel.length; i++) {
+                    while(wheel[i]!=null) {
+                        TimerNodeImpl timerNode = wheel[i];
+                        remove(timerNode);
+                        timerNode.isQueued = false;
+                        timerNode.timerInstance = null;
+                        timerNode.nextExpired = stopped;
+                        stopped = timerNode;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            while(stopped!=null) {
+                TimerNodeImpl timerNode = stopped;
+                stopped = timerNode.nextExpired;
+                timerNode.nextExpired = null;
+                timerNode.timerCallback.timerStopped();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.TimerFactory.TimerImpl#cancel(org.epics.pvdata.misc.TimerFactory.TimerNodeImpl)
+         */
+        public void cancel(TimerNodeImpl timerNode) {
+            lock.lock();
+            try {
+                if(timerNode.isQueued && timerNode.timerInstance==this) {
+                    remove(timerNode);
+                    timerNode.isQueued = false;
+                    timerNode.timerInstance = null;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.RunnableReady#run(org.epics.pvdata.misc.ThreadReady)
+         */
+        public void run(ThreadReady threadReady) {
+            threadReady.ready();
+            try {
+                while(alive) {
+                    TimerNodeImpl expired = null;
+                    lock.lock();
+                    try {
+                        if(numberQueued==0) {
+                            moreWork.await();
+                            continue;
+                        }
+                        long now = System.nanoTime() - startTime;
+                        long currentTick = now/tickNanos;
+                        if(currentTick<=lastTick) {
+                            moreWork.awaitNanos((lastTick + 1)*tickNanos - now);
+                            continue;
+                        }
+                        expired = expire(currentTick);
+                    } finally {
+                        lock.unlock();
+                    }
+                    while(expired!=null) {
+                        TimerNodeImpl timerNode = expired;
+                        expired = timerNode.nextExpired;
+                        timerNode.nextExpired = null;
+                        timerNode.statistics.addCallback(System.nanoTime() - timerNode.timeDue);
+                        timerNode.timerCallback.callback();
+                    }
+                }
+            } catch(InterruptedException e) {}
+        }
+
+        /*
+         * Must be called with lock held.
+         * Removes all nodes with a deadline up to currentTick and returns them as a list
+         * linked via nextExpired. Periodic nodes are put back into the wheel.
+         */
+        private TimerNodeImpl expire(long currentTick) {
+            TimerNodeImpl first = null;
+            TimerNodeImpl last = null;
+            long fromTick = lastTick + 1;
+            if(currentTick - fromTick > mask) fromTick = currentTick - mask;
+            for(long tick=fromTick; tick<=currentTick; tick++) {
+                TimerNodeImpl timerNode = wheel[(int)(tick & mask)];
+                while(timerNode!=null) {
+                    TimerNodeImpl next = timerNode.wheelNext;
+                    if(timerNode.wheelTick<=currentTick) {
+                        remove(timerNode);
+                        timerNode.timeDue = startTime + timerNode.timeToRun*tickNanos;
+                        if(timerNode.period>0) {
+                            timerNode.reschedule(currentTick);
+                            // a node that is catching up expires at most once per tick
+                            timerNode.wheelTick = Math.max(timerNode.timeToRun, currentTick + 1);
+                            add(timerNode);
+                        } else {
+                            timerNode.isQueued = false;
+                            timerNode.timerInstance = null;
+                        }
+                        if(last==null) {
+                            first = timerNode;
+                        } else {
+                            last.nextExpired = timerNode;
+                        }
+                        last = timerNode;
+                    }
+                    timerNode = next;
+                }
+            }
+            lastTick = currentTick;
+            return first;
+        }
+
+        private void add(TimerNodeImpl timerNode) {
+            int slot = (int)(timerNode.wheelTick & mask);
+            TimerNodeImpl head = wheel[slot];
+            timerNode.wheelPrevious = null;
+            timerNode.wheelNext = head;
+            if(head!=null) head.wheelPrevious = timerNode;
+            wheel[slot] = timerNode;
+            numberQueued++;
+        }
+
+        private void remove(TimerNodeImpl timerNode) {
+            TimerNodeImpl previous = timerNode.wheelPrevious;
+            TimerNodeImpl next = timerNode.wheelNext;
+            if(previous==null) {
+                wheel[(int)(timerNode.wheelTick & mask)] = next;
+            } else {
+                previous.wheelNext = next;
+            }
+            if(next!=null) next.wheelPrevious = previous;
+            timerNode.wheelPrevious = null;
+            timerNode.wheelNext = null;
+            numberQueued--;
+        }
+    }
+
     private static class TimerNodeImpl implements Timer.TimerNode {
-        private TimerInstance timerInstance = null;
+        private TimerImpl timerInstance = null;
         private TimerCallback timerCallback;
+        private final OverrunPolicy overrunPolicy;
+        private final TimerNodeStatisticsImpl statistics = new TimerNodeStatisticsImpl();
+        // nanoseconds for TimerInstance and ticks for HashedWheelTimer
         private long timeToRun = 0;
         private long period = 0;
+        // used by HashedWheelTimer
+        private long wheelTick = 0;
+        private long timeDue = 0;
+        private TimerNodeImpl wheelPrevious = null;
+        private TimerNodeImpl wheelNext = null;
+        private TimerNodeImpl nextExpired = null;
         private volatile boolean isQueued = false;
         private volatile boolean isCanceled = false;
 
-        private TimerNodeImpl(TimerCallback timerCallback) {
+        private TimerNodeImpl(TimerCallback timerCallback, OverrunPolicy overrunPolicy) {
             this.timerCallback = timerCallback;
+            this.overrunPolicy = overrunPolicy;
+        }
+
+        /*
+         * Advance timeToRun by one period, or for OverrunPolicy.skip by as many periods as
+         * needed to be after currentTime. Called by the timer thread when a periodic node expires.
+         */
+        private void reschedule(long currentTime) {
+            long next = timeToRun + period;
+            long late = currentTime - next;
+            if(late>=0) {
+                if(overrunPolicy==OverrunPolicy.skip) {
+                    long missed = late/period + 1;
+                    next += missed*period;
+                    statistics.numberOverruns += missed;
+                } else {
+                    statistics.numberOverruns++;
+                }
+            }
+            timeToRun = next;
         }
 
         /* (non-Javadoc)
@@ -206,12 +531,9 @@ public class TimerFactory {
          */
         public void cancel() {
             isCanceled = true;
-            TimerInstance timerInstance = this.timerInstance;
+            TimerImpl timerInstance = this.timerInstance;
             if(timerInstance!=null) {
-                synchronized(timerInstance.queue) {
-                    timerInstance.queue.remove(this);
-                    isQueued = false;
-                }
+                timerInstance.cancel(this);
             }
         }
 
@@ -225,4 +547,88 @@ public class TimerFactory {
         
         
     }
+
+    /*
+     * Only the timer thread modifies the statistics.
+     */
+    private static class TimerNodeStatisticsImpl implements TimerNodeStatistics {
+        private volatile long numberCallbacks = 0;
+        private volatile long numberOverruns = 0;
+        private volatile long lastJitter = 0;
+        private volatile long minJitter = Long.MAX_VALUE;
+        private volatile long maxJitter = 0;
+        private volatile long totalJitter = 0;
+
+        private void addCallback(long jitter) {
+            numberCallbacks++;
+            lastJitter = jitter;
+            totalJitter += jitter;
+            if(jitter<minJitter) minJitter = jitter;
+            if(jitter>maxJitter) maxJitter = jitter;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#getNumberCallbacks()
+         */
+        @Override
+        public long getNumberCallbacks() {
+            return numberCallbacks;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#getNumberOverruns()
+         */
+        @Override
+        public long getNumberOverruns() {
+            return numberOverruns;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#getLastJitter()
+         */
+        @Override
+        public long getLastJitter() {
+            return lastJitter;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#getMinJitter()
+         */
+        @Override
+        public long getMinJitter() {
+            return (numberCallbacks==0) ? 0 : minJitter;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#getMaxJitter()
+         */
+        @Override
+        public long getMaxJitter() {
+            return maxJitter;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#getAverageJitter()
+         */
+        @Override
+        public double getAverageJitter() {
+            long number = numberCallbacks;
+            if(number==0) return 0.0;
+            return ((double)totalJitter)/number;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.misc.Timer.TimerNodeStatistics#reset()
+         */
+        @Override
+        public void reset() {
+            numberCallbacks = 0;
+            numberOverruns = 0;
+            lastJitter = 0;
+            minJitter = Long.MAX_VALUE;
+            maxJitter = 0;
+            totalJitter = 0;
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "callbacks " + numberCallbacks + " overruns " + numberOverruns
+                + " jitter min " + getMinJitter() + " max " + maxJitter + " average " + getAverageJitter();
+        }
+    }
 }
@@ -4,6 +4,13 @@
  */
 package org.epics.pvdata.monitor;
 
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.epics.pvdata.misc.BitSet;
 import org.epics.pvdata.misc.Queue;
 import org.epics.pvdata.misc.QueueCreate;
@@ -26,6 +33,19 @@ public class MonitorQueueFactory {
      * @throws IllegalStateException if the queue size is not at least 2
      */
     public static MonitorQueue create(MonitorElement[] monitorElements) {
+        return create(monitorElements,false);
+    }
+
+    /**
+     * Create a MonitorQueue that optionally keeps statistics.
+     *
+     * @param monitorElements a MonitorElement array. Each monitorElement
+     * must becreated by calling MonitorQueueFactory.createMonitorElement.
+     * @param instrumented if true the queue keeps MonitorQueueStatistics
+     * @return the MonitorQueue interface.
+     * @throws IllegalStateException if the queue size is not at least 2
+     */
+    public static MonitorQueue create(MonitorElement[] monitorElements,boolean instrumented) {
         int length = monitorElements.length;
         if(length<2) {
             throw new IllegalStateException("queueSize must be at least 2 ");
@@ -38,8 +58,62 @@ public class MonitorQueueFactory {
             queueElements[i] = queueElement;
         }
         Queue<MonitorElement> queue = queueCreate.create(queueElements);
+        if(instrumented) return new InstrumentedMonitorQueueImpl(queue);
         return new MonitorQueueImpl(queue);
     }
+
+    /**
+     * Get the statistics for a MonitorQueue.
+     *
+     * @param monitorQueue a MonitorQueue created by MonitorQueueFactory.create
+     * @return the statistics or null if the queue is not instrumented
+     */
+    public static MonitorQueueStatistics getStatistics(MonitorQueue monitorQueue) {
+        if(monitorQueue instanceof InstrumentedMonitorQueueImpl) {
+            return ((InstrumentedMonitorQueueImpl)monitorQueue).statistics;
+        }
+        return null;
+    }
+
+    /**
+     * Register the statistics for a MonitorQueue with the platform MBean server.
+     * The object name is org.epics.pvdata:type=MonitorQueue,name=<i>name</i>.
+     *
+     * @param monitorQueue an instrumented MonitorQueue
+     * @param name the name, for example the channel name, used for the object name
+     * @return the object name under which the statistics were registered
+     * @throws IllegalArgumentException if the queue is not instrumented
+     * @throws IllegalStateException if the registration fails
+     */
+    public static ObjectName registerStatistics(MonitorQueue monitorQueue,String name) {
+        MonitorQueueStatistics statistics = getStatistics(monitorQueue);
+        if(statistics==null) {
+            throw new IllegalArgumentException("monitorQueue is not instrumented");
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName objectName = new ObjectName(
+                "org.epics.pvdata:type=MonitorQueue,name=" + ObjectName.quote(name));
+            server.registerMBean(statistics, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("registerStatistics failed " + e.getMessage(),e);
+        }
+    }
+
+    /**
+     * Unregister statistics registered by registerStatistics.
+     *
+     * @param objectName the name returned by registerStatistics
+     */
+    public static void unregisterStatistics(ObjectName objectName) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if(server.isRegistered(objectName)) server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("unregisterStatistics failed " + e.getMessage(),e);
+        }
+    }
     
     /**
      * Create a MonitorElement.
@@ -71,6 +145,7 @@ public class MonitorQueueFactory {
         private final BitSet changedBitSet;
         private final BitSet overrunBitSet;
         private QueueElement<MonitorElement> queueElement = null;
+        private long timeUsed = 0;
         
         /* (non-Javadoc)
          * @see org.epics.ioc.channelAccess.MonitorQueue.MonitorQueueElement#getChangedBitSet()
@@ -104,7 +179,7 @@ public class MonitorQueueFactory {
     }
     
     private static class MonitorQueueImpl implements MonitorQueue {
-        private final Queue<MonitorElement> queue;
+        protected final Queue<MonitorElement> queue;
 
         MonitorQueueImpl(Queue<MonitorElement> queue) {
            this.queue = queue;
@@ -173,4 +248,185 @@ public class MonitorQueueFactory {
             return queue.toString();
         }
     }
+
+    private static class InstrumentedMonitorQueueImpl extends MonitorQueueImpl {
+        private final StatisticsImpl statistics;
+
+        InstrumentedMonitorQueueImpl(Queue<MonitorElement> queue) {
+            super(queue);
+            statistics = new StatisticsImpl(queue.capacity());
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueFactory.MonitorQueueImpl#clear()
+         */
+        @Override
+        public void clear() {
+            super.clear();
+            statistics.depth = 0;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueFactory.MonitorQueueImpl#getFree()
+         */
+        @Override
+        public MonitorElement getFree() {
+            MonitorElement monitorElement = super.getFree();
+            if(monitorElement==null) statistics.numberOverrun++;
+            return monitorElement;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueFactory.MonitorQueueImpl#setUsed(org.epics.pvdata.monitor.MonitorElement)
+         */
+        @Override
+        public void setUsed(MonitorElement monitorElement) {
+            super.setUsed(monitorElement);
+            ((MonitorElementImlp)monitorElement).timeUsed = System.nanoTime();
+            statistics.numberEnqueued++;
+            int depth = statistics.depth + 1;
+            statistics.depth = depth;
+            if(depth>statistics.maxDepth) statistics.maxDepth = depth;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueFactory.MonitorQueueImpl#getUsed()
+         */
+        @Override
+        public MonitorElement getUsed() {
+            MonitorElement monitorElement = super.getUsed();
+            if(monitorElement!=null) {
+                long latency = System.nanoTime() - ((MonitorElementImlp)monitorElement).timeUsed;
+                statistics.addLatency(latency);
+            }
+            return monitorElement;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueFactory.MonitorQueueImpl#releaseUsed(org.epics.pvdata.monitor.MonitorElement)
+         */
+        @Override
+        public void releaseUsed(MonitorElement monitorElement) {
+            super.releaseUsed(monitorElement);
+            statistics.numberDequeued++;
+            statistics.depth--;
+        }
+    }
+
+    /*
+     * The counters are only modified by a caller of the queue methods,
+     * which must already serialize access to the queue.
+     * They are volatile so that other threads, e.g. JMX, see current values.
+     */
+    private static class StatisticsImpl implements MonitorQueueStatistics {
+        private final int capacity;
+        private final AtomicLongArray latencyHistogram = new AtomicLongArray(NUMBER_LATENCY_BUCKETS);
+        private volatile int depth = 0;
+        private volatile int maxDepth = 0;
+        private volatile long numberEnqueued = 0;
+        private volatile long numberDequeued = 0;
+        private volatile long numberOverrun = 0;
+        private volatile long numberLatency = 0;
+        private volatile long totalLatency = 0;
+        private volatile long maxLatency = 0;
+
+        StatisticsImpl(int capacity) {
+            this.capacity = capacity;
+        }
+
+        private void addLatency(long latency) {
+            long micros = latency/1000;
+            int bucket = (micros<=0) ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+            if(bucket>=NUMBER_LATENCY_BUCKETS) bucket = NUMBER_LATENCY_BUCKETS - 1;
+            latencyHistogram.incrementAndGet(bucket);
+            numberLatency++;
+            totalLatency += latency;
+            if(latency>maxLatency) maxLatency = latency;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getCapacity()
+         */
+        @Override
+        public int getCapacity() {
+            return capacity;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getDepth()
+         */
+        @Override
+        public int getDepth() {
+            return depth;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getMaxDepth()
+         */
+        @Override
+        public int getMaxDepth() {
+            return maxDepth;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getNumberEnqueued()
+         */
+        @Override
+        public long getNumberEnqueued() {
+            return numberEnqueued;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getNumberDequeued()
+         */
+        @Override
+        public long getNumberDequeued() {
+            return numberDequeued;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getNumberOverrun()
+         */
+        @Override
+        public long getNumberOverrun() {
+            return numberOverrun;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getLatencyHistogram()
+         */
+        @Override
+        public long[] getLatencyHistogram() {
+            long[] histogram = new long[NUMBER_LATENCY_BUCKETS];
+            for(int i=0; i<NUMBER_LATENCY_BUCKETS; i++) histogram[i] = latencyHistogram.get(i);
+            return histogram;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getMaxLatency()
+         */
+        @Override
+        public long getMaxLatency() {
+            return maxLatency;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#getAverageLatency()
+         */
+        @Override
+        public double getAverageLatency() {
+            long number = numberLatency;
+            if(number==0) return 0.0;
+            return ((double)totalLatency)/number;
+        }
+        /* (non-Javadoc)
+         * @see org.epics.pvdata.monitor.MonitorQueueStatistics#reset()
+         */
+        @Override
+        public void reset() {
+            maxDepth = depth;
+            numberEnqueued = 0;
+            numberDequeued = 0;
+            numberOverrun = 0;
+            numberLatency = 0;
+            totalLatency = 0;
+            maxLatency = 0;
+            for(int i=0; i<NUMBER_LATENCY_BUCKETS; i++) latencyHistogram.set(i,0);
+        }
+        /* (non-Javadoc)
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "capacity " + capacity + " depth " + depth + " maxDepth " + maxDepth
+                + " enqueued " + numberEnqueued + " dequeued " + numberDequeued
+                + " overrun " + numberOverrun + " maxLatency " + maxLatency;
+        }
+    }
 }
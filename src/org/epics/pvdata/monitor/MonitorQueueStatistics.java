@@ -0,0 +1,97 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.monitor;
+
+import javax.management.MXBean;
+
+/**
+ * Statistics kept by an instrumented MonitorQueue.
+ * An instrumented queue is created by calling MonitorQueueFactory.create(monitorElements,true).
+ * The counters are updated by the threads that use the queue,
+ * i.e. with the same synchronization the caller provides for the queue,
+ * and can be read at any time by any thread.
+ * This is an MXBean so that it can be registered via MonitorQueueFactory.registerStatistics.
+ */
+@MXBean
+public interface MonitorQueueStatistics {
+    /**
+     * The number of latency histogram buckets.
+     */
+    public static final int NUMBER_LATENCY_BUCKETS = 32;
+
+    /**
+     * Get the queue capacity.
+     *
+     * @return the queue capacity
+     */
+    int getCapacity();
+
+    /**
+     * Get the number of elements that are currently used, i.e. queued but not released.
+     *
+     * @return the current depth
+     */
+    int getDepth();
+
+    /**
+     * Get the largest depth seen since creation or the last reset.
+     *
+     * @return the maximum depth
+     */
+    int getMaxDepth();
+
+    /**
+     * Get the number of elements that have been set used.
+     *
+     * @return the number of enqueued elements
+     */
+    long getNumberEnqueued();
+
+    /**
+     * Get the number of elements that have been released.
+     *
+     * @return the number of dequeued elements
+     */
+    long getNumberDequeued();
+
+    /**
+     * Get the number of calls to getFree that found no free element.
+     * Each of these is an update that the caller had to squash into an already queued element
+     * or drop, i.e. an overrun.
+     *
+     * @return the number of overruns
+     */
+    long getNumberOverrun();
+
+    /**
+     * Get the put to poll latency histogram.
+     * The latency is the time between setUsed and getUsed for an element.
+     * Element i is the number of latencies in the range [2^i,2^(i+1)) microseconds,
+     * except that element 0 also counts latencies less than one microsecond
+     * and the last element also counts all larger latencies.
+     *
+     * @return a copy of the histogram with NUMBER_LATENCY_BUCKETS elements
+     */
+    long[] getLatencyHistogram();
+
+    /**
+     * Get the maximum put to poll latency.
+     *
+     * @return the latency in nanoseconds
+     */
+    long getMaxLatency();
+
+    /**
+     * Get the average put to poll latency.
+     *
+     * @return the latency in nanoseconds or 0 if no element has been polled
+     */
+    double getAverageLatency();
+
+    /**
+     * Set all counters, except the current depth, to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.pv;
+
+/**
+ * Decides the capacity of a PVArray when its length changes.
+ * A policy is only used for arrays whose capacity is mutable, so it never changes
+ * a fixed size array, and it is never asked for more than the maximum capacity
+ * of a bounded array. Calling setCapacity directly is not affected by the policy.
+ * Implementations are provided by CapacityPolicyFactory.
+ */
+public interface CapacityPolicy {
+    /**
+     * Get the capacity for an array whose length is growing.
+     *
+     * @param capacity the current capacity
+     * @param length the required length, which can be less than capacity
+     * @param maximumCapacity the largest capacity allowed
+     * @return the new capacity, at least length and at most maximumCapacity
+     */
+    int grow(int capacity, int length, int maximumCapacity);
+
+    /**
+     * Get the capacity for an array whose length has been reduced.
+     *
+     * @param capacity the current capacity
+     * @param length the new length
+     * @return the new capacity, at least length; capacity to keep the current array
+     */
+    int shrink(int capacity, int length);
+}
@@ -161,6 +161,8 @@ public interface Convert {
 
     /**
      * Copy from a source PVScalarArray to a destination PVScalarArray.
+     * If AbstractPVArray.setShareValues(true) was called and the whole of an array is copied
+     * to an array of the same type and length the two arrays share the data until one of them is changed.
      *
      * @param from the source PVScalarArray
      * @param offset the starting element in the source
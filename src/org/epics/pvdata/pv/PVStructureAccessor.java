@@ -0,0 +1,136 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.pv;
+
+/**
+ * Typed access to the leaf fields of one PVStructure.
+ * It is created by <i>StructureAccessor.bind</i>, which looks up every leaf field once.
+ * The index of a leaf field is given by <i>StructureAccessor.getLeafFieldIndex</i>.
+ * <p>The get and put methods for a type may only be called for a leaf field of that type,
+ * where an unsigned type is accessed as the signed type of the same size.
+ * Otherwise a ClassCastException is thrown.
+ * Serialization of the accessor is the same as serialization of the whole PVStructure.
+ */
+public interface PVStructureAccessor extends Serializable {
+    /**
+     * Get the accessor for the introspection interface.
+     * @return The StructureAccessor.
+     */
+    StructureAccessor getStructureAccessor();
+    /**
+     * Get the data interface this accessor is bound to.
+     * @return The PVStructure.
+     */
+    PVStructure getPVStructure();
+    /**
+     * Get a leaf field.
+     * @param index The index of the leaf field.
+     * @return The PVField.
+     */
+    PVField getPVField(int index);
+    /**
+     * Get the value of a boolean field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    boolean getBoolean(int index);
+    /**
+     * Put the value of a boolean field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putBoolean(int index,boolean value);
+    /**
+     * Get the value of a byte or ubyte field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    byte getByte(int index);
+    /**
+     * Put the value of a byte or ubyte field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putByte(int index,byte value);
+    /**
+     * Get the value of a short or ushort field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    short getShort(int index);
+    /**
+     * Put the value of a short or ushort field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putShort(int index,short value);
+    /**
+     * Get the value of an int or uint field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    int getInt(int index);
+    /**
+     * Put the value of an int or uint field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putInt(int index,int value);
+    /**
+     * Get the value of a long or ulong field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    long getLong(int index);
+    /**
+     * Put the value of a long or ulong field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putLong(int index,long value);
+    /**
+     * Get the value of a float field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    float getFloat(int index);
+    /**
+     * Put the value of a float field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putFloat(int index,float value);
+    /**
+     * Get the value of a double field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    double getDouble(int index);
+    /**
+     * Put the value of a double field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putDouble(int index,double value);
+    /**
+     * Get the value of a string field.
+     * @param index The index of the leaf field.
+     * @return The value.
+     */
+    String getString(int index);
+    /**
+     * Put the value of a string field.
+     * @param index The index of the leaf field.
+     * @param value The new value.
+     */
+    void putString(int index,String value);
+    /**
+     * Copy every leaf field to another accessor for an equal introspection interface.
+     * Scalars are copied without conversion and other fields as by <i>Convert.copy</i>.
+     * @param to The destination.
+     * @throws IllegalArgumentException if the destination has a different introspection interface.
+     */
+    void copyTo(PVStructureAccessor to);
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.pv;
+
+/**
+ * Typed access to the leaf fields of every PVStructure that has a given introspection interface.
+ * A leaf field is any subfield, at any depth, that is not a structure.
+ * The leaf fields are numbered in the order in which they are serialized,
+ * so the names are resolved once and every access after that is by index.
+ * <p>A StructureAccessor is obtained from <i>StructureAccessorFactory</i>,
+ * which keeps one for each introspection interface.
+ */
+public interface StructureAccessor {
+    /**
+     * Get the introspection interface.
+     * @return The introspection interface.
+     */
+    Structure getStructure();
+    /**
+     * Get the number of leaf fields.
+     * @return The number.
+     */
+    int getNumberLeafFields();
+    /**
+     * Get the index of a leaf field.
+     * @param fieldName The name of the field relative to the structure, for example "timeStamp.nanoseconds".
+     * @return The index or -1 if there is no such leaf field.
+     */
+    int getLeafFieldIndex(String fieldName);
+    /**
+     * Get the name of a leaf field relative to the structure.
+     * @param index The index of the leaf field.
+     * @return The name.
+     */
+    String getLeafFieldName(int index);
+    /**
+     * Get the introspection interface of a leaf field.
+     * @param index The index of the leaf field.
+     * @return The introspection interface.
+     */
+    Field getLeafField(int index);
+    /**
+     * Bind this accessor to a PVStructure.
+     * @param pvStructure The PVStructure, which must have this introspection interface.
+     * @return The accessor for the data of pvStructure.
+     * @throws IllegalArgumentException if the introspection interface of pvStructure is different.
+     */
+    PVStructureAccessor bind(PVStructure pvStructure);
+}
@@ -0,0 +1,573 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata.util.pvDataHelper;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.BooleanArrayData;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.PVBoolean;
+import org.epics.pvdata.pv.PVBooleanArray;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVScalar;
+import org.epics.pvdata.pv.PVScalarArray;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.Scalar;
+import org.epics.pvdata.pv.ScalarArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.Type;
+
+/**
+ * PVStructureBinding copies the data of a PVStructure to a Java object and back.
+ * A field of the structure is bound to the property of the class that has the same name.
+ * A property is either a public getter and setter, for example <i>getValue</i> and <i>setValue</i>,
+ * or a public field. A property that can not be written is only copied to the PVStructure.
+ *
+ * <p>The Java type of a property must match the field:
+ * <ul>
+ * <li>A scalar is bound to the primitive type of the same size, or its wrapper class.
+ * An unsigned type is bound to the signed type and a string to String.</li>
+ * <li>A scalar array is bound to an array of that primitive type or of String.
+ * Arrays are copied without boxing and the array of a property is reused if it has the right length.</li>
+ * <li>A structure is bound to a property whose class is bound to the substructure in turn.
+ * If the property is null it is created with the public no argument constructor.</li>
+ * </ul>
+ * Fields without a property, properties without a field, and unions, structure arrays
+ * and union arrays are ignored. A property of a different type is an error.
+ *
+ * <p>The method handles of a binding are found once for each pair of introspection interface
+ * and class. The bindings of a class are kept with the class, so they do not keep
+ * its class loader from being garbage collected.
+ */
+public final class PVStructureBinding<T>
+{
+    private static final Convert convert = ConvertFactory.getConvert();
+    private static final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+    // guarded by the class lock of PVStructureBinding
+    private static final ClassValue<Map<Structure,PVStructureBinding<?>>> bindingCache =
+            new ClassValue<Map<Structure,PVStructureBinding<?>>>() {
+        @Override
+        protected Map<Structure,PVStructureBinding<?>> computeValue(Class<?> type) {
+            return new HashMap<Structure,PVStructureBinding<?>>();
+        }
+    };
+
+    /**
+     * Get the binding between an introspection interface and a class.
+     * @param <T> The class.
+     * @param structure The introspection interface.
+     * @param type The class.
+     * @return The binding.
+     * @throws IllegalArgumentException if a property has a type that does not match its field.
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T> PVStructureBinding<T> getBinding(Structure structure,Class<T> type)
+    {
+        Map<Structure,PVStructureBinding<?>> map = bindingCache.get(type);
+        PVStructureBinding<T> binding = (PVStructureBinding<T>)map.get(structure);
+        if(binding==null) {
+            binding = new PVStructureBinding<T>(structure,type);
+            map.put(structure, binding);
+        }
+        return binding;
+    }
+
+    private final Structure structure;
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final Binder[] binders;
+
+    private PVStructureBinding(Structure structure,Class<T> type) {
+        this.structure = structure;
+        this.type = type;
+        MethodHandle constructor = null;
+        try {
+            constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        } catch (NoSuchMethodException e) {
+        } catch (IllegalAccessException e) {
+        }
+        this.constructor = constructor;
+        Map<String,Method> methods = new HashMap<String,Method>();
+        for(Method method : type.getMethods()) {
+            if(Modifier.isStatic(method.getModifiers())) continue;
+            methods.put(method.getName() + method.getParameterTypes().length, method);
+        }
+        Field[] fields = structure.getFields();
+        String[] fieldNames = structure.getFieldNames();
+        ArrayList<Binder> binderList = new ArrayList<Binder>();
+        int offset = 1;
+        for(int i=0; i<fields.length; i++) {
+            int nextOffset = offset + numberFields(fields[i]);
+            Binder binder = createBinder(fields[i],fieldNames[i],methods);
+            if(binder!=null) {
+                binder.index = i;
+                binder.offset = offset;
+                binder.nextOffset = nextOffset;
+                binderList.add(binder);
+            }
+            offset = nextOffset;
+        }
+        binders = binderList.toArray(new Binder[binderList.size()]);
+    }
+
+    /**
+     * Get the introspection interface.
+     * @return The introspection interface.
+     */
+    public Structure getStructure() {
+        return structure;
+    }
+
+    /**
+     * Get the class.
+     * @return The class.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Create an object with the public no argument constructor and copy pvStructure to it.
+     * @param pvStructure The source.
+     * @return The new object.
+     * @throws IllegalStateException if the class has no public no argument constructor.
+     */
+    public T create(PVStructure pvStructure) {
+        T object = type.cast(newInstance(constructor,type));
+        toObject(pvStructure,object);
+        return object;
+    }
+
+    /**
+     * Copy every bound field of pvStructure to object.
+     * @param pvStructure The source.
+     * @param object The destination.
+     */
+    public void toObject(PVStructure pvStructure,T object) {
+        checkStructure(pvStructure);
+        toObject(pvStructure,object,null,0,true);
+    }
+
+    /**
+     * Copy the bound fields of pvStructure that have changed to object.
+     * A field has changed if its bit, or the bit of a structure that holds it, is set.
+     * The offsets of changedBitSet are those of the top level structure of pvStructure,
+     * as for a monitor.
+     * @param pvStructure The source.
+     * @param object The destination.
+     * @param changedBitSet The fields that have changed.
+     */
+    public void toObject(PVStructure pvStructure,T object,BitSet changedBitSet) {
+        checkStructure(pvStructure);
+        boolean all = false;
+        for(PVStructure pv = pvStructure; pv!=null; pv = pv.getParent()) {
+            if(changedBitSet.get(pv.getFieldOffset())) {
+                all = true;
+                break;
+            }
+        }
+        toObject(pvStructure,object,changedBitSet,pvStructure.getFieldOffset(),all);
+    }
+
+    /**
+     * Copy every bound property of object to pvStructure.
+     * @param object The source.
+     * @param pvStructure The destination.
+     */
+    public void toPVStructure(T object,PVStructure pvStructure) {
+        checkStructure(pvStructure);
+        toPV(object,pvStructure);
+    }
+
+    private void checkStructure(PVStructure pvStructure) {
+        if(!structure.equals(pvStructure.getStructure())) {
+            throw new IllegalArgumentException("pvStructure has a different introspection interface");
+        }
+    }
+
+    private void toObject(PVStructure pvStructure,Object object,BitSet bitSet,int base,boolean all) {
+        PVField[] pvFields = pvStructure.getPVFields();
+        for(int i=0; i<binders.length; i++) {
+            Binder binder = binders[i];
+            boolean allField = all;
+            if(!all) {
+                int next = bitSet.nextSetBit(base + binder.offset);
+                if(next<0) return;
+                if(next>=base + binder.nextOffset) continue;
+                allField = (next==base + binder.offset);
+            }
+            try {
+                binder.toObject(pvFields[binder.index],object,bitSet,base + binder.offset,allField);
+            } catch (Throwable e) {
+                throw unchecked(e);
+            }
+        }
+    }
+
+    private void toPV(Object object,PVStructure pvStructure) {
+        PVField[] pvFields = pvStructure.getPVFields();
+        for(int i=0; i<binders.length; i++) {
+            Binder binder = binders[i];
+            try {
+                binder.toPV(object,pvFields[binder.index]);
+            } catch (Throwable e) {
+                throw unchecked(e);
+            }
+        }
+    }
+
+    private static RuntimeException unchecked(Throwable e) {
+        if(e instanceof RuntimeException) return (RuntimeException)e;
+        if(e instanceof Error) throw (Error)e;
+        return new IllegalStateException(e);
+    }
+
+    private static Object newInstance(MethodHandle constructor,Class<?> type) {
+        if(constructor==null) {
+            throw new IllegalStateException(type.getName() + " has no public no argument constructor");
+        }
+        try {
+            return (Object)constructor.invokeExact();
+        } catch (Throwable e) {
+            throw unchecked(e);
+        }
+    }
+
+    private static int numberFields(Field field) {
+        if(field.getType()!=Type.structure) return 1;
+        int number = 1;
+        for(Field subField : ((Structure)field).getFields()) number += numberFields(subField);
+        return number;
+    }
+
+    private static String capitalize(String name) {
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Class<?> primitiveType(ScalarType scalarType) {
+        switch(scalarType) {
+        case pvBoolean: return boolean.class;
+        case pvByte:
+        case pvUByte:   return byte.class;
+        case pvShort:
+        case pvUShort:  return short.class;
+        case pvInt:
+        case pvUInt:    return int.class;
+        case pvLong:
+        case pvULong:   return long.class;
+        case pvFloat:   return float.class;
+        case pvDouble:  return double.class;
+        case pvString:  return String.class;
+        }
+        throw new IllegalArgumentException("Illegal scalarType");
+    }
+
+    private static Class<?> wrapperType(Class<?> primitiveType) {
+        if(primitiveType==boolean.class) return Boolean.class;
+        if(primitiveType==byte.class) return Byte.class;
+        if(primitiveType==short.class) return Short.class;
+        if(primitiveType==int.class) return Integer.class;
+        if(primitiveType==long.class) return Long.class;
+        if(primitiveType==float.class) return Float.class;
+        if(primitiveType==double.class) return Double.class;
+        return primitiveType;
+    }
+
+    private Binder createBinder(Field field,String fieldName,Map<String,Method> methods) {
+        if(fieldName.length()==0) return null;
+        Type fieldType = field.getType();
+        if(fieldType!=Type.scalar && fieldType!=Type.scalarArray && fieldType!=Type.structure) return null;
+        MethodHandle getter = null;
+        MethodHandle setter = null;
+        Class<?> propertyType = null;
+        try {
+            String name = capitalize(fieldName);
+            Method get = methods.get("get" + name + "0");
+            if(get==null) get = methods.get("is" + name + "0");
+            Method set = methods.get("set" + name + "1");
+            if(get!=null && get.getReturnType()!=void.class) {
+                propertyType = get.getReturnType();
+                getter = lookup.unreflect(get);
+                if(set!=null && set.getParameterTypes()[0]!=propertyType) set = null;
+            } else if(set!=null) {
+                propertyType = set.getParameterTypes()[0];
+            }
+            if(set!=null) {
+                setter = lookup.unreflect(set);
+            } else if(getter==null) {
+                java.lang.reflect.Field javaField;
+                try {
+                    javaField = type.getField(fieldName);
+                } catch (NoSuchFieldException e) {
+                    return null;
+                }
+                int modifiers = javaField.getModifiers();
+                if(Modifier.isStatic(modifiers)) return null;
+                propertyType = javaField.getType();
+                getter = lookup.unreflectGetter(javaField);
+                if(!Modifier.isFinal(modifiers)) setter = lookup.unreflectSetter(javaField);
+            }
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        String error = null;
+        Binder binder = null;
+        switch(fieldType) {
+        case scalar: {
+            ScalarType scalarType = ((Scalar)field).getScalarType();
+            Class<?> primitiveType = primitiveType(scalarType);
+            if(propertyType==primitiveType) {
+                binder = new ScalarBinder(scalarType,primitiveType,getter,setter);
+            } else if(propertyType==wrapperType(primitiveType)) {
+                binder = new ScalarBinder(scalarType,Object.class,getter,setter);
+            } else {
+                error = primitiveType.getName();
+            }
+            break;
+        }
+        case scalarArray: {
+            ScalarType elementType = ((ScalarArray)field).getElementType();
+            Class<?> arrayType = java.lang.reflect.Array.newInstance(primitiveType(elementType),0).getClass();
+            if(propertyType==arrayType) {
+                binder = new ArrayBinder(elementType,getter,setter);
+            } else {
+                error = arrayType.getSimpleName();
+            }
+            break;
+        }
+        case structure: {
+            if(propertyType.isPrimitive() || propertyType.isArray()) {
+                error = "class";
+            } else {
+                binder = new StructureBinder(getBinding((Structure)field,propertyType),getter,setter);
+            }
+            break;
+        }
+        default:
+            return null;
+        }
+        if(error!=null) {
+            throw new IllegalArgumentException("property " + fieldName + " of " + type.getName()
+                    + " has type " + propertyType.getName() + " but must be " + error);
+        }
+        return binder;
+    }
+
+    /*
+     * Copies one field of the structure.
+     * Each handle is adapted to Object for the bound object,
+     * and to the primitive type of the value for a scalar.
+     */
+    private static abstract class Binder {
+        // index of the field in the structure
+        private int index;
+        // field offsets relative to the structure
+        private int offset;
+        private int nextOffset;
+        protected final MethodHandle getter;
+        protected final MethodHandle setter;
+
+        protected Binder(MethodHandle getter,MethodHandle setter,Class<?> valueType) {
+            this.getter = (getter==null) ? null : getter.asType(MethodType.methodType(valueType,Object.class));
+            this.setter = (setter==null) ? null : setter.asType(MethodType.methodType(void.class,Object.class,valueType));
+        }
+
+        abstract void toObject(PVField pvField,Object object,BitSet bitSet,int offset,boolean all) throws Throwable;
+        abstract void toPV(Object object,PVField pvField) throws Throwable;
+    }
+
+    private static final class ScalarBinder extends Binder {
+        private final ScalarType scalarType;
+        private final boolean boxed;
+
+        private ScalarBinder(ScalarType scalarType,Class<?> valueType,MethodHandle getter,MethodHandle setter) {
+            super(getter,setter,valueType);
+            this.scalarType = scalarType;
+            boxed = (valueType==Object.class);
+        }
+
+        void toObject(PVField pvField,Object object,BitSet bitSet,int offset,boolean all) throws Throwable {
+            if(setter==null) return;
+            if(boxed) {
+                setter.invokeExact(object,toValue((PVScalar)pvField));
+                return;
+            }
+            PVScalar pv = (PVScalar)pvField;
+            switch(scalarType) {
+            case pvBoolean: setter.invokeExact(object,((PVBoolean)pv).get()); return;
+            case pvByte:
+            case pvUByte:   setter.invokeExact(object,convert.toByte(pv)); return;
+            case pvShort:
+            case pvUShort:  setter.invokeExact(object,convert.toShort(pv)); return;
+            case pvInt:
+            case pvUInt:    setter.invokeExact(object,convert.toInt(pv)); return;
+            case pvLong:
+            case pvULong:   setter.invokeExact(object,convert.toLong(pv)); return;
+            case pvFloat:   setter.invokeExact(object,convert.toFloat(pv)); return;
+            case pvDouble:  setter.invokeExact(object,convert.toDouble(pv)); return;
+            case pvString:  setter.invokeExact(object,((PVString)pv).get()); return;
+            }
+        }
+
+        void toPV(Object object,PVField pvField) throws Throwable {
+            if(getter==null) return;
+            PVScalar pv = (PVScalar)pvField;
+            if(boxed) {
+                Object value = (Object)getter.invokeExact(object);
+                if(value!=null) fromValue(pv,value);
+                return;
+            }
+            switch(scalarType) {
+            case pvBoolean: ((PVBoolean)pv).put((boolean)getter.invokeExact(object)); return;
+            case pvByte:
+            case pvUByte:   convert.fromByte(pv,(byte)getter.invokeExact(object)); return;
+            case pvShort:
+            case pvUShort:  convert.fromShort(pv,(short)getter.invokeExact(object)); return;
+            case pvInt:
+            case pvUInt:    convert.fromInt(pv,(int)getter.invokeExact(object)); return;
+            case pvLong:
+            case pvULong:   convert.fromLong(pv,(long)getter.invokeExact(object)); return;
+            case pvFloat:   convert.fromFloat(pv,(float)getter.invokeExact(object)); return;
+            case pvDouble:  convert.fromDouble(pv,(double)getter.invokeExact(object)); return;
+            case pvString:  ((PVString)pv).put((String)getter.invokeExact(object)); return;
+            }
+        }
+
+        private Object toValue(PVScalar pv) {
+            switch(scalarType) {
+            case pvBoolean: return Boolean.valueOf(((PVBoolean)pv).get());
+            case pvByte:
+            case pvUByte:   return Byte.valueOf(convert.toByte(pv));
+            case pvShort:
+            case pvUShort:  return Short.valueOf(convert.toShort(pv));
+            case pvInt:
+            case pvUInt:    return Integer.valueOf(convert.toInt(pv));
+            case pvLong:
+            case pvULong:   return Long.valueOf(convert.toLong(pv));
+            case pvFloat:   return Float.valueOf(convert.toFloat(pv));
+            case pvDouble:  return Double.valueOf(convert.toDouble(pv));
+            case pvString:  return ((PVString)pv).get();
+            }
+            throw new IllegalStateException("PVStructureBinding: Logic error");
+        }
+
+        private void fromValue(PVScalar pv,Object value) {
+            switch(scalarType) {
+            case pvBoolean: ((PVBoolean)pv).put(((Boolean)value).booleanValue()); return;
+            case pvByte:
+            case pvUByte:   convert.fromByte(pv,((Byte)value).byteValue()); return;
+            case pvShort:
+            case pvUShort:  convert.fromShort(pv,((Short)value).shortValue()); return;
+            case pvInt:
+            case pvUInt:    convert.fromInt(pv,((Integer)value).intValue()); return;
+            case pvLong:
+            case pvULong:   convert.fromLong(pv,((Long)value).longValue()); return;
+            case pvFloat:   convert.fromFloat(pv,((Float)value).floatValue()); return;
+            case pvDouble:  convert.fromDouble(pv,((Double)value).doubleValue()); return;
+            case pvString:  ((PVString)pv).put((String)value); return;
+            }
+        }
+    }
+
+    private static final class ArrayBinder extends Binder {
+        private final ScalarType elementType;
+
+        private ArrayBinder(ScalarType elementType,MethodHandle getter,MethodHandle setter) {
+            super(getter,setter,Object.class);
+            this.elementType = elementType;
+        }
+
+        void toObject(PVField pvField,Object object,BitSet bitSet,int offset,boolean all) throws Throwable {
+            if(setter==null) return;
+            PVScalarArray pv = (PVScalarArray)pvField;
+            int length = pv.getLength();
+            Object array = (getter==null) ? null : (Object)getter.invokeExact(object);
+            if(array==null || java.lang.reflect.Array.getLength(array)!=length) {
+                array = java.lang.reflect.Array.newInstance(primitiveType(elementType),length);
+            }
+            switch(elementType) {
+            case pvBoolean: {
+                BooleanArrayData data = new BooleanArrayData();
+                int n = ((PVBooleanArray)pv).get(0,length,data);
+                System.arraycopy(data.data,data.offset,array,0,n);
+                break;
+            }
+            case pvByte:
+            case pvUByte:   convert.toByteArray(pv,0,length,(byte[])array,0); break;
+            case pvShort:
+            case pvUShort:  convert.toShortArray(pv,0,length,(short[])array,0); break;
+            case pvInt:
+            case pvUInt:    convert.toIntArray(pv,0,length,(int[])array,0); break;
+            case pvLong:
+            case pvULong:   convert.toLongArray(pv,0,length,(long[])array,0); break;
+            case pvFloat:   convert.toFloatArray(pv,0,length,(float[])array,0); break;
+            case pvDouble:  convert.toDoubleArray(pv,0,length,(double[])array,0); break;
+            case pvString:  convert.toStringArray(pv,0,length,(String[])array,0); break;
+            }
+            setter.invokeExact(object,array);
+        }
+
+        void toPV(Object object,PVField pvField) throws Throwable {
+            if(getter==null) return;
+            Object array = (Object)getter.invokeExact(object);
+            if(array==null) return;
+            PVScalarArray pv = (PVScalarArray)pvField;
+            int length = java.lang.reflect.Array.getLength(array);
+            switch(elementType) {
+            case pvBoolean: ((PVBooleanArray)pv).put(0,length,(boolean[])array,0); break;
+            case pvByte:
+            case pvUByte:   convert.fromByteArray(pv,0,length,(byte[])array,0); break;
+            case pvShort:
+            case pvUShort:  convert.fromShortArray(pv,0,length,(short[])array,0); break;
+            case pvInt:
+            case pvUInt:    convert.fromIntArray(pv,0,length,(int[])array,0); break;
+            case pvLong:
+            case pvULong:   convert.fromLongArray(pv,0,length,(long[])array,0); break;
+            case pvFloat:   convert.fromFloatArray(pv,0,length,(float[])array,0); break;
+            case pvDouble:  convert.fromDoubleArray(pv,0,length,(double[])array,0); break;
+            case pvString:  convert.fromStringArray(pv,0,length,(String[])array,0); break;
+            }
+            if(pv.getLength()!=length) pv.setLength(length);
+        }
+    }
+
+    private static final class StructureBinder extends Binder {
+        private final PVStructureBinding<?> binding;
+
+        private StructureBinder(PVStructureBinding<?> binding,MethodHandle getter,MethodHandle setter) {
+            super(getter,setter,Object.class);
+            this.binding = binding;
+        }
+
+        void toObject(PVField pvField,Object object,BitSet bitSet,int offset,boolean all) throws Throwable {
+            Object value = (getter==null) ? null : (Object)getter.invokeExact(object);
+            if(value==null) {
+                if(setter==null) return;
+                value = newInstance(binding.constructor,binding.type);
+                setter.invokeExact(object,value);
+            }
+            binding.toObject((PVStructure)pvField,value,bitSet,offset,all);
+        }
+
+        void toPV(Object object,PVField pvField) throws Throwable {
+            if(getter==null) return;
+            Object value = (Object)getter.invokeExact(object);
+            if(value!=null) binding.toPV(value,(PVStructure)pvField);
+        }
+    }
+}
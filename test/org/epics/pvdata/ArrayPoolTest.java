@@ -0,0 +1,74 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.ArrayPool;
+import org.epics.pvdata.factory.ArrayPoolStatistics;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.ScalarType;
+
+/**
+ * JUnit test for ArrayPool.
+ */
+public class ArrayPoolTest extends TestCase {
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+
+    public void testPool() {
+        long saveBudget = ArrayPool.getMemoryBudget();
+        ArrayPool.setMemoryBudget(1000000);
+        try {
+            ArrayPoolStatistics statistics = ArrayPool.getStatistics(double.class);
+            statistics.reset();
+            PVDoubleArray pvArray = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+            double[] data = new double[1000];
+            for(int i=0; i<data.length; i++) data[i] = i;
+            // bounce between two sizes
+            for(int i=0; i<10; i++) {
+                pvArray.setCapacity(1000);
+                pvArray.put(0, 1000, data, 0);
+                pvArray.setCapacity(500);
+                assertEquals(500, pvArray.getLength());
+            }
+            DoubleArrayData arrayData = new DoubleArrayData();
+            pvArray.get(0, pvArray.getLength(), arrayData);
+            assertEquals(499.0, arrayData.data[499]);
+            assertEquals(20, statistics.getNumberAllocated());
+            assertEquals(18, statistics.getNumberReused());
+            assertEquals(1, statistics.getPooledArrays());
+            assertEquals(8000, statistics.getPooledBytes());
+
+            // a reused array is cleared
+            pvArray.setCapacity(1000);
+            pvArray.setLength(1000);
+            pvArray.get(0, pvArray.getLength(), arrayData);
+            assertEquals(499.0, arrayData.data[499]);
+            assertEquals(0.0, arrayData.data[500]);
+
+            // setCapacity(0) gives the array back
+            pvArray.setCapacity(0);
+            assertEquals(8000 + 4000, statistics.getPooledBytes());
+
+            // arrays given to shareData are never pooled
+            long released = statistics.getNumberReleased();
+            pvArray.shareData(data);
+            pvArray.setCapacity(10);
+            assertEquals(released, statistics.getNumberReleased());
+
+            // arrays beyond the budget are discarded
+            ArrayPool.setMemoryBudget(10000);
+            pvArray.setCapacity(2000);
+            pvArray.setCapacity(10);
+            assertEquals(1, statistics.getNumberDiscarded());
+        } finally {
+            ArrayPool.setMemoryBudget(saveBudget);
+        }
+        assertEquals(0, ArrayPool.getPooledBytes());
+    }
+}
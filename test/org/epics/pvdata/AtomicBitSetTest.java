@@ -0,0 +1,84 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.AtomicBitSet;
+import org.epics.pvdata.misc.BitSet;
+
+/**
+ * JUnit test for AtomicBitSet.
+ */
+public class AtomicBitSetTest extends TestCase {
+
+    public void testSetClear() {
+        AtomicBitSet bitSet = new AtomicBitSet(130);
+        assertTrue(bitSet.isEmpty());
+        assertFalse(bitSet.getAndSet(3));
+        assertTrue(bitSet.getAndSet(3));
+        bitSet.set(129);
+        bitSet.set(60, 70);
+        assertTrue(bitSet.get(3));
+        assertTrue(bitSet.get(65));
+        assertFalse(bitSet.get(70));
+        assertEquals(12, bitSet.cardinality());
+        bitSet.clear(3);
+        assertFalse(bitSet.get(3));
+        try {
+            bitSet.set(130);
+            fail("index out of range");
+        } catch (IndexOutOfBoundsException e) {}
+
+        BitSet plain = new BitSet();
+        plain.set(1);
+        bitSet.or(plain);
+        assertEquals(12, plain.cardinality());
+        assertTrue(plain.get(1));
+        assertTrue(plain.get(129));
+        assertFalse(bitSet.isEmpty());
+
+        plain.clear();
+        assertTrue(bitSet.getAndClear(plain));
+        assertEquals(11, plain.cardinality());
+        assertTrue(bitSet.isEmpty());
+        assertFalse(bitSet.getAndClear(plain));
+        assertEquals("{60, 61, 62, 63, 64, 65, 66, 67, 68, 69, 129}", plain.toString());
+    }
+
+    public void testConcurrent() throws InterruptedException {
+        final int numberThreads = 4;
+        final int bitsPerThread = 1000;
+        final AtomicBitSet bitSet = new AtomicBitSet(numberThreads*bitsPerThread);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(numberThreads);
+        for (int t = 0; t < numberThreads; t++) {
+            final int first = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    // interleave the bits of all threads so that they share words
+                    for (int i = 0; i < bitsPerThread; i++)
+                        bitSet.set(first + i*numberThreads);
+                    done.countDown();
+                }
+            }).start();
+        }
+        BitSet result = new BitSet();
+        start.countDown();
+        while (done.getCount() > 0)
+            bitSet.getAndClear(result);
+        done.await();
+        bitSet.getAndClear(result);
+        assertEquals(numberThreads*bitsPerThread, result.cardinality());
+        assertTrue(bitSet.isEmpty());
+    }
+}
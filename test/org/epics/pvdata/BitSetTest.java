@@ -9,6 +9,7 @@ import java.nio.ByteBuffer;
 import junit.framework.TestCase;
 
 import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.misc.BitSetVisitor;
 import org.epics.pvdata.pv.DeserializableControl;
 import org.epics.pvdata.pv.Field;
 import org.epics.pvdata.pv.SerializableControl;
@@ -126,4 +127,84 @@ public class BitSetTest extends TestCase {
 			assertEquals(s1, s2);
 		}		
 	}
+
+	public void testForEachSetBit()
+	{
+		final BitSet s = new BitSet();
+		int[] bits = { 0, 5, 63, 64, 65, 127, 128, 200, 1000 };
+		for (int i = 0; i < bits.length; i++)
+			s.set(bits[i]);
+
+		final BitSet visited = new BitSet();
+		s.forEachSetBit(new BitSetVisitor() {
+			public void setBit(int bitIndex) {
+				assertFalse(visited.get(bitIndex));
+				visited.set(bitIndex);
+			}
+		});
+		assertEquals(s, visited);
+
+		for (int from = 0; from < 260; from += 7)
+		{
+			for (int to = from; to < 1100; to += 61)
+			{
+				final BitSet range = new BitSet();
+				s.forEachSetBit(from, to, new BitSetVisitor() {
+					public void setBit(int bitIndex) {
+						range.set(bitIndex);
+					}
+				});
+				assertEquals(s.get(from, to).cardinality(), range.cardinality());
+				assertEquals(range.cardinality(), s.cardinality(from, to));
+				assertEquals(range.nextSetBit(0) < 0 ? -1 : range.nextSetBit(0) - from, s.get(from, to).nextSetBit(0));
+
+				BitSet.Cursor cursor = s.cursor();
+				cursor.reset(from, to);
+				BitSet fromCursor = new BitSet();
+				for (int i = cursor.next(); i >= 0; i = cursor.next())
+					fromCursor.set(i);
+				assertEquals(range, fromCursor);
+				assertEquals(-1, cursor.next());
+			}
+		}
+	}
+
+	public void testRangeOperations()
+	{
+		BitSet a = new BitSet();
+		a.set(0, 200);
+		BitSet b = new BitSet();
+		b.set(10);
+		b.set(70);
+		b.set(150);
+
+		BitSet c = (BitSet) a.clone();
+		c.and(b, 5, 100);
+		assertEquals(5 + 2 + 100, c.cardinality());
+		assertTrue(c.get(4));
+		assertFalse(c.get(11));
+		assertTrue(c.get(70));
+		assertTrue(c.get(150));
+
+		c = (BitSet) a.clone();
+		c.andNot(b, 0, 100);
+		assertEquals(198, c.cardinality());
+		assertTrue(c.get(150));
+
+		c = new BitSet();
+		c.or(b, 60, 160);
+		assertEquals(2, c.cardinality());
+		assertTrue(c.get(70));
+		assertTrue(c.get(150));
+
+		c = new BitSet();
+		c.or(b, 10, 151, 3);
+		assertEquals("{3, 63, 143}", c.toString());
+		c = new BitSet();
+		c.or(b, 70, 151, 200);
+		assertEquals("{200, 280}", c.toString());
+		c = (BitSet) b.clone();
+		c.or(c, 0, 100, 1);
+		assertEquals("{10, 11, 70, 71, 150}", c.toString());
+	}
 }
@@ -4,13 +4,19 @@
  */
 package org.epics.pvdata;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
+import org.epics.pvdata.factory.FieldFactory;
 import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.factory.StandardFieldFactory;
 import org.epics.pvdata.misc.BitSet;
 import org.epics.pvdata.misc.BitSetUtil;
 import org.epics.pvdata.misc.BitSetUtilFactory;
+import org.epics.pvdata.pv.Field;
+import org.epics.pvdata.pv.FieldBuilder;
+import org.epics.pvdata.pv.FieldCreate;
 import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVStructure;
@@ -107,4 +113,100 @@ public class BitSetUtilTest extends TestCase {
         bitSet.clear();
         System.out.println("testBitSetUtil PASSED\n");
     }
+
+    /*
+     * The original recursive algorithm, used to check the result of compress.
+     */
+    private static boolean referenceCompress(PVField pvField,BitSet bitSet) {
+        int offset = pvField.getFieldOffset();
+        int nbits = pvField.getNumberFields();
+        if(nbits==1) return bitSet.get(offset);
+        int nextSetBit = bitSet.nextSetBit(offset);
+        if(nextSetBit<0 || nextSetBit>=(offset+nbits)) return false;
+        if(bitSet.get(offset)) {
+            bitSet.clear(offset+1, offset+nbits);
+            return true;
+        }
+        boolean atLeastOneBitSet = false;
+        boolean allBitsSet = true;
+        for(PVField pvSubField : ((PVStructure)pvField).getPVFields()) {
+            if(referenceCompress(pvSubField,bitSet)) {
+                atLeastOneBitSet = true;
+                if(!bitSet.get(pvSubField.getFieldOffset())) allBitsSet = false;
+            } else {
+                allBitsSet = false;
+            }
+        }
+        if(allBitsSet) {
+            bitSet.clear(offset+1, offset+nbits);
+            bitSet.set(offset);
+        }
+        return atLeastOneBitSet;
+    }
+
+    private static PVStructure createLarge() {
+        FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+        FieldBuilder builder = fieldCreate.createFieldBuilder();
+        for(int i=0; i<20; i++) {
+            builder.add("ps" + i, standardField.scalar(ScalarType.pvDouble,"alarm,timeStamp,display"));
+            builder.add("x" + i, ScalarType.pvInt);
+        }
+        builder.add("empty", fieldCreate.createStructure(new String[0], new Field[0]));
+        return pvDataCreate.createPVStructure(builder.createStructure());
+    }
+
+    public static void testCompressRandom() {
+        PVStructure pvs = createLarge();
+        int nfields = pvs.getNumberFields();
+        Random random = new Random(1);
+        for(int trial=0; trial<500; trial++) {
+            BitSet bitSet = new BitSet(nfields);
+            int density = 1 + random.nextInt(nfields);
+            for(int i=0; i<density; i++) bitSet.set(random.nextInt(nfields));
+            if(trial%5==0) {
+                // sets all fields of some structures
+                for(int i=0; i<3; i++) {
+                    PVField pvField = pvs.getSubField(random.nextInt(nfields));
+                    bitSet.set(pvField.getFieldOffset(), pvField.getNextFieldOffset());
+                }
+            }
+            BitSet expected = (BitSet)bitSet.clone();
+            boolean expectedResult = referenceCompress(pvs,expected);
+            boolean result = bitSetUtil.compress(bitSet,pvs);
+            assertEquals(expectedResult,result);
+            assertEquals(expected,bitSet);
+        }
+        BitSet bitSet = new BitSet(nfields);
+        assertFalse(BitSetUtilFactory.compress(bitSet,pvs.getStructure()));
+        bitSet.set(0,nfields);
+        assertTrue(BitSetUtilFactory.compress(bitSet,pvs.getStructure()));
+        assertEquals(1,bitSet.cardinality());
+        assertTrue(bitSet.get(0));
+    }
+
+    public static void testExpand() {
+        PVStructure pvs = createLarge();
+        int nfields = pvs.getNumberFields();
+        BitSet bitSet = new BitSet(nfields);
+        PVField ps1 = pvs.getSubField("ps1");
+        PVField alarm = pvs.getSubField("ps2.alarm");
+        PVField x3 = pvs.getSubField("x3");
+        bitSet.set(ps1.getFieldOffset());
+        bitSet.set(alarm.getFieldOffset());
+        bitSet.set(x3.getFieldOffset());
+        BitSetUtilFactory.expand(bitSet,pvs);
+        assertEquals(ps1.getNumberFields() + alarm.getNumberFields() + 1,bitSet.cardinality());
+        for(int i=ps1.getFieldOffset(); i<ps1.getNextFieldOffset(); i++) assertTrue(bitSet.get(i));
+        for(int i=alarm.getFieldOffset(); i<alarm.getNextFieldOffset(); i++) assertTrue(bitSet.get(i));
+        // compress is the reverse of expand
+        bitSetUtil.compress(bitSet,pvs);
+        assertEquals(3,bitSet.cardinality());
+        assertTrue(bitSet.get(ps1.getFieldOffset()));
+        assertTrue(bitSet.get(alarm.getFieldOffset()));
+        assertTrue(bitSet.get(x3.getFieldOffset()));
+        bitSet.clear();
+        bitSet.set(0);
+        BitSetUtilFactory.expand(bitSet,pvs.getStructure());
+        assertEquals(nfields,bitSet.cardinality());
+    }
 }
@@ -0,0 +1,90 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.AbstractPVArray;
+import org.epics.pvdata.factory.CapacityPolicyFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVIntArray;
+import org.epics.pvdata.pv.ScalarType;
+
+/**
+ * JUnit test for CapacityPolicy.
+ */
+public class CapacityPolicyTest extends TestCase {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+
+    private static int append(PVIntArray pvArray,int number) {
+        int[] value = new int[1];
+        int reallocations = 0;
+        for(int i=0; i<number; i++) {
+            int capacity = pvArray.getCapacity();
+            value[0] = i;
+            pvArray.put(pvArray.getLength(), 1, value, 0);
+            if(pvArray.getCapacity()!=capacity) reallocations++;
+        }
+        return reallocations;
+    }
+
+    public void testExact() {
+        PVIntArray pvArray = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        assertEquals("exact", ((AbstractPVArray)pvArray).getCapacityPolicy().toString());
+        assertEquals(1000, append(pvArray,1000));
+        assertEquals(1000, pvArray.getCapacity());
+        pvArray.setLength(10);
+        assertEquals(1000, pvArray.getCapacity());
+    }
+
+    public void testGeometric() {
+        PVIntArray pvArray = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        ((AbstractPVArray)pvArray).setCapacityPolicy(CapacityPolicyFactory.geometric(2.0));
+        int reallocations = append(pvArray,1000);
+        assertTrue(reallocations<=8);
+        assertEquals(1000, pvArray.getLength());
+        assertEquals(1024, pvArray.getCapacity());
+        pvArray.setLength(0);
+        assertEquals(1024, pvArray.getCapacity());
+        // setCapacity is not changed by the policy
+        pvArray.setCapacity(10);
+        assertEquals(10, pvArray.getCapacity());
+    }
+
+    public void testBoundedGeometric() {
+        PVIntArray pvArray = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        ((AbstractPVArray)pvArray).setCapacityPolicy(CapacityPolicyFactory.boundedGeometric(2.0,100,0.25));
+        append(pvArray,1000);
+        // the last steps were bounded by 100
+        assertTrue(pvArray.getCapacity()>=1000 && pvArray.getCapacity()<1100);
+        int capacity = pvArray.getCapacity();
+        pvArray.setLength(400);
+        assertEquals(capacity, pvArray.getCapacity());
+        pvArray.setLength(100);
+        assertEquals(200, pvArray.getCapacity());
+        assertEquals(100, pvArray.getLength());
+    }
+
+    public void testBoundedArray() {
+        PVIntArray pvArray = (PVIntArray)pvDataCreate.createPVField(fieldCreate.createBoundedScalarArray(ScalarType.pvInt, 100));
+        ((AbstractPVArray)pvArray).setCapacityPolicy(CapacityPolicyFactory.geometric(2.0));
+        append(pvArray,70);
+        assertEquals(100, pvArray.getCapacity());
+        try {
+            append(pvArray,31);
+            fail("bound exceeded");
+        } catch (IllegalArgumentException e) {}
+
+        pvArray = (PVIntArray)pvDataCreate.createPVField(fieldCreate.createFixedScalarArray(ScalarType.pvInt, 10));
+        ((AbstractPVArray)pvArray).setCapacityPolicy(CapacityPolicyFactory.boundedGeometric(2.0,100,0.25));
+        pvArray.put(0, 3, new int[] {1,2,3}, 0);
+        assertEquals(10, pvArray.getCapacity());
+        assertEquals(10, pvArray.getLength());
+    }
+}
@@ -5,11 +5,15 @@
 package org.epics.pvdata;
 
 
+import java.util.concurrent.CountDownLatch;
+
 import junit.framework.TestCase;
 
+import org.epics.pvdata.factory.AbstractPVArray;
 import org.epics.pvdata.factory.ConvertFactory;
 import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.DoubleArrayData;
 import org.epics.pvdata.pv.PVByte;
 import org.epics.pvdata.pv.PVByteArray;
 import org.epics.pvdata.pv.PVDataCreate;
@@ -499,4 +503,146 @@ public class ConvertTest extends TestCase {
         convert.copyScalarArray(pvULong,0, pvDouble,0,length);
         print("double from unsigned " +pvDouble.toString());
 	}
+
+	public void testCopyOnWrite() {
+		boolean save = AbstractPVArray.isShareValues();
+		AbstractPVArray.setShareValues(true);
+		try {
+			checkCopyOnWrite();
+			checkShareLength();
+		} finally {
+			AbstractPVArray.setShareValues(save);
+		}
+	}
+
+	private void checkCopyOnWrite() {
+		PVDoubleArray master = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		PVDoubleArray copy1 = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		PVDoubleArray copy2 = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		double[] values = new double[] {1.0, 2.0, 3.0, 4.0};
+		master.put(0, values.length, values, 0);
+		master.setCapacity(8);
+		convert.copy(master, copy1);
+		convert.copy(master, copy2);
+		DoubleArrayData masterData = new DoubleArrayData();
+		DoubleArrayData copyData = new DoubleArrayData();
+		master.get(0, master.getLength(), masterData);
+		copy1.get(0, copy1.getLength(), copyData);
+		assertSame(masterData.data, copyData.data);
+		assertEquals(4, copy1.getLength());
+		assertEquals(8, copy1.getCapacity());
+		assertEquals(master, copy1);
+
+		// a change to the master does not change the copies
+		master.put(1, 1, new double[] {20.0}, 0);
+		master.get(0, master.getLength(), masterData);
+		copy1.get(0, copy1.getLength(), copyData);
+		assertNotSame(masterData.data, copyData.data);
+		assertEquals(20.0, masterData.data[1]);
+		assertEquals(2.0, copyData.data[1]);
+
+		// copy1 and copy2 still share; a change to copy2 does not change copy1
+		copy2.put(0, 1, new double[] {10.0}, 0);
+		copy1.get(0, copy1.getLength(), copyData);
+		assertEquals(1.0, copyData.data[0]);
+		assertEquals(4, copy2.getLength());
+
+		// a partial copy does not share
+		convert.copyScalarArray(master, 0, copy1, 0, 2);
+		copy1.get(0, copy1.getLength(), copyData);
+		master.get(0, master.getLength(), masterData);
+		assertNotSame(masterData.data, copyData.data);
+	}
+
+	private void checkShareLength() {
+		PVDoubleArray from = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		PVDoubleArray to = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		from.put(0, 5, new double[] {1.0, 2.0, 3.0, 4.0, 5.0}, 0);
+		double[] values = new double[10];
+		for (int i = 0; i < values.length; i++) values[i] = 10.0 + i;
+		to.put(0, values.length, values, 0);
+		// copying into a longer array keeps its length and tail
+		convert.copyScalarArray(from, 0, to, 0, from.getLength());
+		DoubleArrayData data = new DoubleArrayData();
+		assertEquals(10, to.getLength());
+		assertEquals(10, to.getCapacity());
+		to.get(0, to.getLength(), data);
+		assertEquals(5.0, data.data[4]);
+		assertEquals(19.0, data.data[9]);
+		// copying the whole field gives it the length of from
+		convert.copy(from, to);
+		assertEquals(5, to.getLength());
+		assertEquals(from, to);
+	}
+
+	public void testConcurrentCopyOnWrite() throws Exception {
+		boolean save = AbstractPVArray.isShareValues();
+		AbstractPVArray.setShareValues(true);
+		try {
+			final int n = 100000;
+			final double[] values = new double[n];
+			final double[] others = new double[n];
+			for (int i = 0; i < n; i++) {
+				values[i] = i;
+				others[i] = -i;
+			}
+			for (int loop = 0; loop < 20; loop++) {
+				final PVDoubleArray master = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+				final PVDoubleArray copy = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+				master.put(0, n, values, 0);
+				convert.copy(master, copy);
+				// each thread gives its own array its own copy while the other writes to its array
+				final CountDownLatch start = new CountDownLatch(1);
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						copy.put(0, n, others, 0);
+					}
+				});
+				thread.start();
+				start.countDown();
+				master.put(0, 1, new double[] {42.0}, 0);
+				thread.join();
+				DoubleArrayData data = new DoubleArrayData();
+				master.get(0, n, data);
+				assertEquals(42.0, data.data[0]);
+				for (int i = 1; i < n; i++) assertEquals(values[i], data.data[i]);
+				copy.get(0, n, data);
+				for (int i = 0; i < n; i++) assertEquals(others[i], data.data[i]);
+			}
+		} finally {
+			AbstractPVArray.setShareValues(save);
+		}
+	}
+
+	public void testCopyNotShared() {
+		assertFalse(AbstractPVArray.isShareValues());
+		PVDoubleArray master = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		PVDoubleArray copy = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		master.put(0, 3, new double[] {1.0, 2.0, 3.0}, 0);
+		convert.copy(master, copy);
+		// writing through the data returned by get does not change a copy
+		DoubleArrayData data = new DoubleArrayData();
+		master.get(0, master.getLength(), data);
+		data.data[0] = 42.0;
+		master.postPut();
+		copy.get(0, copy.getLength(), data);
+		assertEquals(1.0, data.data[0]);
+	}
+
+	public void testCopyScalarArrayLength() {
+		PVDoubleArray from = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		PVDoubleArray to = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+		from.put(0, 6, new double[] {0.0, 1.0, 2.0, 3.0, 4.0, 5.0}, 0);
+		to.setLength(3);
+		// the length of the destination depends on toOffset, not on the source offset
+		convert.copyScalarArray(from, 4, to, 1, 1);
+		assertEquals(3, to.getLength());
+		convert.copyScalarArray(from, 0, to, 2, 2);
+		assertEquals(4, to.getLength());
+	}
 }
@@ -8,6 +8,7 @@ import junit.framework.TestCase;
 
 import org.epics.pvdata.copy.CreateRequest;
 import org.epics.pvdata.pv.MessageType;
+import org.epics.pvdata.pv.PVString;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.Requester;
 
@@ -188,5 +189,70 @@ public class CreateRequestTest extends TestCase {
         assertTrue(pvRequest!=null);
         System.out.printf("request %s%n%s%n",request,pvRequest.toString());
     }
-}
 
+    /**
+     * 
+     */
+    public static void testCache() {
+        String request = "record[process=true]field(value[deadband=0.5],alarm)";
+        PVStructure pvRequest = createRequest.createRequest(request);
+        assertTrue(pvRequest!=null);
+        assertTrue(pvRequest.isImmutable());
+        assertSame(pvRequest, createRequest.createRequest(request));
+        assertSame(pvRequest, CreateRequest.create().createRequest(request));
+        assertEquals("0.5", pvRequest.getSubField(PVString.class, "field.value._options.deadband").get());
+        assertEquals("true", pvRequest.getSubField(PVString.class, "record._options.process").get());
+        try {
+            pvRequest.getSubField(PVString.class, "record._options.process").put("false");
+            fail("cached request is not immutable");
+        } catch (IllegalArgumentException e) {}
+        int saveSize = CreateRequest.getCacheSize();
+        CreateRequest.setCacheSize(0);
+        try {
+            PVStructure pvOther = createRequest.createRequest(request);
+            assertNotSame(pvRequest, pvOther);
+            assertEquals(pvRequest, pvOther);
+            // a result that is not cached can be changed by the caller
+            assertFalse(pvOther.isImmutable());
+            pvOther.getSubField(PVString.class, "record._options.process").put("false");
+        } finally {
+            CreateRequest.setCacheSize(saveSize);
+        }
+    }
+
+    /**
+     * 
+     */
+    public static void testSlice() {
+        PVStructure pvRequest = createRequest.createRequest("field(value[0:1000:10,deadband=1],alarm)");
+        assertTrue(pvRequest!=null);
+        assertEquals("0:1000:10", pvRequest.getSubField(PVString.class, "field.value._options.slice").get());
+        assertEquals("1", pvRequest.getSubField(PVString.class, "field.value._options.deadband").get());
+        pvRequest = createRequest.createRequest("value[:100]");
+        assertTrue(pvRequest!=null);
+        assertEquals(":100", pvRequest.getSubField(PVString.class, "field.value._options.slice").get());
+        assertTrue(createRequest.createRequest("value[1:x]")==null);
+        assertTrue(createRequest.createRequest("value[1:2:0]")==null);
+    }
+
+    /**
+     * 
+     */
+    public static void testSections() {
+        PVStructure pvRequest = createRequest.createRequest("record[a=b,x=y]field(a) putField(a),getField(b)");
+        assertTrue(pvRequest!=null);
+        assertEquals("y", pvRequest.getSubField(PVString.class, "record._options.x").get());
+        assertTrue(pvRequest.getSubField("putField.a")!=null);
+        assertTrue(pvRequest.getSubField("getField.b")!=null);
+        // only the first of the same sections is used
+        pvRequest = createRequest.createRequest("field(a[x=1])field(b[x=2])record[p=q]record[p=r]");
+        assertTrue(pvRequest!=null);
+        assertEquals("1", pvRequest.getSubField(PVString.class, "field.a._options.x").get());
+        assertTrue(pvRequest.getSubField("field.b")==null);
+        assertEquals("q", pvRequest.getSubField(PVString.class, "record._options.p").get());
+        assertTrue(createRequest.createRequest("field(a,b")==null);
+        assertEquals("mismatched () 1", createRequest.getMessage());
+        assertTrue(createRequest.createRequest("field(a{b)")==null);
+        assertEquals("mismatched {} 1", createRequest.getMessage());
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.Executor;
+import org.epics.pvdata.misc.ExecutorFactory;
+import org.epics.pvdata.misc.ExecutorNode;
+import org.epics.pvdata.misc.ThreadPriority;
+
+/**
+ * JUnit test for Executor.
+ */
+public class ExecutorTest extends TestCase {
+
+    private static void checkOrder(Executor executor) throws InterruptedException {
+        final int number = 1000;
+        final int[] order = new int[number];
+        final AtomicInteger next = new AtomicInteger(0);
+        final CountDownLatch done = new CountDownLatch(number);
+        ExecutorNode[] nodes = new ExecutorNode[number];
+        for(int i=0; i<number; i++) {
+            final int index = i;
+            nodes[i] = executor.createNode(new Runnable() {
+                public void run() {
+                    order[next.getAndIncrement()] = index;
+                    done.countDown();
+                }
+            });
+        }
+        for(int i=0; i<number; i++) executor.execute(nodes[i]);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for(int i=0; i<number; i++) assertEquals(i,order[i]);
+        executor.stop();
+    }
+
+    public static void testThreadExecutor() throws InterruptedException {
+        checkOrder(ExecutorFactory.create("testThreadExecutor", ThreadPriority.middle));
+    }
+
+    public static void testPooledExecutor() throws InterruptedException {
+        checkOrder(ExecutorFactory.createPooled("testPooledExecutor"));
+    }
+
+    public static void testPooledNodeQueuedOnce() throws InterruptedException {
+        Executor executor = ExecutorFactory.createPooled("testPooledNodeQueuedOnce");
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger count = new AtomicInteger(0);
+        ExecutorNode blocker = executor.createNode(new Runnable() {
+            public void run() {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {}
+            }
+        });
+        ExecutorNode counter = executor.createNode(new Runnable() {
+            public void run() {
+                count.incrementAndGet();
+            }
+        });
+        executor.execute(blocker);
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        for(int i=0; i<10; i++) executor.execute(counter);
+        release.countDown();
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(executor.createNode(new Runnable() {
+            public void run() {
+                done.countDown();
+            }
+        }));
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1,count.get());
+        executor.stop();
+    }
+}
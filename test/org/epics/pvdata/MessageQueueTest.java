@@ -0,0 +1,95 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.MessageNode;
+import org.epics.pvdata.misc.MessageQueue;
+import org.epics.pvdata.misc.MessageQueueFactory;
+import org.epics.pvdata.pv.MessageType;
+
+/**
+ * JUnit test for MessageQueue.
+ */
+public class MessageQueueTest extends TestCase {
+
+    public static void testPutGet() {
+        MessageQueue queue = MessageQueueFactory.create(3);
+        assertTrue(queue.isEmpty());
+        assertNull(queue.get());
+        assertTrue(queue.put("a", MessageType.info, true));
+        assertTrue(queue.put("b", MessageType.warning, true));
+        assertTrue(queue.put("c", MessageType.error, true));
+        assertTrue(queue.isFull());
+        assertFalse(queue.put("d", MessageType.error, true));
+        assertFalse(queue.put("e", MessageType.fatalError, false));
+        assertEquals(2, queue.getClearOverrun());
+        assertEquals(0, queue.getClearOverrun());
+        MessageNode node = queue.get();
+        assertEquals("a", node.message);
+        assertEquals(MessageType.info, node.messageType);
+        assertEquals("b", queue.get().message);
+        node = queue.get();
+        assertEquals("d", node.message);
+        assertEquals(MessageType.error, node.messageType);
+        assertNull(queue.get());
+        assertTrue(queue.isEmpty());
+    }
+
+    public static void testDrain() {
+        MessageQueue queue = MessageQueueFactory.create(4);
+        for(int i=0; i<10; i++) {
+            assertTrue(queue.put(Integer.toString(i), MessageType.info, false));
+            if(i%3==2) {
+                MessageNode[] nodes = new MessageNode[2];
+                assertEquals(2, MessageQueueFactory.drain(queue, nodes));
+                assertEquals(Integer.toString(i-2), nodes[0].message);
+                assertEquals(Integer.toString(i-1), nodes[1].message);
+                assertEquals(Integer.toString(i), queue.get().message);
+            }
+        }
+        MessageNode[] nodes = new MessageNode[4];
+        assertEquals(1, MessageQueueFactory.drain(queue, nodes));
+        assertEquals("9", nodes[0].message);
+        assertEquals(0, MessageQueueFactory.drain(queue, nodes));
+    }
+
+    public static void testConcurrentPut() throws InterruptedException {
+        final MessageQueue queue = MessageQueueFactory.create(16);
+        final int numberThreads = 4;
+        final int numberPuts = 20000;
+        final CountDownLatch done = new CountDownLatch(numberThreads);
+        for(int i=0; i<numberThreads; i++) {
+            final boolean replaceLast = (i%2==0);
+            new Thread(new Runnable() {
+                public void run() {
+                    for(int j=0; j<numberPuts; j++) {
+                        queue.put("message", MessageType.info, replaceLast);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        long received = 0;
+        long overrun = 0;
+        MessageNode[] nodes = new MessageNode[8];
+        while(done.getCount()>0 || !queue.isEmpty()) {
+            int number = MessageQueueFactory.drain(queue, nodes);
+            for(int i=0; i<number; i++) {
+                assertEquals("message", nodes[i].message);
+            }
+            received += number;
+            overrun += queue.getClearOverrun();
+        }
+        done.await();
+        while(queue.get()!=null) received++;
+        overrun += queue.getClearOverrun();
+        // every overrun loses exactly one message
+        assertEquals(numberThreads*numberPuts, received + overrun);
+    }
+}
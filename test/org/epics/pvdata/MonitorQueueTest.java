@@ -0,0 +1,90 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.StandardFieldFactory;
+import org.epics.pvdata.monitor.MonitorElement;
+import org.epics.pvdata.monitor.MonitorQueue;
+import org.epics.pvdata.monitor.MonitorQueueFactory;
+import org.epics.pvdata.monitor.MonitorQueueStatistics;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.StandardField;
+
+/**
+ * JUnit test for MonitorQueue.
+ */
+public class MonitorQueueTest extends TestCase {
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final StandardField standardField = StandardFieldFactory.getStandardField();
+
+    private static MonitorQueue createQueue(int size,boolean instrumented) {
+        MonitorElement[] monitorElements = new MonitorElement[size];
+        for(int i=0; i<size; i++) {
+            PVStructure pvStructure = pvDataCreate.createPVStructure(
+                standardField.scalar(ScalarType.pvDouble,"alarm,timeStamp"));
+            monitorElements[i] = MonitorQueueFactory.createMonitorElement(pvStructure);
+        }
+        return MonitorQueueFactory.create(monitorElements,instrumented);
+    }
+
+    public static void testNotInstrumented() {
+        MonitorQueue queue = createQueue(2,false);
+        assertNull(MonitorQueueFactory.getStatistics(queue));
+    }
+
+    public static void testStatistics() {
+        MonitorQueue queue = createQueue(3,true);
+        MonitorQueueStatistics statistics = MonitorQueueFactory.getStatistics(queue);
+        assertNotNull(statistics);
+        assertEquals(3,statistics.getCapacity());
+        for(int i=0; i<3; i++) {
+            MonitorElement monitorElement = queue.getFree();
+            assertNotNull(monitorElement);
+            queue.setUsed(monitorElement);
+        }
+        assertNull(queue.getFree());
+        assertNull(queue.getFree());
+        assertEquals(3,statistics.getNumberEnqueued());
+        assertEquals(2,statistics.getNumberOverrun());
+        assertEquals(3,statistics.getDepth());
+        assertEquals(3,statistics.getMaxDepth());
+        MonitorElement monitorElement = queue.getUsed();
+        queue.releaseUsed(monitorElement);
+        assertEquals(1,statistics.getNumberDequeued());
+        assertEquals(2,statistics.getDepth());
+        assertEquals(3,statistics.getMaxDepth());
+        long[] histogram = statistics.getLatencyHistogram();
+        assertEquals(MonitorQueueStatistics.NUMBER_LATENCY_BUCKETS,histogram.length);
+        long total = 0;
+        for(long value : histogram) total += value;
+        assertEquals(1,total);
+        assertTrue(statistics.getMaxLatency()>=0);
+        statistics.reset();
+        assertEquals(0,statistics.getNumberEnqueued());
+        assertEquals(0,statistics.getNumberOverrun());
+        assertEquals(2,statistics.getMaxDepth());
+        queue.clear();
+        assertEquals(0,statistics.getDepth());
+    }
+
+    public static void testRegister() throws Exception {
+        MonitorQueue queue = createQueue(2,true);
+        ObjectName objectName = MonitorQueueFactory.registerStatistics(queue,"testRegister");
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+        Object capacity = ManagementFactory.getPlatformMBeanServer().getAttribute(objectName,"Capacity");
+        assertEquals(2,((Integer)capacity).intValue());
+        MonitorQueueFactory.unregisterStatistics(objectName);
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(objectName));
+    }
+}
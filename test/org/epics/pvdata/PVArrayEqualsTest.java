@@ -6,8 +6,12 @@ package org.epics.pvdata;
 
 import junit.framework.TestCase;
 
+import org.epics.pvdata.factory.AbstractPVScalarArray;
+import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.factory.StandardPVFieldFactory;
 import org.epics.pvdata.pv.IntArrayData;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDoubleArray;
 import org.epics.pvdata.pv.PVIntArray;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.ScalarType;
@@ -23,6 +27,7 @@ import org.epics.pvdata.pv.StandardPVField;
  */
 public class PVArrayEqualsTest extends TestCase {
     private static final StandardPVField standardPVField = StandardPVFieldFactory.getStandardPVField();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
 	
     static private void print(String name,String value) {
         System.out.println();
@@ -54,5 +59,45 @@ public class PVArrayEqualsTest extends TestCase {
         print("testArrayEquals B",pvStructureB.toString());
 
     }
-}
 
+    public static void testLengthOnly() {
+        PVDoubleArray pvA = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+        PVDoubleArray pvB = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+        pvA.put(0, 3, new double[] {1, 2, Double.NaN}, 0);
+        pvB.put(0, 4, new double[] {1, 2, Double.NaN, 4}, 0);
+        pvB.setCapacity(10);
+        assertFalse(pvA.equals(pvB));
+        pvB.setLength(3);
+        assertEquals(10, pvB.getCapacity());
+        assertEquals(pvA, pvB);
+        assertEquals(pvA.hashCode(), pvB.hashCode());
+        pvB.put(2, 1, new double[] {-0.0}, 0);
+        assertFalse(pvA.equals(pvB));
+    }
+
+    public static void testHashCodeCache() {
+        PVIntArray pvA = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        PVIntArray pvB = (PVIntArray)pvDataCreate.createPVScalarArray(ScalarType.pvInt);
+        ((AbstractPVScalarArray)pvA).setHashCodeCache(true);
+        assertTrue(((AbstractPVScalarArray)pvA).isHashCodeCache());
+        pvA.put(0, 3, new int[] {1, 2, 3}, 0);
+        pvB.put(0, 3, new int[] {1, 2, 3}, 0);
+        assertEquals(pvB.hashCode(), pvA.hashCode());
+        pvA.put(1, 1, new int[] {5}, 0);
+        pvB.put(1, 1, new int[] {5}, 0);
+        assertEquals(pvB.hashCode(), pvA.hashCode());
+        pvA.setLength(2);
+        pvB.setLength(2);
+        assertEquals(pvB.hashCode(), pvA.hashCode());
+        // modify the data returned by get, then postPut
+        IntArrayData data = new IntArrayData();
+        pvA.get(0, 2, data);
+        data.data[0] = 7;
+        pvA.postPut();
+        pvB.put(0, 1, new int[] {7}, 0);
+        assertEquals(pvB.hashCode(), pvA.hashCode());
+        pvA.shareData(new int[] {4, 5, 6, 7});
+        pvB.put(0, 4, new int[] {4, 5, 6, 7}, 0);
+        assertEquals(pvB.hashCode(), pvA.hashCode());
+    }
+}
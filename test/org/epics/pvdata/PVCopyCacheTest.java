@@ -0,0 +1,117 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.copy.PVCopyCache;
+import org.epics.pvdata.copy.PVCopyFactory;
+import org.epics.pvdata.copy.PVCopyListener;
+import org.epics.pvdata.copy.PVCopySubscription;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.StandardFieldFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+
+/**
+ * JUnit test for PVCopyCache.
+ */
+public class PVCopyCacheTest extends TestCase {
+    private static final CreateRequest createRequest = CreateRequest.create();
+
+    private static class Listener implements PVCopyListener {
+        int numberChanges = 0;
+        BitSet lastBitSet = null;
+
+        public void dataChanged(PVStructure pvStructure, BitSet changedBitSet) {
+            numberChanges++;
+            lastBitSet = (BitSet)changedBitSet.clone();
+        }
+    }
+
+    private static PVCopySubscription subscribe(PVCopyCache cache, String request, Listener listener) {
+        PVCopySubscription subscription = cache.subscribe(createRequest.createRequest(request), "field", listener);
+        assertNotNull(request, subscription);
+        return subscription;
+    }
+
+    public static void testFanOut() {
+        PVStructure pvMaster = PVDataFactory.getPVDataCreate().createPVStructure(
+            StandardFieldFactory.getStandardField().scalar(ScalarType.pvDouble, "alarm,timeStamp"));
+        PVCopyCache cache = PVCopyFactory.createCache(pvMaster);
+        Listener listener1 = new Listener();
+        Listener listener2 = new Listener();
+        Listener listener3 = new Listener();
+        PVCopySubscription subscription1 = subscribe(cache, "field(value,alarm)", listener1);
+        PVCopySubscription subscription2 = subscribe(cache, "field(value, alarm)", listener2);
+        PVCopySubscription subscription3 = subscribe(cache, "field(timeStamp)", listener3);
+        assertEquals(2, cache.getNumberCopies());
+        assertSame(subscription1.getPVCopy(), subscription2.getPVCopy());
+        assertSame(subscription1.getPVStructure(), subscription2.getPVStructure());
+        assertNotSame(subscription1.getPVCopy(), subscription3.getPVCopy());
+
+        PVDouble pvValue = pvMaster.getSubField(PVDouble.class, "value");
+        pvValue.put(5.0);
+        BitSet masterBitSet = new BitSet(pvMaster.getNumberFields());
+        masterBitSet.set(pvValue.getFieldOffset());
+        cache.update(masterBitSet);
+        assertEquals(1, listener1.numberChanges);
+        assertEquals(1, listener2.numberChanges);
+        assertEquals(0, listener3.numberChanges);
+        PVStructure pvCopy = subscription1.getPVStructure();
+        assertEquals(5.0, pvCopy.getSubField(PVDouble.class, "value").get(), 0.0);
+        assertEquals(1, listener1.lastBitSet.cardinality());
+        assertTrue(listener1.lastBitSet.get(pvCopy.getSubField("value").getFieldOffset()));
+
+        PVInt pvSeverity = pvMaster.getSubField(PVInt.class, "alarm.severity");
+        pvSeverity.put(2);
+        masterBitSet.clear();
+        masterBitSet.set(pvMaster.getSubField("alarm").getFieldOffset());
+        masterBitSet.set(pvMaster.getSubField("timeStamp.userTag").getFieldOffset());
+        cache.update(masterBitSet);
+        assertEquals(2, listener1.numberChanges);
+        assertEquals(1, listener3.numberChanges);
+        assertEquals(2, pvCopy.getSubField(PVInt.class, "alarm.severity").get());
+        assertTrue(listener1.lastBitSet.get(pvCopy.getSubField("alarm").getFieldOffset()));
+
+        subscription1.close();
+        assertEquals(2, cache.getNumberCopies());
+        subscription2.close();
+        subscription3.close();
+        assertEquals(0, cache.getNumberCopies());
+        cache.update(masterBitSet);
+        assertEquals(2, listener2.numberChanges);
+    }
+
+    public static void testFilter() {
+        PVStructure pvMaster = PVDataFactory.getPVDataCreate().createPVStructure(
+            StandardFieldFactory.getStandardField().scalar(ScalarType.pvDouble, "alarm"));
+        PVCopyCache cache = PVCopyFactory.createCache(pvMaster);
+        Listener listener = new Listener();
+        subscribe(cache, "field(value[deadband=1.0])", listener);
+        PVDouble pvValue = pvMaster.getSubField(PVDouble.class, "value");
+        BitSet masterBitSet = new BitSet(pvMaster.getNumberFields());
+        masterBitSet.set(pvValue.getFieldOffset());
+        double[] values = {2.0, 2.5, 3.0, 3.5, 4.6};
+        for(double value : values) {
+            pvValue.put(value);
+            cache.update(masterBitSet);
+        }
+        // 2.0, 3.5 and 4.6 differ by more than 1.0 from the last value passed
+        assertEquals(3, listener.numberChanges);
+    }
+
+    public static void testInvalidRequest() {
+        PVStructure pvMaster = PVDataFactory.getPVDataCreate().createPVStructure(
+            StandardFieldFactory.getStandardField().scalar(ScalarType.pvDouble, "alarm"));
+        PVCopyCache cache = PVCopyFactory.createCache(pvMaster);
+        assertNull(cache.subscribe(createRequest.createRequest("field(nothere)"), "field", new Listener()));
+        assertEquals(0, cache.getNumberCopies());
+    }
+}
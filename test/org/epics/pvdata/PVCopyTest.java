@@ -0,0 +1,286 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.copy.PVCopy;
+import org.epics.pvdata.copy.PVCopyFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.StandardFieldFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.DoubleArrayData;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStringArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.StandardField;
+import org.epics.pvdata.pv.StringArrayData;
+
+/**
+ * JUnit test for PVCopy.
+ */
+public class PVCopyTest extends TestCase {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final StandardField standardField = StandardFieldFactory.getStandardField();
+    private static final CreateRequest createRequest = CreateRequest.create();
+
+    private static PVStructure createMaster() {
+        return pvDataCreate.createPVStructure(fieldCreate.createFieldBuilder().
+            add("value", ScalarType.pvDouble).
+            add("alarm", standardField.alarm()).
+            add("timeStamp", standardField.timeStamp()).
+            addNestedStructure("power").
+                add("value", ScalarType.pvDouble).
+                add("alarm", standardField.alarm()).
+                endNested().
+            add("display", standardField.display()).
+            createStructure());
+    }
+
+    private static PVCopy createCopy(PVStructure pvMaster, String request) {
+        PVStructure pvRequest = createRequest.createRequest(request);
+        assertNotNull(createRequest.getMessage(), pvRequest);
+        PVCopy pvCopy = PVCopyFactory.create(pvMaster, pvRequest, "field");
+        assertNotNull(pvCopy);
+        return pvCopy;
+    }
+
+    private static void checkOffsets(String request) {
+        PVStructure pvMaster = createMaster();
+        PVCopy pvCopy = createCopy(pvMaster, request);
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        int numberCopy = pvCopyStructure.getNumberFields();
+        int numberFound = 0;
+        for(int offset=1; offset<numberCopy; offset++) {
+            PVField pvCopyField = pvCopyStructure.getSubField(offset);
+            PVField pvMasterField = pvCopy.getMasterPVField(offset);
+            assertEquals(request, pvCopyField.getFullName(), pvMasterField.getFullName());
+            assertEquals(request, offset, pvCopy.getCopyOffset(pvMasterField));
+            assertEquals(request, offset, pvCopy.getCopyOffset(pvMasterField.getParent(), pvMasterField));
+        }
+        for(int offset=1; offset<pvMaster.getNumberFields(); offset++) {
+            PVField pvMasterField = pvMaster.getSubField(offset);
+            int copyOffset = pvCopy.getCopyOffset(pvMasterField);
+            if(copyOffset<0) {
+                assertNull(request, pvCopyStructure.getSubField(pvMasterField.getFullName()));
+                continue;
+            }
+            numberFound++;
+            assertSame(request, pvMasterField, pvCopy.getMasterPVField(copyOffset));
+        }
+        assertEquals(request, numberCopy - 1, numberFound);
+        // a field of another structure is never in the copy
+        PVStructure pvOther = createMaster();
+        assertEquals(-1, pvCopy.getCopyOffset(pvOther.getSubField("value")));
+        try {
+            pvCopy.getMasterPVField(numberCopy);
+            fail("illegal offset accepted");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    public static void testOffsets() {
+        checkOffsets("");
+        checkOffsets("field()");
+        checkOffsets("field(value,alarm,timeStamp)");
+        checkOffsets("field(timeStamp,power.value,value)");
+        checkOffsets("field(alarm.severity,power{alarm{message},value},display)");
+    }
+
+    public static void testUpdateCopySetBitSet() {
+        PVStructure pvMaster = createMaster();
+        PVCopy pvCopy = createCopy(pvMaster, "field(value,alarm,power.value)");
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        BitSet bitSet = new BitSet(pvCopyStructure.getNumberFields());
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        assertTrue(bitSet.get(0));
+        bitSet.clear();
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        assertTrue(bitSet.isEmpty());
+        pvMaster.getSubField(PVDouble.class, "value").put(10.0);
+        pvMaster.getSubField(PVInt.class, "alarm.severity").put(2);
+        pvMaster.getSubField(PVInt.class, "timeStamp.nanoseconds").put(5);
+        pvMaster.getSubField(PVDouble.class, "power.value").put(3.0);
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        assertEquals(3, bitSet.cardinality());
+        assertTrue(bitSet.get(pvCopyStructure.getSubField("value").getFieldOffset()));
+        assertTrue(bitSet.get(pvCopyStructure.getSubField("alarm.severity").getFieldOffset()));
+        assertTrue(bitSet.get(pvCopyStructure.getSubField("power.value").getFieldOffset()));
+        assertEquals(10.0, pvCopyStructure.getSubField(PVDouble.class, "value").get(), 0.0);
+        assertEquals(2, pvCopyStructure.getSubField(PVInt.class, "alarm.severity").get());
+        assertEquals(3.0, pvCopyStructure.getSubField(PVDouble.class, "power.value").get(), 0.0);
+    }
+
+    public static void testUpdateCopyFromBitSet() {
+        PVStructure pvMaster = createMaster();
+        PVCopy pvCopy = createCopy(pvMaster, "field(value,alarm,power{value,alarm.severity})");
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        BitSet bitSet = new BitSet(pvCopyStructure.getNumberFields());
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        pvMaster.getSubField(PVDouble.class, "value").put(1.0);
+        pvMaster.getSubField(PVInt.class, "alarm.severity").put(1);
+        pvMaster.getSubField(PVString.class, "alarm.message").put("message");
+        pvMaster.getSubField(PVDouble.class, "power.value").put(2.0);
+        pvMaster.getSubField(PVInt.class, "power.alarm.severity").put(3);
+        // only the fields that have their bit set are copied
+        bitSet.clear();
+        bitSet.set(pvCopyStructure.getSubField("value").getFieldOffset());
+        bitSet.set(pvCopyStructure.getSubField("alarm.message").getFieldOffset());
+        pvCopy.updateCopyFromBitSet(pvCopyStructure, bitSet);
+        assertEquals(1.0, pvCopyStructure.getSubField(PVDouble.class, "value").get(), 0.0);
+        assertEquals(0, pvCopyStructure.getSubField(PVInt.class, "alarm.severity").get());
+        assertEquals("message", pvCopyStructure.getSubField(PVString.class, "alarm.message").get());
+        assertEquals(0.0, pvCopyStructure.getSubField(PVDouble.class, "power.value").get(), 0.0);
+        // the bit of a structure copies all its subfields
+        bitSet.clear();
+        bitSet.set(pvCopyStructure.getSubField("power").getFieldOffset());
+        pvCopy.updateCopyFromBitSet(pvCopyStructure, bitSet);
+        assertEquals(0, pvCopyStructure.getSubField(PVInt.class, "alarm.severity").get());
+        assertEquals(2.0, pvCopyStructure.getSubField(PVDouble.class, "power.value").get(), 0.0);
+        assertEquals(3, pvCopyStructure.getSubField(PVInt.class, "power.alarm.severity").get());
+        // bit 0 copies everything
+        bitSet.clear();
+        bitSet.set(0);
+        pvCopy.updateCopyFromBitSet(pvCopyStructure, bitSet);
+        assertEquals(1, pvCopyStructure.getSubField(PVInt.class, "alarm.severity").get());
+        assertEquals(pvCopyStructure.getNumberFields(), bitSet.cardinality());
+        // entire master
+        pvCopy = createCopy(pvMaster, "");
+        pvCopyStructure = pvCopy.createPVStructure();
+        bitSet.clear();
+        bitSet.set(pvCopyStructure.getSubField("power.alarm.severity").getFieldOffset());
+        pvCopy.updateCopyFromBitSet(pvCopyStructure, bitSet);
+        assertEquals(3, pvCopyStructure.getSubField(PVInt.class, "power.alarm.severity").get());
+        assertEquals(0.0, pvCopyStructure.getSubField(PVDouble.class, "power.value").get(), 0.0);
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        assertEquals(pvMaster, pvCopyStructure);
+    }
+
+    public static void testSlice() {
+        PVStructure pvMaster = pvDataCreate.createPVStructure(
+            standardField.scalarArray(ScalarType.pvDouble, "alarm"));
+        PVDoubleArray pvValue = pvMaster.getSubField(PVDoubleArray.class, "value");
+        double[] data = new double[10];
+        for(int i=0; i<data.length; i++) data[i] = i;
+        pvValue.put(0, data.length, data, 0);
+        PVCopy pvCopy = createCopy(pvMaster, "field(value[2:8:2],alarm)");
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        BitSet bitSet = new BitSet(pvCopyStructure.getNumberFields());
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        PVDoubleArray pvCopyValue = pvCopyStructure.getSubField(PVDoubleArray.class, "value");
+        DoubleArrayData arrayData = new DoubleArrayData();
+        assertEquals(3, pvCopyValue.get(0, pvCopyValue.getLength(), arrayData));
+        assertEquals(2.0, arrayData.data[0], 0.0);
+        assertEquals(4.0, arrayData.data[1], 0.0);
+        assertEquals(6.0, arrayData.data[2], 0.0);
+        // a change outside the slice is not a change of the copy
+        bitSet.clear();
+        pvValue.put(3, 1, new double[] {30.0}, 0);
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        assertTrue(bitSet.isEmpty());
+        pvValue.put(4, 1, new double[] {40.0}, 0);
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        assertTrue(bitSet.get(pvCopyValue.getFieldOffset()));
+        pvCopyValue.get(0, pvCopyValue.getLength(), arrayData);
+        assertEquals(40.0, arrayData.data[1], 0.0);
+        // the slice is clipped to the length of the master
+        pvValue.setLength(5);
+        bitSet.clear();
+        bitSet.set(pvCopyValue.getFieldOffset());
+        pvCopy.updateCopyFromBitSet(pvCopyStructure, bitSet);
+        assertEquals(2, pvCopyValue.getLength());
+        // updateMaster writes only the elements of the slice
+        pvValue.setLength(10);
+        pvCopyValue.put(0, 2, new double[] {-2.0, -4.0}, 0);
+        pvCopy.updateMaster(pvCopyStructure, bitSet);
+        pvValue.get(0, pvValue.getLength(), arrayData);
+        assertEquals(-2.0, arrayData.data[2], 0.0);
+        assertEquals(30.0, arrayData.data[3], 0.0);
+        assertEquals(-4.0, arrayData.data[4], 0.0);
+        assertEquals(6.0, arrayData.data[6], 0.0);
+        // without end and stride
+        pvCopy = createCopy(pvMaster, "value[7:]");
+        pvCopyStructure = pvCopy.createPVStructure();
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        assertEquals(3, pvCopyStructure.getSubField(PVDoubleArray.class, "value").getLength());
+    }
+
+    public static void testStridedStringSlice() {
+        PVStructure pvMaster = pvDataCreate.createPVStructure(
+            standardField.scalarArray(ScalarType.pvString, "alarm"));
+        PVStringArray pvValue = pvMaster.getSubField(PVStringArray.class, "value");
+        pvValue.put(0, 7, new String[] {"a", "b", "c", "d", "e", "f", "g"}, 0);
+        PVCopy pvCopy = createCopy(pvMaster, "value[1::3]");
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        BitSet bitSet = new BitSet(pvCopyStructure.getNumberFields());
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        PVStringArray pvCopyValue = pvCopyStructure.getSubField(PVStringArray.class, "value");
+        StringArrayData arrayData = new StringArrayData();
+        assertEquals(2, pvCopyValue.get(0, pvCopyValue.getLength(), arrayData));
+        assertEquals("b", arrayData.data[0]);
+        assertEquals("e", arrayData.data[1]);
+        bitSet.clear();
+        pvValue.put(2, 1, new String[] {"x"}, 0);
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        assertTrue(bitSet.isEmpty());
+        pvValue.put(4, 1, new String[] {"y"}, 0);
+        pvCopy.updateCopySetBitSet(pvCopyStructure, bitSet);
+        assertTrue(bitSet.get(pvCopyValue.getFieldOffset()));
+        pvCopyValue.get(0, pvCopyValue.getLength(), arrayData);
+        assertEquals("y", arrayData.data[1]);
+    }
+
+    public static void testLargeSlice() {
+        PVStructure pvMaster = pvDataCreate.createPVStructure(
+            standardField.scalarArray(ScalarType.pvDouble, "alarm"));
+        PVDoubleArray pvValue = pvMaster.getSubField(PVDoubleArray.class, "value");
+        double[] data = new double[200000];
+        for(int i=0; i<data.length; i++) data[i] = i;
+        pvValue.put(0, data.length, data, 0);
+        PVCopy pvCopy = createCopy(pvMaster, "value[0::2]");
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        BitSet bitSet = new BitSet(pvCopyStructure.getNumberFields());
+        pvCopy.initCopy(pvCopyStructure, bitSet);
+        PVDoubleArray pvCopyValue = pvCopyStructure.getSubField(PVDoubleArray.class, "value");
+        assertEquals(100000, pvCopyValue.getLength());
+        assertEquals(100000, pvCopyValue.getCapacity());
+        DoubleArrayData arrayData = new DoubleArrayData();
+        pvCopyValue.get(0, pvCopyValue.getLength(), arrayData);
+        assertEquals(0.0, arrayData.data[0], 0.0);
+        assertEquals(199998.0, arrayData.data[99999], 0.0);
+        // updateMaster makes the master long enough for the whole slice at once
+        pvValue.setLength(0);
+        bitSet.clear();
+        bitSet.set(pvCopyValue.getFieldOffset());
+        pvCopy.updateMaster(pvCopyStructure, bitSet);
+        assertEquals(199999, pvValue.getLength());
+        pvValue.get(0, pvValue.getLength(), arrayData);
+        assertEquals(2.0, arrayData.data[2], 0.0);
+        assertEquals(199998.0, arrayData.data[199998], 0.0);
+    }
+
+    public static void testOptions() {
+        PVStructure pvMaster = createMaster();
+        PVCopy pvCopy = createCopy(pvMaster, "field(value[deadband=0.5],alarm,power{value[decimate=2]})");
+        PVStructure pvCopyStructure = pvCopy.createPVStructure();
+        PVStructure options = pvCopy.getOptions(pvCopyStructure.getSubField("value").getFieldOffset());
+        assertNotNull(options);
+        assertEquals("0.5", options.getSubField(PVString.class, "deadband").get());
+        options = pvCopy.getOptions(pvCopyStructure.getSubField("power.value").getFieldOffset());
+        assertNotNull(options);
+        assertEquals("2", options.getSubField(PVString.class, "decimate").get());
+        assertNull(pvCopy.getOptions(pvCopyStructure.getSubField("alarm").getFieldOffset()));
+        assertNull(pvCopy.getOptions(pvCopyStructure.getSubField("alarm.severity").getFieldOffset()));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.copy.CreateRequest;
+import org.epics.pvdata.copy.PVCopy;
+import org.epics.pvdata.copy.PVCopyFactory;
+import org.epics.pvdata.copy.PVFilter;
+import org.epics.pvdata.copy.PVFilterFactory;
+import org.epics.pvdata.copy.PVPlugin;
+import org.epics.pvdata.copy.PVPluginRegistry;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.StandardFieldFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.ScalarType;
+
+/**
+ * JUnit test for PVFilterFactory.
+ */
+public class PVFilterTest extends TestCase {
+    private static final CreateRequest createRequest = CreateRequest.create();
+
+    private static PVStructure createMaster() {
+        return PVDataFactory.getPVDataCreate().createPVStructure(
+            StandardFieldFactory.getStandardField().scalar(ScalarType.pvDouble, "alarm,timeStamp"));
+    }
+
+    private static PVCopy createCopy(PVStructure pvMaster, String request) {
+        PVCopy pvCopy = PVCopyFactory.create(pvMaster, createRequest.createRequest(request), "field");
+        assertNotNull(request, pvCopy);
+        return pvCopy;
+    }
+
+    private static int offset(PVCopy pvCopy, PVStructure pvMaster, String name) {
+        return pvCopy.getCopyOffset(pvMaster.getSubField(name));
+    }
+
+    public static void testDeadband() {
+        PVStructure pvMaster = createMaster();
+        PVDouble pvValue = pvMaster.getSubField(PVDouble.class, "value");
+        PVCopy pvCopy = createCopy(pvMaster, "field(value[deadband=abs:1.0],alarm)");
+        PVFilter pvFilter = PVFilterFactory.create(pvCopy);
+        assertNotNull(pvFilter);
+        assertEquals("deadband", pvFilter.getName());
+        int valueOffset = offset(pvCopy, pvMaster, "value");
+        int alarmOffset = offset(pvCopy, pvMaster, "alarm");
+        BitSet bitSet = new BitSet();
+        bitSet.set(valueOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        pvValue.put(0.5);
+        bitSet.set(valueOffset);
+        assertFalse(pvFilter.filter(bitSet));
+        assertTrue(bitSet.isEmpty());
+        pvValue.put(1.5);
+        bitSet.set(valueOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        assertTrue(bitSet.get(valueOffset));
+        // the bit of the top structure is replaced by the other fields
+        pvValue.put(2.0);
+        bitSet.clear();
+        bitSet.set(0);
+        assertTrue(pvFilter.filter(bitSet));
+        assertFalse(bitSet.get(0));
+        assertFalse(bitSet.get(valueOffset));
+        assertTrue(bitSet.get(alarmOffset));
+        assertEquals(1, bitSet.cardinality());
+
+        pvValue.put(100.0);
+        pvCopy = createCopy(pvMaster, "value[deadband=rel:10]");
+        pvFilter = PVFilterFactory.create(pvCopy);
+        valueOffset = offset(pvCopy, pvMaster, "value");
+        bitSet.clear();
+        bitSet.set(valueOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        pvValue.put(105.0);
+        assertFalse(pvFilter.filter(bitSet));
+        pvValue.put(111.0);
+        bitSet.set(valueOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        // not numeric or not valid
+        assertNull(PVFilterFactory.create(createCopy(pvMaster, "alarm.message[deadband=1]")));
+        assertNull(PVFilterFactory.create(createCopy(pvMaster, "value[deadband=abc]")));
+    }
+
+    public static void testDecimate() {
+        PVStructure pvMaster = createMaster();
+        PVCopy pvCopy = createCopy(pvMaster, "field([decimate=3]value,alarm)");
+        PVFilter pvFilter = PVFilterFactory.create(pvCopy);
+        int valueOffset = offset(pvCopy, pvMaster, "value");
+        BitSet bitSet = new BitSet();
+        int number = 0;
+        for(int i=0; i<9; i++) {
+            bitSet.set(valueOffset);
+            if(pvFilter.filter(bitSet)) number++;
+        }
+        assertEquals(3, number);
+        // decimate a field, other fields still pass
+        pvCopy = createCopy(pvMaster, "field(value[decimate=2],alarm)");
+        pvFilter = PVFilterFactory.create(pvCopy);
+        valueOffset = offset(pvCopy, pvMaster, "value");
+        int alarmOffset = offset(pvCopy, pvMaster, "alarm");
+        bitSet.clear();
+        bitSet.set(valueOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        bitSet.set(alarmOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        assertFalse(bitSet.get(valueOffset));
+        assertTrue(bitSet.get(alarmOffset));
+    }
+
+    public static void testSync() {
+        PVStructure pvMaster = createMaster();
+        PVCopy pvCopy = createCopy(pvMaster, "field(value,alarm,timeStamp[sync=true])");
+        PVFilter pvFilter = PVFilterFactory.create(pvCopy);
+        int valueOffset = offset(pvCopy, pvMaster, "value");
+        int alarmOffset = offset(pvCopy, pvMaster, "alarm.severity");
+        int timeStampOffset = offset(pvCopy, pvMaster, "timeStamp.nanoseconds");
+        BitSet bitSet = new BitSet();
+        bitSet.set(valueOffset);
+        assertFalse(pvFilter.filter(bitSet));
+        assertTrue(bitSet.isEmpty());
+        bitSet.set(alarmOffset);
+        assertFalse(pvFilter.filter(bitSet));
+        bitSet.set(timeStampOffset);
+        assertTrue(pvFilter.filter(bitSet));
+        assertEquals(3, bitSet.cardinality());
+        assertTrue(bitSet.get(valueOffset));
+        assertTrue(bitSet.get(alarmOffset));
+        bitSet.clear();
+        bitSet.set(valueOffset);
+        assertFalse(pvFilter.filter(bitSet));
+    }
+
+    public static void testChainAndPlugin() {
+        PVPluginRegistry.registerPlugin("drop", new PVPlugin() {
+            public PVFilter create(String requestValue, PVCopy pvCopy, int fieldOffset) {
+                return new PVFilter() {
+                    public String getName() {
+                        return "drop";
+                    }
+                    public boolean filter(BitSet changedBitSet) {
+                        changedBitSet.clear();
+                        return false;
+                    }
+                };
+            }
+        });
+        try {
+            assertTrue(PVPluginRegistry.getPluginNames().contains("drop"));
+            assertTrue(PVPluginRegistry.getPluginNames().contains("deadband"));
+            PVStructure pvMaster = createMaster();
+            PVCopy pvCopy = createCopy(pvMaster, "field(value[deadband=1],alarm[drop=true])");
+            PVFilter pvFilter = PVFilterFactory.create(pvCopy);
+            assertEquals("chain", pvFilter.getName());
+            BitSet bitSet = new BitSet();
+            bitSet.set(offset(pvCopy, pvMaster, "value"));
+            assertFalse(pvFilter.filter(bitSet));
+            assertNull(PVFilterFactory.create(createCopy(pvMaster, "field(value,alarm[other=1])")));
+        } finally {
+            PVPluginRegistry.unregisterPlugin("drop");
+        }
+        assertNull(PVPluginRegistry.find("drop"));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVUByte;
+import org.epics.pvdata.pv.PVUInt;
+import org.epics.pvdata.pv.PVULong;
+import org.epics.pvdata.pv.PVUShortArray;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.util.pvDataHelper.PVStructureBinding;
+
+/**
+ * JUnit test for PVStructureBinding.
+ */
+public class PVStructureBindingTest extends TestCase {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+
+    public static class Position {
+        public double x;
+        public double y;
+    }
+
+    public static class Device {
+        public String channel;
+        public Byte status;
+        public long serial;
+        public short[] waveform;
+        public Position position;
+        public String notInStructure = "kept";
+        private int count;
+        public int getCount() { return count; }
+        public void setCount(int count) { this.count = count; }
+    }
+
+    public static class WrongType {
+        public float status;
+    }
+
+    /*
+     * Unsigned fields bound to signed properties, a nested structure,
+     * and a scalar and a structure that Device has no property for.
+     */
+    private static Structure createStructure() {
+        return fieldCreate.createFieldBuilder().
+                add("channel", ScalarType.pvString).
+                add("status", ScalarType.pvUByte).
+                add("count", ScalarType.pvUInt).
+                add("serial", ScalarType.pvULong).
+                addArray("waveform", ScalarType.pvUShort).
+                addNestedStructure("position").
+                    add("x", ScalarType.pvDouble).
+                    add("y", ScalarType.pvDouble).
+                endNested().
+                add("comment", ScalarType.pvString).
+                addNestedStructure("display").
+                    add("units", ScalarType.pvString).
+                endNested().
+                createStructure();
+    }
+
+    public void testBinding() {
+        Structure structure = createStructure();
+        PVStructureBinding<Device> binding = PVStructureBinding.getBinding(structure, Device.class);
+        assertSame(binding, PVStructureBinding.getBinding(createStructure(), Device.class));
+        PVStructure pvStructure = pvDataCreate.createPVStructure(structure);
+        pvStructure.getStringField("channel").put("device");
+        pvStructure.getSubField(PVUByte.class, "status").put((byte)200);
+        pvStructure.getSubField(PVUInt.class, "count").put(-1);
+        pvStructure.getSubField(PVULong.class, "serial").put(Long.MIN_VALUE);
+        pvStructure.getSubField(PVUShortArray.class, "waveform").put(0, 3, new short[] {-1, 1, 2}, 0);
+        pvStructure.getDoubleField("position.x").put(1.5);
+        pvStructure.getDoubleField("position.y").put(-2.5);
+        pvStructure.getStringField("comment").put("unbound");
+        pvStructure.getStringField("display.units").put("mm");
+
+        Device device = binding.create(pvStructure);
+        assertEquals("device", device.channel);
+        assertEquals(Byte.valueOf((byte)200), device.status);
+        assertEquals(-1, device.getCount());
+        assertEquals(Long.MIN_VALUE, device.serial);
+        assertEquals(3, device.waveform.length);
+        assertEquals((short)-1, device.waveform[0]);
+        assertEquals(1.5, device.position.x);
+        assertEquals(-2.5, device.position.y);
+        assertEquals("kept", device.notInStructure);
+
+        short[] waveform = device.waveform;
+        pvStructure.getSubField(PVUShortArray.class, "waveform").put(0, 1, new short[] {9}, 0);
+        binding.toObject(pvStructure, device);
+        assertSame(waveform, device.waveform);
+        assertEquals(9, device.waveform[0]);
+
+        // the fields without a property keep their values
+        PVStructure other = pvDataCreate.createPVStructure(structure);
+        binding.toPVStructure(device, other);
+        assertEquals("", other.getStringField("comment").get());
+        assertEquals("", other.getStringField("display.units").get());
+        other.getStringField("comment").put("unbound");
+        other.getStringField("display.units").put("mm");
+        assertEquals(pvStructure, other);
+    }
+
+    public void testPartial() {
+        Structure structure = createStructure();
+        PVStructureBinding<Device> binding = PVStructureBinding.getBinding(structure, Device.class);
+        PVStructure pvStructure = pvDataCreate.createPVStructure(structure);
+        Device device = binding.create(pvStructure);
+        pvStructure.getStringField("channel").put("changed");
+        pvStructure.getSubField(PVUByte.class, "status").put((byte)7);
+        pvStructure.getDoubleField("position.x").put(3.0);
+        pvStructure.getDoubleField("position.y").put(4.0);
+        BitSet changed = new BitSet();
+        changed.set(pvStructure.getSubField("status").getFieldOffset());
+        changed.set(pvStructure.getSubField("position.y").getFieldOffset());
+        binding.toObject(pvStructure, device, changed);
+        assertEquals(Byte.valueOf((byte)7), device.status);
+        assertEquals("", device.channel);
+        assertEquals(0.0, device.position.x);
+        assertEquals(4.0, device.position.y);
+
+        changed.clear();
+        changed.set(pvStructure.getSubField("position").getFieldOffset());
+        binding.toObject(pvStructure, device, changed);
+        assertEquals(3.0, device.position.x);
+        assertEquals("", device.channel);
+
+        PVStructureBinding<Position> positionBinding = PVStructureBinding.getBinding(
+                pvStructure.getStructureField("position").getStructure(), Position.class);
+        Position position = new Position();
+        changed.clear();
+        changed.set(0);
+        positionBinding.toObject(pvStructure.getStructureField("position"), position, changed);
+        assertEquals(3.0, position.x);
+    }
+
+    public void testWrongType() {
+        try {
+            PVStructureBinding.getBinding(createStructure(), WrongType.class);
+            fail("wrong type");
+        } catch (IllegalArgumentException e) {}
+    }
+}
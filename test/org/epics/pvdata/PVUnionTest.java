@@ -4,8 +4,11 @@
  */
 package org.epics.pvdata;
 
+import java.nio.ByteBuffer;
+
 import junit.framework.TestCase;
 
+import org.epics.pvdata.factory.BasePVUnion;
 import org.epics.pvdata.factory.FieldFactory;
 import org.epics.pvdata.factory.PVDataFactory;
 import org.epics.pvdata.factory.StandardFieldFactory;
@@ -17,13 +20,17 @@ import org.epics.pvdata.pv.Field;
 import org.epics.pvdata.pv.FieldCreate;
 import org.epics.pvdata.pv.PVDataCreate;
 import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVField;
 import org.epics.pvdata.pv.PVInt;
 import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVShortArray;
 import org.epics.pvdata.pv.PVStructure;
 import org.epics.pvdata.pv.PVUnion;
 import org.epics.pvdata.pv.PVUnionArray;
 import org.epics.pvdata.pv.ScalarType;
 import org.epics.pvdata.pv.StandardField;
+import org.epics.pvdata.pv.Union;
 
 
 
@@ -130,5 +137,86 @@ System.out.println(pvStructure);
 System.out.println(pvStructure);
     }
     
-}
+    static class FieldSerControl extends BitSetTest.SerControl
+    {
+        @Override
+        public Field cachedDeserialize(ByteBuffer buffer) {
+            return fieldCreate.deserialize(buffer, this);
+        }
+
+        @Override
+        public void cachedSerialize(Field field, ByteBuffer buffer) {
+            field.serialize(buffer, this);
+        }
+    }
+
+    public static void testMemberCache() {
+        Union union = fieldCreate.createFieldBuilder().
+                addArray("doubleValue", ScalarType.pvDouble).
+                addArray("shortValue", ScalarType.pvShort).
+                createUnion();
+        BasePVUnion pvUnion = (BasePVUnion)pvDataCreate.createPVUnion(union);
+        assertFalse(pvUnion.isMemberCache());
+        PVDoubleArray first = pvUnion.select(PVDoubleArray.class, "doubleValue");
+        pvUnion.select("shortValue");
+        assertNotSame(first, pvUnion.select(PVDoubleArray.class, "doubleValue"));
 
+        pvUnion.setMemberCache(true);
+        PVDoubleArray pvDoubles = pvUnion.select(PVDoubleArray.class, "doubleValue");
+        PVShortArray pvShorts = pvUnion.select(PVShortArray.class, "shortValue");
+        assertSame(pvDoubles, pvUnion.select(PVDoubleArray.class, "doubleValue"));
+        assertSame(pvShorts, pvUnion.select(PVShortArray.class, "shortValue"));
+        pvUnion.select(PVUnion.UNDEFINED_INDEX);
+        assertSame(pvDoubles, pvUnion.select(PVDoubleArray.class, "doubleValue"));
+
+        // a value given to set is not reused
+        PVDoubleArray given = (PVDoubleArray)pvDataCreate.createPVScalarArray(ScalarType.pvDouble);
+        pvUnion.set("doubleValue", given);
+        pvUnion.select("shortValue");
+        assertNotSame(given, pvUnion.select(PVDoubleArray.class, "doubleValue"));
+
+        // deserialize switching between members
+        FieldSerControl control = new FieldSerControl();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        BasePVUnion source = (BasePVUnion)pvDataCreate.createPVUnion(union);
+        pvUnion.select("shortValue");
+        PVShortArray current = pvUnion.get(PVShortArray.class);
+        source.select(PVDoubleArray.class, "doubleValue").put(0, 2, new double[] {1, 2}, 0);
+        source.serialize(buffer, control);
+        buffer.flip();
+        pvUnion.deserialize(buffer, control);
+        assertEquals(source, pvUnion);
+        buffer.clear();
+        source.select("shortValue");
+        source.serialize(buffer, control);
+        buffer.flip();
+        pvUnion.deserialize(buffer, control);
+        assertSame(current, pvUnion.get());
+        assertEquals(source, pvUnion);
+
+        // variant union
+        BasePVUnion variant = (BasePVUnion)pvDataCreate.createPVVariantUnion();
+        variant.setMemberCache(true);
+        PVUnion[] values = new PVUnion[] {
+            pvDataCreate.createPVVariantUnion(),
+            pvDataCreate.createPVVariantUnion()
+        };
+        values[0].set(pvDataCreate.createPVScalarArray(ScalarType.pvDouble));
+        values[1].set(pvDataCreate.createPVScalarArray(ScalarType.pvShort));
+        PVField[] seen = new PVField[2];
+        for (int i = 0; i < 4; i++)
+        {
+            buffer.clear();
+            values[i%2].serialize(buffer, control);
+            buffer.flip();
+            variant.deserialize(buffer, control);
+            assertEquals(values[i%2], variant);
+            if (i < 2)
+                seen[i] = variant.get();
+            else
+                assertSame(seen[i%2], variant.get());
+        }
+        pvUnion.setMemberCache(false);
+        assertFalse(pvUnion.isMemberCache());
+    }
+}
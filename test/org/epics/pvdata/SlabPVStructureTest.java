@@ -0,0 +1,191 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.ConvertFactory;
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.SlabPVStructure;
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.pv.Convert;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVBoolean;
+import org.epics.pvdata.pv.PVByte;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVDouble;
+import org.epics.pvdata.pv.PVDoubleArray;
+import org.epics.pvdata.pv.PVField;
+import org.epics.pvdata.pv.PVFloat;
+import org.epics.pvdata.pv.PVInt;
+import org.epics.pvdata.pv.PVLong;
+import org.epics.pvdata.pv.PVShort;
+import org.epics.pvdata.pv.PVString;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVUByte;
+import org.epics.pvdata.pv.PVUInt;
+import org.epics.pvdata.pv.PVULong;
+import org.epics.pvdata.pv.PVUShort;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.Structure;
+
+/**
+ * JUnit test for SlabPVStructure.
+ */
+public class SlabPVStructureTest extends TestCase {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+    private static final PVDataCreate slabPVDataCreate = PVDataFactory.getSlabPVDataCreate();
+    private static final Convert convert = ConvertFactory.getConvert();
+
+    /*
+     * Every scalar type that is kept in the slab, at three depths,
+     * and a string and an array that are not.
+     */
+    private static Structure createStructure() {
+        return fieldCreate.createFieldBuilder().
+                add("flag", ScalarType.pvBoolean).
+                add("byteValue", ScalarType.pvByte).
+                add("ubyteValue", ScalarType.pvUByte).
+                add("shortValue", ScalarType.pvShort).
+                add("ushortValue", ScalarType.pvUShort).
+                add("name", ScalarType.pvString).
+                addNestedStructure("inner").
+                    add("intValue", ScalarType.pvInt).
+                    add("uintValue", ScalarType.pvUInt).
+                    addArray("samples", ScalarType.pvDouble).
+                    addNestedStructure("deeper").
+                        add("longValue", ScalarType.pvLong).
+                        add("ulongValue", ScalarType.pvULong).
+                    endNested().
+                endNested().
+                add("floatValue", ScalarType.pvFloat).
+                add("doubleValue", ScalarType.pvDouble).
+                createStructure();
+    }
+
+    private static void fill(PVStructure pvStructure) {
+        pvStructure.getSubField(PVBoolean.class, "flag").put(true);
+        pvStructure.getSubField(PVByte.class, "byteValue").put((byte)-100);
+        pvStructure.getSubField(PVUByte.class, "ubyteValue").put((byte)200);
+        pvStructure.getSubField(PVShort.class, "shortValue").put((short)-30000);
+        pvStructure.getSubField(PVUShort.class, "ushortValue").put((short)65000);
+        pvStructure.getSubField(PVString.class, "name").put("slab");
+        pvStructure.getSubField(PVInt.class, "inner.intValue").put(-7);
+        pvStructure.getSubField(PVUInt.class, "inner.uintValue").put(-1);
+        pvStructure.getSubField(PVDoubleArray.class, "inner.samples").put(0, 3, new double[] {1, 2, 3}, 0);
+        pvStructure.getSubField(PVLong.class, "inner.deeper.longValue").put(1234567890123L);
+        pvStructure.getSubField(PVULong.class, "inner.deeper.ulongValue").put(Long.MIN_VALUE);
+        pvStructure.getSubField(PVFloat.class, "floatValue").put(0.25f);
+        pvStructure.getSubField(PVDouble.class, "doubleValue").put(-1.5);
+    }
+
+    public void testCreate() {
+        Structure structure = createStructure();
+        PVStructure slab = slabPVDataCreate.createPVStructure(structure);
+        assertTrue(slab instanceof SlabPVStructure);
+        assertTrue(slab.getStructureField("inner") instanceof SlabPVStructure);
+        assertTrue(slab.getStructureField("inner.deeper") instanceof SlabPVStructure);
+        PVStructure base = pvDataCreate.createPVStructure(structure);
+        assertEquals(base, slab);
+        fill(slab);
+        fill(base);
+        assertEquals(base, slab);
+        assertEquals(base.toString(), slab.toString());
+        assertEquals(base.hashCode(), slab.hashCode());
+        PVBoolean flag = slab.getSubField(PVBoolean.class, "flag");
+        assertSame(flag, slab.getSubField(PVBoolean.class, "flag"));
+        assertSame(flag, slab.getPVFields()[0]);
+        assertEquals("flag", flag.getFieldName());
+        assertSame(slab, flag.getParent());
+        assertEquals(13, slab.getSubField("inner.deeper.ulongValue").getFieldOffset());
+        assertSame(slab.getSubField("doubleValue"), slab.getSubField(15));
+
+        PVStructure clone = slabPVDataCreate.createPVStructure(slab);
+        assertTrue(clone instanceof SlabPVStructure);
+        assertEquals(slab, clone);
+        PVDouble value = slab.getSubField(PVDouble.class, "doubleValue");
+        clone.getSubField(PVDouble.class, "doubleValue").put(2.0);
+        assertEquals(-1.5, value.get());
+
+        slab.setImmutable();
+        try {
+            slab.getSubField(PVInt.class, "inner.intValue").put(1);
+            fail("field is immutable");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    public void testLazyImmutable() {
+        PVStructure slab = slabPVDataCreate.createPVStructure(createStructure());
+        slab.setImmutable();
+        PVULong ulongValue = slab.getSubField(PVULong.class, "inner.deeper.ulongValue");
+        assertTrue(ulongValue.isImmutable());
+    }
+
+    public void testSerialization() {
+        Structure structure = createStructure();
+        PVStructure slab = slabPVDataCreate.createPVStructure(structure);
+        PVStructure base = pvDataCreate.createPVStructure(structure);
+        fill(base);
+        BitSetTest.SerControl control = new BitSetTest.SerControl();
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+
+        base.serialize(buffer, control);
+        buffer.flip();
+        slab.deserialize(buffer, control);
+        assertEquals(0, buffer.remaining());
+        assertEquals(base, slab);
+
+        PVStructure other = pvDataCreate.createPVStructure(structure);
+        buffer.clear();
+        slab.serialize(buffer, control);
+        buffer.flip();
+        other.deserialize(buffer, control);
+        assertEquals(0, buffer.remaining());
+        assertEquals(base, other);
+
+        BitSet bitSet = new BitSet();
+        slab.getSubField(PVDouble.class, "doubleValue").put(9.0);
+        slab.getSubField(PVLong.class, "inner.deeper.longValue").put(11);
+        bitSet.set(slab.getSubField("doubleValue").getFieldOffset());
+        bitSet.set(slab.getSubField("inner").getFieldOffset());
+        buffer.clear();
+        slab.serialize(buffer, control, bitSet);
+        buffer.flip();
+        other.deserialize(buffer, control, bitSet);
+        assertEquals(0, buffer.remaining());
+        assertEquals(slab, other);
+        convert.copy(base, other);
+        assertEquals(base, other);
+    }
+
+    public void testConcurrentCreate() throws InterruptedException {
+        for(int n=0; n<20; n++) {
+            final PVStructure pvStructure = slabPVDataCreate.createPVStructure(createStructure());
+            final PVField[] found = new PVField[4];
+            Thread[] threads = new Thread[found.length];
+            for(int i=0; i<threads.length; i++) {
+                final int index = i;
+                threads[i] = new Thread(new Runnable() {
+                    public void run() {
+                        PVULong pvULong = pvStructure.getSubField(PVULong.class, "inner.deeper.ulongValue");
+                        if(pvULong.getParent()==pvStructure.getSubField("inner.deeper")
+                        && "ulongValue".equals(pvULong.getFieldName())) {
+                            found[index] = pvULong;
+                        }
+                    }
+                });
+            }
+            for(int i=0; i<threads.length; i++) threads[i].start();
+            for(int i=0; i<threads.length; i++) threads[i].join();
+            for(int i=0; i<found.length; i++) {
+                assertSame(pvStructure.getSubField("inner.deeper.ulongValue"), found[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.BitSet;
+import org.epics.pvdata.misc.SparseBitSet;
+
+/**
+ * JUnit test for SparseBitSet.
+ */
+public class SparseBitSetTest extends TestCase {
+
+    private static void check(BitSet expected, SparseBitSet actual) {
+        assertEquals(expected.cardinality(), actual.cardinality());
+        assertEquals(expected.length(), actual.length());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        assertEquals(expected.toString(), actual.toString());
+        BitSet bitSet = new BitSet();
+        actual.copyTo(bitSet);
+        assertEquals(expected, bitSet);
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1)) {
+            assertTrue(actual.get(i));
+            assertEquals(i, actual.nextSetBit(i));
+        }
+    }
+
+    public void testRandom() {
+        Random random = new Random(7);
+        BitSet expected = new BitSet();
+        SparseBitSet actual = new SparseBitSet();
+        for (int i = 0; i < 20000; i++) {
+            // mostly in one chunk so that it changes between array and bitmap
+            int bitIndex = random.nextBoolean() ? random.nextInt(9000) : random.nextInt(300000);
+            if (random.nextInt(3) == 0) {
+                expected.clear(bitIndex);
+                actual.clear(bitIndex);
+            } else {
+                assertEquals(expected.get(bitIndex), actual.getAndSet(bitIndex));
+                expected.set(bitIndex);
+            }
+        }
+        check(expected, actual);
+        SparseBitSet other = new SparseBitSet();
+        other.set(expected);
+        assertEquals(actual, other);
+        assertEquals(actual.hashCode(), other.hashCode());
+        for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1)) {
+            expected.clear(i);
+            actual.clear(i);
+        }
+        check(expected, actual);
+        assertTrue(actual.isEmpty());
+    }
+
+    public void testSerialization() {
+        BitSetTest.SerControl control = new BitSetTest.SerControl();
+        ByteBuffer buffer = ByteBuffer.allocate(100000);
+
+        // a few changes in a 100000 field structure are sent as a list
+        SparseBitSet sparse = new SparseBitSet();
+        sparse.set(3);
+        sparse.set(50000);
+        sparse.set(99999);
+        sparse.serialize(buffer, control);
+        assertTrue(buffer.position() < 20);
+        buffer.flip();
+        SparseBitSet result = new SparseBitSet();
+        result.deserialize(buffer, control);
+        assertEquals(sparse, result);
+
+        // many changes are sent as the words of a BitSet
+        buffer.clear();
+        BitSet dense = new BitSet();
+        dense.set(0, 5000);
+        sparse.set(dense);
+        sparse.serialize(buffer, control);
+        int length = buffer.position();
+        buffer.flip();
+        assertEquals(0, buffer.get());
+        BitSet bitSet = new BitSet();
+        bitSet.deserialize(buffer, control);
+        assertEquals(dense, bitSet);
+        buffer.position(0);
+        result.deserialize(buffer, control);
+        assertEquals(length, buffer.position());
+        assertEquals(sparse, result);
+    }
+}
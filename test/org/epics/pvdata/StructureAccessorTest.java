@@ -0,0 +1,133 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.factory.FieldFactory;
+import org.epics.pvdata.factory.PVDataFactory;
+import org.epics.pvdata.factory.StructureAccessorFactory;
+import org.epics.pvdata.pv.FieldCreate;
+import org.epics.pvdata.pv.PVDataCreate;
+import org.epics.pvdata.pv.PVLongArray;
+import org.epics.pvdata.pv.PVStructure;
+import org.epics.pvdata.pv.PVStructureAccessor;
+import org.epics.pvdata.pv.PVUByte;
+import org.epics.pvdata.pv.ScalarType;
+import org.epics.pvdata.pv.Structure;
+import org.epics.pvdata.pv.StructureAccessor;
+
+/**
+ * JUnit test for StructureAccessor.
+ */
+public class StructureAccessorTest extends TestCase {
+    private static final FieldCreate fieldCreate = FieldFactory.getFieldCreate();
+    private static final PVDataCreate pvDataCreate = PVDataFactory.getPVDataCreate();
+
+    /*
+     * Leaf fields at three depths, unsigned scalars that share the signed accessors
+     * and leaves that are not scalars.
+     */
+    private static Structure createStructure() {
+        return fieldCreate.createFieldBuilder().
+                add("id", ScalarType.pvUByte).
+                add("current", ScalarType.pvDouble).
+                addNestedStructure("limits").
+                    add("low", ScalarType.pvFloat).
+                    add("high", ScalarType.pvFloat).
+                    addNestedStructure("alarm").
+                        add("severity", ScalarType.pvShort).
+                    endNested().
+                endNested().
+                addArray("history", ScalarType.pvLong).
+                add("label", ScalarType.pvString).
+                createStructure();
+    }
+
+    public void testAccess() {
+        Structure structure = createStructure();
+        StructureAccessor accessor = StructureAccessorFactory.getStructureAccessor(structure);
+        assertSame(accessor, StructureAccessorFactory.getStructureAccessor(createStructure()));
+        assertEquals(7, accessor.getNumberLeafFields());
+        assertEquals(4, accessor.getLeafFieldIndex("limits.alarm.severity"));
+        assertEquals("history", accessor.getLeafFieldName(5));
+        assertEquals(-1, accessor.getLeafFieldIndex("limits"));
+        assertEquals(-1, accessor.getLeafFieldIndex("limits.alarm"));
+        assertEquals(-1, accessor.getLeafFieldIndex("nothing"));
+
+        PVStructure pvStructure = pvDataCreate.createPVStructure(structure);
+        PVStructureAccessor pv = accessor.bind(pvStructure);
+        int id = accessor.getLeafFieldIndex("id");
+        int high = accessor.getLeafFieldIndex("limits.high");
+        int severity = accessor.getLeafFieldIndex("limits.alarm.severity");
+        pv.putByte(id, (byte)-1);
+        pv.putDouble(1, 2.5);
+        pv.putFloat(2, -10.0f);
+        pv.putFloat(high, 10.0f);
+        pv.putShort(severity, (short)3);
+        pv.putString(6, "accessor");
+        ((PVLongArray)pv.getPVField(5)).put(0, 2, new long[] {1, 2}, 0);
+        assertEquals((byte)-1, pvStructure.getSubField(PVUByte.class, "id").get());
+        assertEquals(10.0f, pvStructure.getFloatField("limits.high").get());
+        assertEquals(3, pvStructure.getShortField("limits.alarm.severity").get());
+        assertEquals((byte)-1, pv.getByte(id));
+        assertEquals("accessor", pv.getString(6));
+        try {
+            pv.getDouble(id);
+            fail("wrong type");
+        } catch (ClassCastException e) {}
+
+        PVStructure other = PVDataFactory.getSlabPVDataCreate().createPVStructure(structure);
+        PVStructureAccessor otherPV = accessor.bind(other);
+        pv.copyTo(otherPV);
+        assertEquals(pvStructure, other);
+
+        BitSetTest.SerControl control = new BitSetTest.SerControl();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        pv.serialize(buffer, control);
+        int size = buffer.position();
+        buffer.clear();
+        pvStructure.serialize(buffer, control);
+        assertEquals(size, buffer.position());
+        buffer.flip();
+        PVStructure third = pvDataCreate.createPVStructure(structure);
+        accessor.bind(third).deserialize(buffer, control);
+        assertEquals(pvStructure, third);
+
+        try {
+            accessor.bind(pvDataCreate.createPVStructure(fieldCreate.createFieldBuilder().
+                    add("value", ScalarType.pvDouble).createStructure()));
+            fail("different structure");
+        } catch (IllegalArgumentException e) {}
+        Structure otherStructure = fieldCreate.createFieldBuilder().
+                add("value", ScalarType.pvDouble).createStructure();
+        try {
+            pv.copyTo(StructureAccessorFactory.getStructureAccessor(otherStructure).bind(
+                    pvDataCreate.createPVStructure(otherStructure)));
+            fail("copyTo different structure");
+        } catch (IllegalArgumentException e) {}
+    }
+
+    private static WeakReference<Structure> createUnusedAccessor() {
+        Structure structure = fieldCreate.createFieldBuilder().
+                add("unused", ScalarType.pvDouble).createStructure();
+        StructureAccessor accessor = StructureAccessorFactory.getStructureAccessor(structure);
+        assertSame(structure, accessor.getStructure());
+        return new WeakReference<Structure>(structure);
+    }
+
+    public void testCollected() throws InterruptedException {
+        WeakReference<Structure> reference = createUnusedAccessor();
+        // the cache must not keep the structure of an accessor that is no longer used
+        for(int i=0; i<100 && reference.get()!=null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright information and license terms for this software can be
+ * found in the file LICENSE that is included with the distribution
+ */
+package org.epics.pvdata;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.epics.pvdata.misc.RunnableReady;
+import org.epics.pvdata.misc.ThreadCreate;
+import org.epics.pvdata.misc.ThreadCreateFactory;
+import org.epics.pvdata.misc.ThreadPriority;
+import org.epics.pvdata.misc.ThreadReady;
+
+/**
+ * JUnit test for ThreadCreate.
+ */
+public class ThreadCreateTest extends TestCase {
+    private static final ThreadCreate threadCreate = ThreadCreateFactory.getThreadCreate();
+
+    private static void checkCreate() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread thread = threadCreate.create("checkCreate", ThreadPriority.middle.getJavaPriority(),
+            new RunnableReady() {
+                public void run(ThreadReady threadReady) {
+                    threadReady.ready();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {}
+                }
+            });
+        assertTrue(Arrays.asList(threadCreate.getThreads()).contains(thread));
+        release.countDown();
+        thread.join(10000);
+        assertFalse(Arrays.asList(threadCreate.getThreads()).contains(thread));
+    }
+
+    public static void testPlatformThreads() throws InterruptedException {
+        checkCreate();
+    }
+
+    public static void testVirtualThreads() throws InterruptedException {
+        if(!ThreadCreateFactory.isVirtualThreadSupported()) {
+            try {
+                ThreadCreateFactory.setVirtualThreads(true);
+                fail("setVirtualThreads should fail");
+            } catch (IllegalStateException e) {}
+            return;
+        }
+        boolean save = ThreadCreateFactory.isVirtualThreads();
+        ThreadCreateFactory.setVirtualThreads(true);
+        try {
+            checkCreate();
+        } finally {
+            ThreadCreateFactory.setVirtualThreads(save);
+        }
+    }
+}
@@ -4,6 +4,10 @@
  */
 package org.epics.pvdata;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import junit.framework.TestCase;
 
 import org.epics.pvdata.misc.ThreadPriority;
@@ -64,6 +68,110 @@ public class TimerTest extends TestCase {
        timer.stop();
     }
     
+    /**
+     * test hashed wheel timer.
+     */
+    public static void testHashedWheel() throws InterruptedException {
+        Timer wheelTimer = TimerFactory.createHashedWheel("testHashedWheel", ThreadPriority.high, .001, 100);
+        int number = 1000;
+        final CountDownLatch delayDone = new CountDownLatch(number);
+        final AtomicInteger stopped = new AtomicInteger(0);
+        Timer.TimerCallback delayCallback = new Timer.TimerCallback() {
+            public void callback() {
+                delayDone.countDown();
+            }
+            public void timerStopped() {
+                stopped.incrementAndGet();
+            }
+        };
+        Timer.TimerNode[] delayNodes = new Timer.TimerNode[number];
+        for(int i=0; i<number; i++) {
+            delayNodes[i] = TimerFactory.createNode(delayCallback);
+            // some delays are longer than one turn of the wheel
+            wheelTimer.scheduleAfterDelay(delayNodes[i], (i%200)*.001);
+        }
+        assertTrue(delayDone.await(10, TimeUnit.SECONDS));
+        for(int i=0; i<number; i++) assertFalse(delayNodes[i].isScheduled());
+        final AtomicInteger periodicCount = new AtomicInteger(0);
+        Timer.TimerCallback periodicCallback = new Timer.TimerCallback() {
+            public void callback() {
+                periodicCount.incrementAndGet();
+            }
+            public void timerStopped() {
+                stopped.incrementAndGet();
+            }
+        };
+        Timer.TimerNode periodicNode = TimerFactory.createNode(periodicCallback);
+        Timer.TimerNode canceledNode = TimerFactory.createNode(periodicCallback);
+        wheelTimer.schedulePeriodic(periodicNode, 0.0, .01);
+        wheelTimer.scheduleAfterDelay(canceledNode, .05);
+        assertTrue(canceledNode.isScheduled());
+        canceledNode.cancel();
+        assertFalse(canceledNode.isScheduled());
+        Thread.sleep(200);
+        int count = periodicCount.get();
+        assertTrue("periodic count " + count, count>=10 && count<=25);
+        assertTrue(periodicNode.isScheduled());
+        wheelTimer.stop();
+        assertFalse(periodicNode.isScheduled());
+        assertEquals(1,stopped.get());
+    }
+
+    /**
+     * test fixed rate scheduling, overrun policies and statistics.
+     */
+    public static void testFixedRate() throws InterruptedException {
+        Timer rateTimer = TimerFactory.create("testFixedRate", ThreadPriority.high);
+        final AtomicInteger fastCount = new AtomicInteger(0);
+        Timer.TimerNode fastNode = TimerFactory.createNode(new Timer.TimerCallback() {
+            public void callback() {
+                fastCount.incrementAndGet();
+            }
+            public void timerStopped() {}
+        });
+        Timer.TimerCallback slowCallback = new Timer.TimerCallback() {
+            public void callback() {
+                try {
+                    Thread.sleep(25);
+                } catch (InterruptedException e) {}
+            }
+            public void timerStopped() {}
+        };
+        Timer.TimerNode skipNode = TimerFactory.createNode(slowCallback, Timer.OverrunPolicy.skip);
+        Timer.TimerNode catchUpNode = TimerFactory.createNode(slowCallback, Timer.OverrunPolicy.catchUp);
+        // sub millisecond period
+        // upper bounds use the measured time, since the sleep can take longer than asked
+        long start = System.nanoTime();
+        rateTimer.schedulePeriodic(fastNode, 0.0, .0005);
+        Thread.sleep(200);
+        fastNode.cancel();
+        long periods = (System.nanoTime() - start)/500000L;
+        int count = fastCount.get();
+        assertTrue("fast count " + count + " periods " + periods, count>=100 && count<=periods + 2);
+        Timer.TimerNodeStatistics statistics = TimerFactory.getStatistics(fastNode);
+        assertEquals(count,statistics.getNumberCallbacks());
+        assertTrue(statistics.getMinJitter()>=0);
+        assertTrue(statistics.getMaxJitter()>=statistics.getMinJitter());
+
+        start = System.nanoTime();
+        rateTimer.schedulePeriodic(skipNode, 0.0, .01);
+        Thread.sleep(200);
+        skipNode.cancel();
+        periods = (System.nanoTime() - start)/10000000L;
+        statistics = TimerFactory.getStatistics(skipNode);
+        assertTrue(statistics.getNumberOverruns()>0);
+        // skipped periods are not called back
+        assertTrue(statistics.getNumberCallbacks() + statistics.getNumberOverruns()<=periods + 2);
+
+        rateTimer.schedulePeriodic(catchUpNode, 0.0, .01);
+        Thread.sleep(200);
+        catchUpNode.cancel();
+        statistics = TimerFactory.getStatistics(catchUpNode);
+        assertTrue(statistics.getNumberOverruns()>0);
+        assertTrue(statistics.getMaxJitter()>10000000L);
+        rateTimer.stop();
+    }
+
     private static final Timer timer = TimerFactory.create("testTimer", ThreadPriority.high);
     
     private static class TestDelay implements Timer.TimerCallback {